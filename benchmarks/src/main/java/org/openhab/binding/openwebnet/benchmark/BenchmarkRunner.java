@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.openwebnet.handler.FrameProcessingBenchmark;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The {@link BenchmarkRunner} runs the binding benchmarks twice: once for throughput (ops/s) and once sampling the
+ * latency of each operation (percentiles, including p99), both with the GC profiler to report the allocation rate.
+ * Results are written to jmh-throughput.json and jmh-latency.json. Command line arguments are passed to JMH (for
+ * example <code>-p devices=1000</code>).
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+
+        Options throughput = options(cli).mode(Mode.Throughput).timeUnit(TimeUnit.SECONDS)
+                .result("jmh-throughput.json").build();
+        new Runner(throughput).run();
+
+        Options latency = options(cli).mode(Mode.SampleTime).timeUnit(TimeUnit.NANOSECONDS)
+                .result("jmh-latency.json").build();
+        new Runner(latency).run();
+    }
+
+    private static ChainedOptionsBuilder options(CommandLineOptions cli) {
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cli).addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON);
+        if (cli.getIncludes().isEmpty()) {
+            // benchmarks selected on the command line replace the default ones
+            builder.include(FrameProcessingBenchmark.class.getSimpleName());
+        }
+        return builder;
+    }
+}
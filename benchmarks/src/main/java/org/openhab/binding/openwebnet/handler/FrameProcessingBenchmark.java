@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.handler;
+
+import static org.openhab.binding.openwebnet.OpenWebNetBindingConstants.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.smarthome.config.core.Configuration;
+import org.eclipse.smarthome.core.thing.Bridge;
+import org.eclipse.smarthome.core.thing.Thing;
+import org.eclipse.smarthome.core.thing.ThingStatusInfo;
+import org.eclipse.smarthome.core.thing.ThingTypeUID;
+import org.eclipse.smarthome.core.thing.ThingUID;
+import org.eclipse.smarthome.core.thing.binding.ThingHandlerCallback;
+import org.eclipse.smarthome.core.thing.binding.builder.BridgeBuilder;
+import org.eclipse.smarthome.core.thing.binding.builder.ThingBuilder;
+import org.openhab.binding.openwebnet.internal.frame.OpenFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openwebnet.message.OpenMessage;
+import org.openwebnet.message.OpenMessageFactory;
+
+/**
+ * The {@link FrameProcessingBenchmark} drives a recorded BUS monitor frame stream through the frame processing hot
+ * path: parsing, {@link OpenWebNetBridgeHandler#onMessage(OpenMessage)} and the {@link OpenWebNetDeviceHandler}
+ * update methods, with 10, 100 and 1000 registered devices.
+ *
+ * Handlers run without the framework: the {@link ThingHandlerCallback} is a stub that only keeps the thing status
+ * and drops state updates. The bridge uses the NIO transport towards a closed local port, so no gateway is needed.
+ * Lighting frames of the recording are re-addressed round-robin to the registered devices (1 dimmer every 5 devices).
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class FrameProcessingBenchmark {
+
+    private static final String RECORDED_FRAMES = "/frames/bus-monitor.txt";
+    private static final String CLOSED_PORT = "1"; // nothing listens here: the gateway stays disconnected
+
+    @Param({ "10", "100", "1000" })
+    public int devices;
+
+    private OpenWebNetBridgeHandler bridgeHandler;
+    private final List<OpenWebNetDeviceHandler> deviceHandlers = new ArrayList<>();
+    private final Map<String, OpenWebNetDeviceHandler> handlerByWhere = new HashMap<>();
+
+    // the recorded stream, re-addressed to the registered devices
+    private String[] frames;
+    private OpenMessage[] messages;
+    private OpenFrame[] parsedFrames;
+    private OpenWebNetDeviceHandler[] frameHandlers;
+    private int next = 0;
+
+    private final OpenFrame frame = new OpenFrame();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ThingUID bridgeUID = new ThingUID(THING_TYPE_BUS_GATEWAY, "bench");
+        Map<String, Object> bridgeConfig = new HashMap<>();
+        bridgeConfig.put(CONFIG_PROPERTY_HOST, "127.0.0.1");
+        bridgeConfig.put(CONFIG_PROPERTY_PORT, new BigDecimal(CLOSED_PORT));
+        bridgeConfig.put(CONFIG_PROPERTY_TRANSPORT, "nio");
+        bridgeConfig.put(CONFIG_PROPERTY_STATE_UPDATE_WINDOW, BigDecimal.ZERO);
+        Bridge bridge = BridgeBuilder.create(THING_TYPE_BUS_GATEWAY, bridgeUID)
+                .withConfiguration(new Configuration(bridgeConfig)).build();
+        bridgeHandler = new OpenWebNetBridgeHandler(bridge);
+        bridge.setHandler(bridgeHandler);
+        bridgeHandler.setCallback(stubCallback(bridge));
+        bridgeHandler.initialize();
+
+        List<String> wheres = new ArrayList<>();
+        for (int i = 0; i < devices; i++) {
+            String where = busWhere(i);
+            ThingTypeUID type = i % 5 == 4 ? THING_TYPE_BUS_DIMMER : THING_TYPE_BUS_ON_OFF_SWITCH;
+            Map<String, Object> config = new HashMap<>();
+            config.put(CONFIG_PROPERTY_WHERE, where);
+            Thing thing = ThingBuilder.create(type, new ThingUID(type, bridgeUID, "d" + i)).withBridge(bridgeUID)
+                    .withConfiguration(new Configuration(config)).build();
+            OpenWebNetDeviceHandler handler = new OpenWebNetDeviceHandler(thing);
+            thing.setHandler(handler);
+            handler.setCallback(stubCallback(bridge));
+            handler.initialize();
+            deviceHandlers.add(handler);
+            handlerByWhere.put(where, handler);
+            wheres.add(where);
+        }
+
+        List<String> recorded = readRecordedFrames();
+        int count = Math.max(recorded.size(), devices * 4); // every device receives some frames
+        frames = new String[count];
+        messages = new OpenMessage[count];
+        parsedFrames = new OpenFrame[count];
+        frameHandlers = new OpenWebNetDeviceHandler[count];
+        int device = 0;
+        for (int i = 0; i < count; i++) {
+            String f = recorded.get(i % recorded.size());
+            if (f.startsWith("*1*") || f.startsWith("*#1*")) {
+                f = readdress(f, wheres.get(device++ % wheres.size()));
+            }
+            frames[i] = f;
+            messages[i] = OpenMessageFactory.parse(f);
+            parsedFrames[i] = new OpenFrame();
+            parsedFrames[i].parse(f);
+            frameHandlers[i] = handlerByWhere.get(parsedFrames[i].getWhere());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (OpenWebNetDeviceHandler handler : deviceHandlers) {
+            handler.dispose();
+        }
+        bridgeHandler.dispose();
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = i + 1 == frames.length ? 0 : i + 1;
+        return i;
+    }
+
+    /**
+     * Library parsing, as done by the library transport for each received frame
+     */
+    @Benchmark
+    public OpenMessage libraryParse() {
+        return OpenMessageFactory.parse(frames[nextIndex()]);
+    }
+
+    /**
+     * Binding flyweight frame parsing
+     */
+    @Benchmark
+    public boolean frameParse() {
+        return frame.parse(frames[nextIndex()]);
+    }
+
+    /**
+     * Hand over of a library message from the monitor thread to the dispatcher threads
+     */
+    @Benchmark
+    public void bridgeOnMessage() {
+        bridgeHandler.onMessage(messages[nextIndex()]);
+    }
+
+    /**
+     * Full processing of a frame on the calling thread: parsing, WHERE lookup, device handler update, state coalescer
+     * and callback
+     */
+    @Benchmark
+    public void bridgeDispatchFrame() {
+        bridgeHandler.dispatchFrame(frames[nextIndex()]);
+    }
+
+    /**
+     * Device handler update of an already parsed frame
+     */
+    @Benchmark
+    public void deviceUpdateLightState(Blackhole bh) {
+        int i = nextIndex();
+        OpenWebNetDeviceHandler handler = frameHandlers[i];
+        if (handler != null) {
+            handler.updateLightState(parsedFrames[i]);
+        } else {
+            bh.consume(parsedFrames[i]);
+        }
+    }
+
+    /**
+     * BUS point-to-point address (A=1-9, PL=1-9) for device i; beyond 81 devices addresses on local buses are used
+     */
+    private static String busWhere(int i) {
+        int area = 1 + i % 9;
+        int point = 1 + (i / 9) % 9;
+        int bus = i / 81;
+        return bus == 0 ? "" + area + point : "" + area + point + "#4#" + (bus < 10 ? "0" + bus : "" + bus);
+    }
+
+    /**
+     * Replace the WHERE of a Lighting frame
+     */
+    private static String readdress(String frame, String where) {
+        boolean dimension = frame.startsWith("*#");
+        int whereStart = frame.indexOf('*', dimension ? 2 : frame.indexOf('*', 1) + 1) + 1;
+        int whereEnd = frame.indexOf('*', whereStart);
+        if (whereEnd < 0) {
+            whereEnd = frame.length() - 2;
+        }
+        return frame.substring(0, whereStart) + where + frame.substring(whereEnd);
+    }
+
+    private static List<String> readRecordedFrames() throws IOException {
+        List<String> recorded = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                FrameProcessingBenchmark.class.getResourceAsStream(RECORDED_FRAMES), StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    recorded.add(line.trim());
+                }
+            }
+        }
+        return recorded;
+    }
+
+    /**
+     * A callback that keeps the thing status (so handlers see themselves ONLINE after the first frame), returns the
+     * bridge and ignores everything else
+     */
+    private static ThingHandlerCallback stubCallback(Bridge bridge) {
+        return (ThingHandlerCallback) Proxy.newProxyInstance(FrameProcessingBenchmark.class.getClassLoader(),
+                new Class<?>[] { ThingHandlerCallback.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "statusUpdated":
+                            ((Thing) args[0]).setStatusInfo((ThingStatusInfo) args[1]);
+                            return null;
+                        case "getBridge":
+                            return bridge;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "StubThingHandlerCallback";
+                        default:
+                            return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.simulator;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link GatewaySimulator} is a local OpenWebNet BUS gateway (like MH200N/F454) for load and soak testing the
+ * binding without real hardware. It accepts command and monitor sessions on a TCP port, simulates a {@link VirtualBus}
+ * of lights and dimmers and can generate spontaneous events, event storms and disconnects.
+ *
+ * A <code>bus_gateway</code> bridge connects to it with no changes, setting host/port (and password, if the
+ * simulator is started with <code>--password</code>).
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class GatewaySimulator {
+
+    private static final int TICK = 10; // ms, event generation period
+
+    private final Logger logger = LoggerFactory.getLogger(GatewaySimulator.class);
+
+    private final SimulatorConfig config;
+    private final VirtualBus bus;
+    private final Set<SimulatorSession> sessions = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "simulator-events");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicInteger sessionIds = new AtomicInteger();
+    private final AtomicLong acceptedSessions = new AtomicLong();
+    private final AtomicLong refusedSessions = new AtomicLong();
+    private final AtomicLong nacks = new AtomicLong();
+    private final AtomicLong monitorOverflows = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+
+    private ServerSocket serverSocket;
+    private volatile long downUntil;
+    private long startTime;
+    private double pendingEvents;
+    private boolean storming;
+
+    public GatewaySimulator(SimulatorConfig config) {
+        this.config = config;
+        this.bus = new VirtualBus(config.lights, config.dimmers,
+                config.seed != null ? new Random(config.seed) : new Random());
+    }
+
+    public static void main(String[] args) {
+        SimulatorConfig config;
+        try {
+            config = SimulatorConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(SimulatorConfig.USAGE);
+            System.exit(1);
+            return;
+        }
+        if (config.help) {
+            System.out.println(SimulatorConfig.USAGE);
+            return;
+        }
+        GatewaySimulator simulator = new GatewaySimulator(config);
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::stop, "simulator-shutdown"));
+        try {
+            simulator.run();
+        } catch (IOException e) {
+            System.err.println("Cannot start simulator: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Listen for sessions until {@link #stop()} is called
+     *
+     * @throws IOException if the port cannot be opened
+     */
+    public void run() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getByName(config.bind), config.port));
+        logger.info("==OWN:Simulator== BUS gateway simulator listening on {}:{} ({} lights, {} dimmers, password: {})",
+                config.bind, config.port, config.lights, config.dimmers, config.password != null ? "yes" : "no");
+        startTime = System.nanoTime();
+        downUntil = startTime;
+        if (config.eventRate > 0 || config.stormDuration > 0) {
+            scheduler.scheduleAtFixedRate(this::generateEvents, TICK, TICK, TimeUnit.MILLISECONDS);
+        }
+        if (config.disconnectInterval > 0) {
+            scheduler.scheduleAtFixedRate(this::disconnectAll, config.disconnectInterval, config.disconnectInterval,
+                    TimeUnit.SECONDS);
+        }
+        if (config.statsInterval > 0) {
+            scheduler.scheduleAtFixedRate(this::logStats, config.statsInterval, config.statsInterval,
+                    TimeUnit.SECONDS);
+        }
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.warn("==OWN:Simulator== error accepting session: {}", e.getMessage());
+                }
+                continue;
+            }
+            if (System.nanoTime() - downUntil < 0) {
+                refusedSessions.incrementAndGet();
+                logger.debug("==OWN:Simulator== gateway down: refusing session from {}",
+                        socket.getRemoteSocketAddress());
+                closeQuietly(socket);
+                continue;
+            }
+            String name = "session-" + sessionIds.incrementAndGet();
+            SimulatorSession session = new SimulatorSession(socket, name, config, bus, this);
+            sessions.add(session);
+            acceptedSessions.incrementAndGet();
+            logger.debug("==OWN:Simulator== {} accepted from {}", name, socket.getRemoteSocketAddress());
+            Thread thread = new Thread(session, "simulator-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop listening and close all sessions
+     */
+    public void stop() {
+        scheduler.shutdownNow();
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                logger.debug("==OWN:Simulator== exception while closing server socket: {}", e.getMessage());
+            }
+        }
+        sessions.forEach(SimulatorSession::close);
+    }
+
+    /**
+     * Generate the spontaneous events due in this tick, at event rate plus storm rate during storms. Storms start
+     * every storm interval (the first one after one interval, so that clients can connect first).
+     */
+    private void generateEvents() {
+        long elapsed = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startTime);
+        boolean storm = config.stormDuration > 0 && elapsed >= config.stormInterval
+                && elapsed % config.stormInterval < config.stormDuration;
+        if (storm != storming) {
+            storming = storm;
+            logger.info("==OWN:Simulator== event storm {} ({} events/s)", storm ? "STARTED" : "ENDED",
+                    config.stormRate);
+        }
+        pendingEvents += (config.eventRate + (storm ? config.stormRate : 0)) * TICK / 1000.0;
+        while (pendingEvents >= 1) {
+            bus.randomEvent();
+            pendingEvents--;
+        }
+    }
+
+    /**
+     * Close all sessions, as if the gateway was rebooted, and refuse new sessions for the configured downtime
+     */
+    private void disconnectAll() {
+        disconnects.incrementAndGet();
+        downUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.downtime);
+        logger.info("==OWN:Simulator== DISCONNECTING {} sessions (down for {}s)", sessions.size(), config.downtime);
+        sessions.forEach(SimulatorSession::close);
+    }
+
+    private void logStats() {
+        logger.info(
+                "==OWN:Simulator== sessions: {} open ({} monitors), {} accepted, {} refused | commands: {}, status requests: {}, NACKs: {} | events: {}, monitor frames: {}, monitor overflows: {} | disconnects: {}",
+                sessions.size(), bus.getMonitorsCount(), acceptedSessions.get(), refusedSessions.get(),
+                bus.getCommands(), bus.getStatusRequests(), nacks.get(), bus.getEvents(), bus.getMonitorFrames(),
+                monitorOverflows.get(), disconnects.get());
+    }
+
+    void sessionClosed(SimulatorSession session) {
+        sessions.remove(session);
+    }
+
+    void nackSent() {
+        nacks.incrementAndGet();
+    }
+
+    void monitorOverflow() {
+        monitorOverflows.incrementAndGet();
+    }
+
+    private void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("==OWN:Simulator== exception while closing socket: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.simulator;
+
+/**
+ * The {@link SimulatorConfig} holds the options of the {@link GatewaySimulator}, parsed from the command line.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class SimulatorConfig {
+
+    static final String USAGE = "Usage: GatewaySimulator [options]\n" //
+            + "  --bind <address>            address to listen on (default: 127.0.0.1)\n" //
+            + "  --port <port>               port to listen on (default: 20000)\n" //
+            + "  --password <passwd>         OPEN password requested to clients (default: none, no password)\n" //
+            + "  --lights <n>                number of ON/OFF lighting points (default: 20)\n" //
+            + "  --dimmers <n>               number of dimmers (default: 10)\n" //
+            + "  --latency <ms>              delay before answering each command (default: 0)\n" //
+            + "  --jitter <ms>               random extra delay added to latency (default: 0)\n" //
+            + "  --nack-rate <0..1>          fraction of commands answered with NACK (default: 0)\n" //
+            + "  --event-rate <n>            spontaneous state changes per second (default: 0)\n" //
+            + "  --storm-rate <n>            state changes per second during an event storm (default: 1000)\n" //
+            + "  --storm-duration <s>        duration of each event storm, 0 = no storms (default: 0)\n" //
+            + "  --storm-interval <s>        time between the start of two event storms (default: 60)\n" //
+            + "  --disconnect-interval <s>   close all sessions every <s> seconds, 0 = never (default: 0)\n" //
+            + "  --downtime <s>              refuse new sessions for <s> seconds after a disconnect (default: 0)\n" //
+            + "  --command-idle-timeout <s>  close idle command sessions, 0 = never (default: 0)\n" //
+            + "  --stats-interval <s>        log statistics every <s> seconds, 0 = never (default: 10)\n" //
+            + "  --seed <n>                  seed for random latency, NACKs and events (default: random)\n" //
+            + "  --help                      print this help";
+
+    static final int MAX_POINTS = 1296; // 81 points on the local bus + 81 points for each of 15 interfaces
+
+    String bind = "127.0.0.1";
+    int port = 20000;
+    String password;
+    int lights = 20;
+    int dimmers = 10;
+    int latency;
+    int jitter;
+    double nackRate;
+    int eventRate;
+    int stormRate = 1000;
+    int stormDuration;
+    int stormInterval = 60;
+    int disconnectInterval;
+    int downtime;
+    int commandIdleTimeout;
+    int statsInterval = 10;
+    Long seed;
+    boolean help;
+
+    /**
+     * Parse the command line options
+     *
+     * @param args command line arguments
+     * @return the config
+     * @throws IllegalArgumentException if an option is unknown or has an invalid value
+     */
+    static SimulatorConfig parse(String[] args) {
+        SimulatorConfig config = new SimulatorConfig();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if ("--help".equals(option) || "-h".equals(option)) {
+                config.help = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for option " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--bind":
+                    config.bind = value;
+                    break;
+                case "--port":
+                    config.port = intValue(option, value, 1, 65535);
+                    break;
+                case "--password":
+                    config.password = value.isEmpty() ? null : value;
+                    break;
+                case "--lights":
+                    config.lights = intValue(option, value, 0, MAX_POINTS);
+                    break;
+                case "--dimmers":
+                    config.dimmers = intValue(option, value, 0, MAX_POINTS);
+                    break;
+                case "--latency":
+                    config.latency = intValue(option, value, 0, Integer.MAX_VALUE);
+                    break;
+                case "--jitter":
+                    config.jitter = intValue(option, value, 0, Integer.MAX_VALUE);
+                    break;
+                case "--nack-rate":
+                    try {
+                        config.nackRate = Double.parseDouble(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid value for option " + option + ": " + value);
+                    }
+                    if (config.nackRate < 0 || config.nackRate > 1) {
+                        throw new IllegalArgumentException(option + " must be between 0 and 1: " + value);
+                    }
+                    break;
+                case "--event-rate":
+                    config.eventRate = intValue(option, value, 0, Integer.MAX_VALUE);
+                    break;
+                case "--storm-rate":
+                    config.stormRate = intValue(option, value, 0, Integer.MAX_VALUE);
+                    break;
+                case "--storm-duration":
+                    config.stormDuration = intValue(option, value, 0, Integer.MAX_VALUE);
+                    break;
+                case "--storm-interval":
+                    config.stormInterval = intValue(option, value, 1, Integer.MAX_VALUE);
+                    break;
+                case "--disconnect-interval":
+                    config.disconnectInterval = intValue(option, value, 0, Integer.MAX_VALUE);
+                    break;
+                case "--downtime":
+                    config.downtime = intValue(option, value, 0, Integer.MAX_VALUE);
+                    break;
+                case "--command-idle-timeout":
+                    config.commandIdleTimeout = intValue(option, value, 0, Integer.MAX_VALUE / 1000);
+                    break;
+                case "--stats-interval":
+                    config.statsInterval = intValue(option, value, 0, Integer.MAX_VALUE);
+                    break;
+                case "--seed":
+                    try {
+                        config.seed = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid value for option " + option + ": " + value);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        if (config.lights + config.dimmers > MAX_POINTS) {
+            throw new IllegalArgumentException("Too many points: at most " + MAX_POINTS + " lights + dimmers");
+        }
+        return config;
+    }
+
+    private static int intValue(String option, String value, int min, int max) {
+        int intValue;
+        try {
+            intValue = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for option " + option + ": " + value);
+        }
+        if (intValue < min || intValue > max) {
+            throw new IllegalArgumentException(option + " must be between " + min + " and " + max + ": " + value);
+        }
+        return intValue;
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.simulator;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.openwebnet.bus.MyHomeSocketFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SimulatorSession} is a client connection to the {@link GatewaySimulator}, run by its own thread. It
+ * performs the gateway side of the OpenWebNet session handshake (greeting ACK, session type, OPEN password with a
+ * random nonce) and then serves a command session (commands and status requests, answered after the configured
+ * latency, possibly with NACK) or a monitor session (state changes of the {@link VirtualBus}).
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class SimulatorSession implements Runnable {
+
+    static final String ACK = "*#*1##";
+    static final String NACK = "*#*0##";
+    static final String COMMAND_SESSION = "*99*0##";
+    static final String MONITOR_SESSION = "*99*1##";
+
+    private static final int MAX_FRAME_LENGTH = 1024;
+    private static final int HANDSHAKE_TIMEOUT = 10000; // ms
+    private static final int MONITOR_QUEUE_SIZE = 10000;
+    private static final int NONCE_LENGTH = 9;
+
+    private final Logger logger = LoggerFactory.getLogger(SimulatorSession.class);
+
+    private final Socket socket;
+    private final String name;
+    private final SimulatorConfig config;
+    private final VirtualBus bus;
+    private final GatewaySimulator simulator;
+    private final StringBuilder frameBuffer = new StringBuilder(64);
+    private final BlockingQueue<String> monitorQueue = new LinkedBlockingQueue<>(MONITOR_QUEUE_SIZE);
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private InputStream in;
+    private OutputStream out;
+
+    SimulatorSession(Socket socket, String name, SimulatorConfig config, VirtualBus bus, GatewaySimulator simulator) {
+        this.socket = socket;
+        this.name = name;
+        this.config = config;
+        this.bus = bus;
+        this.simulator = simulator;
+    }
+
+    @Override
+    public void run() {
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+            in = new BufferedInputStream(socket.getInputStream());
+            out = socket.getOutputStream();
+            write(ACK);
+            String sessionType = readFrame();
+            if (!COMMAND_SESSION.equals(sessionType) && !MONITOR_SESSION.equals(sessionType)) {
+                logger.info("==OWN:Simulator== {} unsupported session type {}: closing", name, sessionType);
+                write(NACK);
+                return;
+            }
+            if (!authenticate()) {
+                return;
+            }
+            write(ACK);
+            if (MONITOR_SESSION.equals(sessionType)) {
+                logger.debug("==OWN:Simulator== {} monitor session started", name);
+                serveMonitor();
+            } else {
+                logger.debug("==OWN:Simulator== {} command session started", name);
+                serveCommands();
+            }
+        } catch (IOException e) {
+            if (!closed.get()) {
+                logger.debug("==OWN:Simulator== {} session ended: {}", name, e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * OPEN password: send a nonce and check the client answers with the password hashed with it
+     */
+    private boolean authenticate() throws IOException {
+        if (config.password == null) {
+            return true;
+        }
+        StringBuilder nonce = new StringBuilder(NONCE_LENGTH);
+        for (int i = 0; i < NONCE_LENGTH; i++) {
+            nonce.append((char) ('1' + ThreadLocalRandom.current().nextInt(9)));
+        }
+        write("*#" + nonce + "##");
+        String answer = readFrame();
+        String expected = "*#" + MyHomeSocketFactory.calcPass(config.password, nonce.toString()) + "##";
+        if (!expected.equals(answer)) {
+            logger.info("==OWN:Simulator== {} wrong password: closing", name);
+            write(NACK);
+            return false;
+        }
+        return true;
+    }
+
+    private void serveCommands() throws IOException, InterruptedException {
+        socket.setSoTimeout(config.commandIdleTimeout * 1000);
+        StringBuilder answer = new StringBuilder(64);
+        while (!closed.get()) {
+            String frame;
+            try {
+                frame = readFrame();
+            } catch (SocketTimeoutException e) {
+                logger.debug("==OWN:Simulator== {} command session idle for {}s: closing", name,
+                        config.commandIdleTimeout);
+                return;
+            }
+            int delay = config.latency + (config.jitter > 0 ? ThreadLocalRandom.current().nextInt(config.jitter) : 0);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            answer.setLength(0);
+            List<String> frames = null;
+            if (config.nackRate == 0 || ThreadLocalRandom.current().nextDouble() >= config.nackRate) {
+                frames = bus.execute(frame);
+            }
+            if (frames == null) {
+                simulator.nackSent();
+                answer.append(NACK);
+            } else {
+                frames.forEach(answer::append);
+                answer.append(ACK);
+            }
+            write(answer.toString());
+        }
+    }
+
+    private void serveMonitor() throws IOException, InterruptedException {
+        bus.addMonitor(this);
+        if (closed.get()) {
+            bus.removeMonitor(this); // closed meanwhile
+        }
+        while (!closed.get()) {
+            String frame = monitorQueue.poll(1, TimeUnit.SECONDS);
+            if (frame != null) {
+                write(frame);
+            }
+        }
+    }
+
+    /**
+     * Queue a frame for a monitor session. If the client does not keep up and the queue is full, the session is
+     * closed, as a real gateway would do.
+     */
+    void sendMonitorFrame(String frame) {
+        if (!monitorQueue.offer(frame) && !closed.get()) {
+            logger.warn("==OWN:Simulator== {} monitor client too slow ({} frames queued): closing", name,
+                    MONITOR_QUEUE_SIZE);
+            simulator.monitorOverflow();
+            close();
+        }
+    }
+
+    private void write(String frames) throws IOException {
+        logger.trace("==OWN:Simulator== {} SEND >>>>> {}", name, frames);
+        out.write(frames.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private String readFrame() throws IOException {
+        frameBuffer.setLength(0);
+        int len = 0;
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("session closed by client");
+            }
+            frameBuffer.append((char) b);
+            len++;
+            if (b == '#' && len >= 2 && frameBuffer.charAt(len - 2) == '#') {
+                logger.trace("==OWN:Simulator== {} RECEIVED <<<<< {}", name, frameBuffer);
+                return frameBuffer.toString();
+            }
+            if (len > MAX_FRAME_LENGTH) {
+                throw new IOException("invalid frame received (no end of frame)");
+            }
+        }
+    }
+
+    /**
+     * Close the session. Does nothing if already closed.
+     */
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        bus.removeMonitor(this);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("==OWN:Simulator== {} exception while closing session: {}", name, e.getMessage());
+        }
+        simulator.sessionClosed(this);
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.simulator;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link VirtualBus} models the lighting points (ON/OFF lights and dimmers) of a simulated BUS installation. It
+ * executes Lighting commands and status requests received on command sessions and sends the resulting state changes
+ * to all monitor sessions, in the same order for every monitor.
+ *
+ * Points get WHERE addresses 11..99 (A=1..9, PL=1..9) on the local bus, then APL#4#II on interfaces II=01..15.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class VirtualBus {
+
+    private static final String WHO_LIGHTING = "1";
+    private static final String WHO_GATEWAY = "13";
+    private static final String WHERE_GENERAL = "0";
+
+    private static final int WHAT_OFF = 0;
+    private static final int WHAT_ON = 1;
+    private static final int LEVEL_MIN = 2; // DIM_20
+    private static final int LEVEL_MAX = 10; // DIM_100
+    private static final int WHAT_DIM_UP = 30;
+    private static final int WHAT_DIM_DOWN = 31;
+    private static final int WHAT_TOGGLE = 32;
+    private static final int DIMMER_INITIAL_LEVEL = 5; // dimmers start ON at 50%, so discovery finds them as dimmers
+
+    private static class Point {
+        final String where;
+        final boolean dimmer;
+        int level; // 0 = OFF, 1 = ON (lights), 2..10 (dimmers)
+        int lastOnLevel;
+
+        Point(String where, boolean dimmer) {
+            this.where = where;
+            this.dimmer = dimmer;
+            this.level = dimmer ? DIMMER_INITIAL_LEVEL : WHAT_OFF;
+            this.lastOnLevel = dimmer ? DIMMER_INITIAL_LEVEL : WHAT_ON;
+        }
+
+        void apply(int what) {
+            switch (what) {
+                case WHAT_OFF:
+                    level = WHAT_OFF;
+                    break;
+                case WHAT_ON:
+                    level = lastOnLevel;
+                    break;
+                case WHAT_DIM_UP:
+                    if (dimmer) {
+                        setLevel(level == WHAT_OFF ? LEVEL_MIN : Math.min(LEVEL_MAX, level + 1));
+                    }
+                    break;
+                case WHAT_DIM_DOWN:
+                    if (dimmer && level > LEVEL_MIN) {
+                        setLevel(level - 1);
+                    }
+                    break;
+                case WHAT_TOGGLE:
+                    level = level == WHAT_OFF ? lastOnLevel : WHAT_OFF;
+                    break;
+                default:
+                    if (what >= LEVEL_MIN && what <= LEVEL_MAX) {
+                        setLevel(dimmer ? what : WHAT_ON); // lights just turn ON
+                    }
+                    break;
+            }
+        }
+
+        void setLevel(int newLevel) {
+            level = newLevel;
+            if (newLevel != WHAT_OFF) {
+                lastOnLevel = newLevel;
+            }
+        }
+
+        String stateFrame() {
+            return "*1*" + level + "*" + where + "##";
+        }
+    }
+
+    private final List<Point> points = new ArrayList<>();
+    private final Map<String, Point> pointsByWhere = new HashMap<>();
+    private final Set<SimulatorSession> monitors = new CopyOnWriteArraySet<>();
+    private final Random random;
+
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong statusRequests = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong monitorFrames = new AtomicLong();
+
+    /**
+     * @param lights number of ON/OFF lights
+     * @param dimmers number of dimmers
+     * @param random random generator for spontaneous events
+     */
+    public VirtualBus(int lights, int dimmers, Random random) {
+        this.random = random;
+        for (int i = 0; i < lights + dimmers; i++) {
+            Point point = new Point(whereOf(i), i >= lights);
+            points.add(point);
+            pointsByWhere.put(point.where, point);
+        }
+    }
+
+    /**
+     * @return WHERE of the i-th point: 11..99 on the local bus, then APL#4#II
+     */
+    static String whereOf(int i) {
+        int local = i % 81;
+        String apl = "" + (1 + local / 9) + (1 + local % 9);
+        int iface = i / 81;
+        return iface == 0 ? apl : apl + "#4#" + (iface < 10 ? "0" : "") + iface;
+    }
+
+    public void addMonitor(SimulatorSession monitor) {
+        monitors.add(monitor);
+    }
+
+    public void removeMonitor(SimulatorSession monitor) {
+        monitors.remove(monitor);
+    }
+
+    /**
+     * Execute a frame received on a command session
+     *
+     * @param frame the frame
+     * @return frames to send back before the final ACK, or null to answer NACK
+     */
+    public List<String> execute(String frame) {
+        if (frame.length() < 6 || frame.charAt(0) != '*' || !frame.endsWith("##")) {
+            return null;
+        }
+        boolean request = frame.charAt(1) == '#';
+        String[] parts = frame.substring(request ? 2 : 1, frame.length() - 2).split("\\*", -1);
+        if (request) {
+            if (WHO_LIGHTING.equals(parts[0]) && parts.length == 2) {
+                statusRequests.incrementAndGet();
+                return status(parts[1]);
+            } else if (WHO_GATEWAY.equals(parts[0]) && parts.length == 3 && parts[1].isEmpty()) {
+                return gatewayStatus(parts[2]);
+            }
+            return null;
+        }
+        if (WHO_LIGHTING.equals(parts[0]) && parts.length == 3) {
+            int paramStart = parts[1].indexOf('#'); // WHAT#speed
+            int what;
+            try {
+                what = Integer.parseInt(paramStart < 0 ? parts[1] : parts[1].substring(0, paramStart));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            commands.incrementAndGet();
+            lightingCommand(frame, what, parts[2]);
+            return Collections.emptyList();
+        }
+        return null;
+    }
+
+    private synchronized List<String> status(String where) {
+        List<String> answer = new ArrayList<>();
+        for (Point point : select(where)) {
+            answer.add(point.stateFrame());
+        }
+        return answer;
+    }
+
+    private List<String> gatewayStatus(String what) {
+        LocalDateTime now = LocalDateTime.now();
+        switch (what) {
+            case "0": // time
+                return Collections.singletonList(String.format("*#13**0*%02d*%02d*%02d*001##", now.getHour(),
+                        now.getMinute(), now.getSecond()));
+            case "1": // date
+                return Collections.singletonList(String.format("*#13**1*%02d*%02d*%02d*%04d##",
+                        now.getDayOfWeek().getValue() % 7, now.getDayOfMonth(), now.getMonthValue(), now.getYear()));
+            case "15": // model: MH200N
+                return Collections.singletonList("*#13**15*13##");
+            case "16": // firmware version
+                return Collections.singletonList("*#13**16*1*0*0##");
+            default:
+                return null;
+        }
+    }
+
+    private synchronized void lightingCommand(String frame, int what, String where) {
+        List<Point> selected = select(where);
+        if (selected.size() != 1 || !selected.get(0).where.equals(where)) {
+            // general/area commands are seen on the bus too, before the actuators answer
+            broadcast(frame);
+        }
+        for (Point point : selected) {
+            point.apply(what);
+            broadcast(point.stateFrame());
+        }
+    }
+
+    /**
+     * Points addressed by a WHERE: general (0), area (1..9), or a single point
+     */
+    private List<Point> select(String where) {
+        if (WHERE_GENERAL.equals(where)) {
+            return points;
+        }
+        if (where.length() == 1 && where.charAt(0) >= '1' && where.charAt(0) <= '9') {
+            List<Point> area = new ArrayList<>();
+            for (Point point : points) {
+                if (point.where.charAt(0) == where.charAt(0) && point.where.length() == 2) {
+                    area.add(point);
+                }
+            }
+            return area;
+        }
+        Point point = pointsByWhere.get(where);
+        return point == null ? Collections.emptyList() : Collections.singletonList(point);
+    }
+
+    /**
+     * Change the state of a random point, as if it was operated from a wall switch
+     */
+    public synchronized void randomEvent() {
+        if (points.isEmpty()) {
+            return;
+        }
+        Point point = points.get(random.nextInt(points.size()));
+        if (point.dimmer) {
+            int level = random.nextInt(LEVEL_MAX); // 0, 2..10
+            point.setLevel(level == WHAT_ON ? LEVEL_MAX : level);
+        } else {
+            point.apply(WHAT_TOGGLE);
+        }
+        events.incrementAndGet();
+        broadcast(point.stateFrame());
+    }
+
+    private void broadcast(String frame) {
+        for (SimulatorSession monitor : monitors) {
+            monitor.sendMonitorFrame(frame);
+            monitorFrames.incrementAndGet();
+        }
+    }
+
+    public int getPointsCount() {
+        return points.size();
+    }
+
+    public int getMonitorsCount() {
+        return monitors.size();
+    }
+
+    public long getCommands() {
+        return commands.get();
+    }
+
+    public long getStatusRequests() {
+        return statusRequests.get();
+    }
+
+    public long getEvents() {
+        return events.get();
+    }
+
+    public long getMonitorFrames() {
+        return monitorFrames.get();
+    }
+}
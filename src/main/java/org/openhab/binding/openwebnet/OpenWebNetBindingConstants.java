@@ -42,6 +42,10 @@ public class OpenWebNetBindingConstants {
     public static final String THING_LABEL_BUS_ON_OFF_SWITCH = "OpenWebNet BUS/SCS On/Off Switch";
     public static final ThingTypeUID THING_TYPE_BUS_DIMMER = new ThingTypeUID(BINDING_ID, "bus_dimmer");
     public static final String THING_LABEL_BUS_DIMMER = "OpenWebNet BUS/SCS Dimmer";
+    public static final ThingTypeUID THING_TYPE_BUS_AREA = new ThingTypeUID(BINDING_ID, "bus_area");
+    public static final String THING_LABEL_BUS_AREA = "OpenWebNet BUS/SCS Lighting Area";
+    public static final ThingTypeUID THING_TYPE_BUS_GROUP = new ThingTypeUID(BINDING_ID, "bus_group");
+    public static final String THING_LABEL_BUS_GROUP = "OpenWebNet BUS/SCS Lighting Group";
     // ZIGBEE
     public static final ThingTypeUID THING_TYPE_ON_OFF_SWITCH = new ThingTypeUID(BINDING_ID, "on_off_switch");
     public static final String THING_LABEL_ON_OFF_SWITCH = "OpenWebNet ZigBee On/Off Switch";
@@ -56,11 +60,13 @@ public class OpenWebNetBindingConstants {
     public final static Set<ThingTypeUID> DEVICE_SUPPORTED_THING_TYPES = Sets.newHashSet(THING_TYPE_ON_OFF_SWITCH,
             THING_TYPE_ON_OFF_SWITCH_2UNITS, THING_TYPE_DIMMER, THING_TYPE_DEVICE, THING_TYPE_BUS_ON_OFF_SWITCH,
             THING_TYPE_BUS_DIMMER);
+    public final static Set<ThingTypeUID> GROUP_SUPPORTED_THING_TYPES = Sets.newHashSet(THING_TYPE_BUS_AREA,
+            THING_TYPE_BUS_GROUP);
     public final static Set<ThingTypeUID> BRIDGE_SUPPORTED_THING_TYPES = Sets.newHashSet(THING_TYPE_DONGLE,
             THING_TYPE_BUS_GATEWAY);
 
-    public final static Set<ThingTypeUID> ALL_SUPPORTED_THING_TYPES = Sets.union(DEVICE_SUPPORTED_THING_TYPES,
-            BRIDGE_SUPPORTED_THING_TYPES);
+    public final static Set<ThingTypeUID> ALL_SUPPORTED_THING_TYPES = Sets.union(
+            Sets.union(DEVICE_SUPPORTED_THING_TYPES, GROUP_SUPPORTED_THING_TYPES), BRIDGE_SUPPORTED_THING_TYPES);
 
     // List of all Channel ids
     public static final String CHANNEL_SWITCH = "switch";
@@ -68,15 +74,39 @@ public class OpenWebNetBindingConstants {
     public static final String CHANNEL_SWITCH_02 = "switch_02";
     public static final String CHANNEL_BRIGHTNESS = "brightness";
     public static final String CHANNEL_SHUTTER = "shutter";
+    // bridge metrics channels (read-only)
+    public static final String CHANNEL_METRICS_FRAMES_RATE = "metricsFramesRate";
+    public static final String CHANNEL_METRICS_UNMATCHED_FRAMES = "metricsUnmatchedFrames";
+    public static final String CHANNEL_METRICS_DROPPED_FRAMES = "metricsDroppedFrames";
+    public static final String CHANNEL_METRICS_DISPATCH_QUEUE_DEPTH = "metricsDispatchQueueDepth";
+    public static final String CHANNEL_METRICS_COMMAND_LATENCY_P50 = "metricsCommandLatencyP50";
+    public static final String CHANNEL_METRICS_COMMAND_LATENCY_P99 = "metricsCommandLatencyP99";
+    public static final String CHANNEL_METRICS_COMMAND_NACKS = "metricsCommandNacks";
+    public static final String CHANNEL_METRICS_RECONNECTS = "metricsReconnects";
 
     // config properties
     public static final String CONFIG_PROPERTY_SERIAL_PORT = "serialPort";
 
     public static final String CONFIG_PROPERTY_WHERE = "where";
+    public static final String CONFIG_PROPERTY_MEMBERS = "members";
     public static final String CONFIG_PROPERTY_HOST = "host";
     public static final String CONFIG_PROPERTY_PORT = "port";
     public static final String CONFIG_PROPERTY_PASSWD = "passwd";
 
     public static final String CONFIG_PROPERTY_FIRMWARE = "firmwareVersion";
+    public static final String CONFIG_PROPERTY_TRANSPORT = "transport";
+
+    // bridge dispatch config properties
+    public static final String CONFIG_PROPERTY_DISPATCH_THREADS = "dispatchThreads";
+    public static final String CONFIG_PROPERTY_DISPATCH_QUEUE_SIZE = "dispatchQueueSize";
+    public static final String CONFIG_PROPERTY_DISPATCH_OVERFLOW_POLICY = "dispatchOverflowPolicy";
+    public static final String CONFIG_PROPERTY_STATE_UPDATE_WINDOW = "stateUpdateWindow";
+    public static final String CONFIG_PROPERTY_COMMAND_BATCH_WINDOW = "commandBatchWindow";
+    public static final String CONFIG_PROPERTY_COMMAND_SESSIONS = "commandSessions";
+    public static final String CONFIG_PROPERTY_COMMAND_SESSION_KEEPALIVE = "commandSessionKeepAlive";
+    public static final String CONFIG_PROPERTY_COMMAND_QUEUE_SIZE = "commandQueueSize";
+    public static final String CONFIG_PROPERTY_STATE_CACHE_TTL = "stateCacheTtl";
+    public static final String CONFIG_PROPERTY_BACKGROUND_DISCOVERY = "backgroundDiscovery";
+    public static final String CONFIG_PROPERTY_VIRTUAL_THREADS = "virtualThreads";
 
 }
@@ -10,37 +10,75 @@ package org.openhab.binding.openwebnet.handler;
 
 import static org.openhab.binding.openwebnet.OpenWebNetBindingConstants.*;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.eclipse.smarthome.config.core.ConfigConstants;
 import org.eclipse.smarthome.config.core.status.ConfigStatusMessage;
+import org.eclipse.smarthome.core.library.types.DecimalType;
 import org.eclipse.smarthome.core.thing.Bridge;
 import org.eclipse.smarthome.core.thing.ChannelUID;
 import org.eclipse.smarthome.core.thing.Thing;
 import org.eclipse.smarthome.core.thing.ThingStatus;
 import org.eclipse.smarthome.core.thing.ThingStatusDetail;
 import org.eclipse.smarthome.core.thing.ThingTypeUID;
-import org.eclipse.smarthome.core.thing.ThingUID;
 import org.eclipse.smarthome.core.thing.binding.ConfigStatusBridgeHandler;
 import org.eclipse.smarthome.core.types.Command;
+import org.eclipse.smarthome.core.types.RefreshType;
 import org.openhab.binding.openwebnet.OpenWebNetBindingConstants;
+import org.openhab.binding.openwebnet.internal.bus.BatchingCommandSender;
+import org.openhab.binding.openwebnet.internal.bus.BusCommandSessionPool;
+import org.openhab.binding.openwebnet.internal.bus.ReconnectSupervisor;
+import org.openhab.binding.openwebnet.internal.command.CommandPriority;
+import org.openhab.binding.openwebnet.internal.command.CommandScheduler;
+import org.openhab.binding.openwebnet.internal.command.StatusRequestRegistry;
+import org.openhab.binding.openwebnet.internal.dispatch.BindingThreadFactory;
+import org.openhab.binding.openwebnet.internal.dispatch.StripedEventDispatcher;
+import org.openhab.binding.openwebnet.internal.dispatch.StripedEventDispatcher.OverflowPolicy;
+import org.openhab.binding.openwebnet.internal.frame.FrameListener;
+import org.openhab.binding.openwebnet.internal.frame.OpenFrame;
+import org.openhab.binding.openwebnet.internal.metrics.GatewayMetrics;
+import org.openhab.binding.openwebnet.internal.nio.NioOpenGatewayBus;
+import org.openhab.binding.openwebnet.internal.state.ChannelStateCoalescer;
+import org.openhab.binding.openwebnet.internal.state.DeviceStateCache;
+import org.openhab.binding.openwebnet.internal.state.StateSnapshot;
+import org.openhab.binding.openwebnet.internal.state.StateSnapshot.DeviceState;
+import org.openhab.binding.openwebnet.internal.timer.HashedTimingWheel;
+import org.openhab.binding.openwebnet.internal.timer.HashedTimingWheel.Timeout;
+import org.openhab.binding.openwebnet.internal.zigbee.SerialPortGatewayZigBee;
 import org.openhab.binding.openwebnet.internal.discovery.OpenWebNetDeviceDiscoveryService;
+import org.openhab.binding.openwebnet.internal.discovery.PassiveDeviceDiscovery;
 import org.openwebnet.OpenError;
 import org.openwebnet.OpenGateway;
 import org.openwebnet.OpenGatewayBus;
 import org.openwebnet.OpenGatewayZigBee;
 import org.openwebnet.OpenListener;
 import org.openwebnet.OpenNewDeviceListener;
+import org.openwebnet.OpenSession;
+import org.openwebnet.OpenSessionError;
+import org.openwebnet.OpenSessionListener;
 import org.openwebnet.OpenWebNet;
-import org.openwebnet.message.GatewayManagement;
+import org.openwebnet.message.BaseOpenMessage;
 import org.openwebnet.message.Lighting;
 import org.openwebnet.message.OpenMessage;
 import org.openwebnet.message.OpenMessageFactory;
+import org.openwebnet.message.Who;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,7 +87,7 @@ import org.slf4j.LoggerFactory;
  *
  * @author Massimo Valla - Initial contribution
  */
-public class OpenWebNetBridgeHandler extends ConfigStatusBridgeHandler implements OpenListener {
+public class OpenWebNetBridgeHandler extends ConfigStatusBridgeHandler implements OpenListener, FrameListener {
 
     private final Logger logger = LoggerFactory.getLogger(OpenWebNetBridgeHandler.class);
 
@@ -57,13 +95,96 @@ public class OpenWebNetBridgeHandler extends ConfigStatusBridgeHandler implement
     private static final int CONFIG_GATEWAY_DEFAULT_PORT = 20000;
     private static final String CONFIG_GATEWAY_DEFAULT_PASSWD = "12345";
     private static final String CONFIG_GATEWAY_DEFAULT_HOST = "127.0.0.1";
+    private static final String CONFIG_TRANSPORT_NIO = "nio";
+    private static final int CONFIG_DISPATCH_DEFAULT_QUEUE_SIZE = 256;
+    private static final OverflowPolicy CONFIG_DISPATCH_DEFAULT_OVERFLOW_POLICY = OverflowPolicy.COALESCE;
+    private static final int CONFIG_STATE_UPDATE_DEFAULT_WINDOW = 50; // ms
+    private static final int CONFIG_STATE_CACHE_DEFAULT_TTL = 60; // sec
+    private static final int CONFIG_COMMAND_BATCH_DEFAULT_WINDOW = 10; // ms
+    private static final int CONFIG_COMMAND_DEFAULT_SESSIONS = 2;
+    private static final int CONFIG_COMMAND_SESSION_DEFAULT_KEEPALIVE = 30; // sec
+    private static final int CONFIG_COMMAND_DEFAULT_QUEUE_SIZE = 128;
+    private static final int COMMAND_MAX_IN_FLIGHT = 8; // commands handed to the transport and not yet answered
+    private static final int COMMAND_RESPONSE_TIMEOUT = 10; // (sec) Time to wait for the answer to a command
+    private static final String ZIGBEE_WHERE_SUFFIX = "#9"; // network suffix of ZigBee WHERE addresses in frames
+    private static final int ZIGBEE_PORT_RETRY = 2; // (sec) Time to wait for discovery to release the serial port
+    private static final int METRICS_INTERVAL = 10; // (sec) Interval for metrics rates and metrics channels update
+    private static final int BULK_STATUS_DELAY = 2; // (sec) Time to wait for devices to register before bulk status
+    private static final int BULK_STATUS_SETTLE = 1; // (sec) Time to wait for bulk status answers to be dispatched
+    private static final String WHERE_GENERAL = "0";
+    private static final int TIMING_WHEEL_TICK = 100; // ms
+    private static final int SNAPSHOT_INTERVAL = 60; // (sec) Interval for writing the snapshot of device states
+    private static final String SNAPSHOT_FOLDER = "openwebnet"; // under userdata
+    private static final int TIMING_WHEEL_SIZE = 512; // ticks: 51.2 sec for a full round
+    private static final String WHERE_LOCAL_BUS = "#4#";
 
     public final static Set<ThingTypeUID> SUPPORTED_THING_TYPES = OpenWebNetBindingConstants.BRIDGE_SUPPORTED_THING_TYPES;
 
-    private Map<String, ThingUID> registeredDevices = new ConcurrentHashMap<>();
+    // dispatch index: WHERE key (as it appears in frames from the gateway) -> device handler
+    private final Map<String, OpenWebNetDeviceHandler> registeredDevices = new ConcurrentHashMap<>();
+    // area and group handlers by WHERE
+    private final Map<String, OpenWebNetGroupHandler> registeredGroups = new ConcurrentHashMap<>();
+
+    // hands over frames from the gateway monitor thread to device handlers, ordered by WHERE
+    private StripedEventDispatcher<String> eventDispatcher;
+
+    // each dispatcher thread tokenizes frames into its own reusable frame object
+    private final ThreadLocal<OpenFrame> dispatchFrame = ThreadLocal.withInitial(OpenFrame::new);
+
+    // filters and collapses channel state updates from device handlers before they reach the event bus
+    private ChannelStateCoalescer stateCoalescer;
+
+    // last channel states received from the gateway, to answer refreshes from memory
+    private DeviceStateCache stateCache;
+
+    // last known device states by ownId, restored from the snapshot file at startup and saved to it periodically
+    private final Map<String, DeviceState> deviceStates = new ConcurrentHashMap<>();
+    private Path snapshotFile;
+    private ScheduledFuture<?> snapshotJob;
+    private volatile boolean snapshotDirty = false;
+
+    // orders commands by priority and drops stale ones before they are handed to the transport
+    private CommandScheduler commandScheduler;
+
+    // merges identical pending status requests and drops the ones superseded by a command
+    private StatusRequestRegistry statusRequests;
+
+    // receives all frames while a device discovery is in progress
+    private volatile FrameListener frameObserver;
+
+    // receives frames for WHEREs with no thing associated while background discovery is enabled
+    private volatile PassiveDeviceDiscovery passiveDiscovery;
+    private boolean backgroundDiscovery = true;
+
+    // threads of this bridge are virtual if enabled and supported by the Java runtime
+    private boolean virtualThreads = false;
+    private BindingThreadFactory ioThreadFactory;
+
+    // number of commands the gateway can process in parallel
+    private int commandSessions = 1;
+
+    // sends commands to BUS gateways in batches over pooled command sessions
+    private BatchingCommandSender commandSender;
+    private BusCommandSessionPool commandSessionPool;
+
+    // measures outages and reopens monitor and command sessions in parallel after an outage
+    private ReconnectSupervisor reconnectSupervisor;
+
+    // frames, commands and connection metrics, also exposed as read-only channels and JMX MBean
+    private GatewayMetrics metrics;
+    private ScheduledFuture<?> metricsJob;
+
+    // deadlines of requests to the gateway and of device state requests
+    private HashedTimingWheel timingWheel;
+    private Timeout gatewayOnlineTimeout;
+
+    // while a bulk status request is pending devices do not request their own state
+    private volatile boolean bulkStatusPending = false;
+    private ScheduledFuture<?> bulkStatusJob;
 
     private OpenGateway gateway;
     private boolean isBusGateway = false;
+    private ScheduledFuture<?> portRetryJob;
 
     private boolean isGatewayConnected = false;
 
@@ -81,18 +202,50 @@ public class OpenWebNetBridgeHandler extends ConfigStatusBridgeHandler implement
         return isBusGateway;
     }
 
+    public ChannelStateCoalescer getStateCoalescer() {
+        return stateCoalescer;
+    }
+
+    public DeviceStateCache getStateCache() {
+        return stateCache;
+    }
+
+    public HashedTimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
     @Override
     public void initialize() {
         logger.debug("==OWN== BridgeHandler.initialize() ");
         ThingTypeUID thingType = getThing().getThingTypeUID();
         logger.debug("==OWN== type = {}", thingType);
 
+        initThreads();
         if (thingType.equals(THING_TYPE_DONGLE)) {
-            initZigBeeGateway();
+            if (!initZigBeeGateway()) {
+                return;
+            }
         } else {
             initBusGateway();
             isBusGateway = true;
         }
+        stateCoalescer = new ChannelStateCoalescer(scheduler,
+                getConfigInt(CONFIG_PROPERTY_STATE_UPDATE_WINDOW, CONFIG_STATE_UPDATE_DEFAULT_WINDOW));
+        stateCache = new DeviceStateCache(
+                Math.max(0, getConfigInt(CONFIG_PROPERTY_STATE_CACHE_TTL, CONFIG_STATE_CACHE_DEFAULT_TTL)));
+        Object discoveryValue = getConfig().get(CONFIG_PROPERTY_BACKGROUND_DISCOVERY);
+        backgroundDiscovery = discoveryValue == null || Boolean.parseBoolean(discoveryValue.toString());
+        timingWheel = new HashedTimingWheel(TIMING_WHEEL_TICK, TimeUnit.MILLISECONDS, TIMING_WHEEL_SIZE);
+        timingWheel.start(scheduler);
+        initSnapshot();
+        initEventDispatcher();
+        initCommandScheduler();
+        initMetrics();
+        final BusCommandSessionPool pool = commandSessionPool;
+        // the NIO transport reconnects its monitor session itself, with the same backoff
+        reconnectSupervisor = new ReconnectSupervisor(scheduler, this::executeBlocking,
+                gateway instanceof OpenGatewayBus ? this::reopenMonitorSession : null,
+                pool != null ? pool::warmUp : null);
         gateway.subscribe(this);
         if (gateway.isConnected()) { // gateway is already connected, device can go ONLINE
             isGatewayConnected = true;
@@ -102,7 +255,7 @@ public class OpenWebNetBridgeHandler extends ConfigStatusBridgeHandler implement
             updateStatus(ThingStatus.UNKNOWN);
             logger.debug("==OWN== BridgeHandler Trying to connect gateway...");
             gateway.connect();
-            scheduler.schedule(() -> {
+            gatewayOnlineTimeout = timingWheel.schedule(() -> {
                 // if state is still UNKNOWN after timer ends, set the device as OFFLINE
                 if (thing.getStatus().equals(ThingStatus.UNKNOWN)) {
                     logger.info("==OWN==  BridgeHandler still unknown. Setting device={} to OFFLINE", thing.getUID());
@@ -120,20 +273,258 @@ public class OpenWebNetBridgeHandler extends ConfigStatusBridgeHandler implement
         // "Can not access device as username and/or password are invalid");
     }
 
+    /**
+     * Init the threads mode based on config properties: virtual threads are used only if supported by the runtime
+     */
+    private void initThreads() {
+        Object virtualValue = getConfig().get(CONFIG_PROPERTY_VIRTUAL_THREADS);
+        boolean requested = virtualValue != null && Boolean.parseBoolean(virtualValue.toString());
+        if (requested && !BindingThreadFactory.isVirtualSupported()) {
+            logger.info("==OWN== BridgeHandler virtual threads not supported by this Java runtime ({}), using "
+                    + "platform threads", System.getProperty("java.version"));
+        }
+        virtualThreads = requested && BindingThreadFactory.isVirtualSupported();
+        logger.debug("==OWN== BridgeHandler using {} threads", virtualThreads ? "virtual" : "platform");
+        ioThreadFactory = newThreadFactory("io");
+    }
+
+    private BindingThreadFactory newThreadFactory(String suffix) {
+        return new BindingThreadFactory("OH-binding-" + getThing().getUID() + "-" + suffix, virtualThreads);
+    }
+
+    /**
+     * Run a task that blocks on gateway I/O, or that must not run on the NIO event loop shared by all gateways: on a
+     * new virtual thread if enabled, otherwise on the scheduler
+     *
+     * @param task the task
+     */
+    private void executeBlocking(Runnable task) {
+        if (virtualThreads) {
+            ioThreadFactory.newThread(task).start();
+        } else {
+            scheduler.execute(task);
+        }
+    }
+
+    /**
+     * Init the dispatcher of incoming frames to device handlers based on config properties
+     *
+     */
+    private void initEventDispatcher() {
+        int threads = getConfigInt(CONFIG_PROPERTY_DISPATCH_THREADS,
+                Math.min(4, Runtime.getRuntime().availableProcessors()));
+        int queueSize = getConfigInt(CONFIG_PROPERTY_DISPATCH_QUEUE_SIZE, CONFIG_DISPATCH_DEFAULT_QUEUE_SIZE);
+        OverflowPolicy overflowPolicy = OverflowPolicy.fromConfig(
+                getConfig().get(CONFIG_PROPERTY_DISPATCH_OVERFLOW_POLICY), CONFIG_DISPATCH_DEFAULT_OVERFLOW_POLICY);
+        if (overflowPolicy == OverflowPolicy.BLOCK && gateway instanceof NioOpenGatewayBus) {
+            // frames are dispatched from the event loop shared by all gateways, which must never be blocked
+            logger.warn("==OWN== BridgeHandler overflow policy {} not supported with NIO transport, using {}",
+                    overflowPolicy, CONFIG_DISPATCH_DEFAULT_OVERFLOW_POLICY);
+            overflowPolicy = CONFIG_DISPATCH_DEFAULT_OVERFLOW_POLICY;
+        }
+        logger.debug("==OWN== BridgeHandler creating event dispatcher: threads={}, queueSize={}, overflowPolicy={}",
+                threads, queueSize, overflowPolicy);
+        eventDispatcher = new StripedEventDispatcher<>("OH-binding-" + getThing().getUID() + "-dispatch",
+                newThreadFactory("dispatch"), threads, queueSize, overflowPolicy, OpenFrame::whereOf,
+                OpenWebNetBridgeHandler::coalesceKeyOf, this::dispatchFrame);
+        eventDispatcher.start();
+    }
+
+    /**
+     * @return WHO+WHERE of a frame: on overflow a queued frame is replaced only by a newer one of the same WHO for the
+     *         same WHERE
+     */
+    private static Object coalesceKeyOf(String frame) {
+        return OpenFrame.whoOf(frame) + "*" + OpenFrame.whereOf(frame);
+    }
+
+    /**
+     * Restore last known device states from the snapshot file and schedule its periodic update
+     */
+    private void initSnapshot() {
+        snapshotFile = Paths.get(ConfigConstants.getUserDataFolder(), SNAPSHOT_FOLDER,
+                getThing().getUID().getAsString().replace(':', '_') + ".snapshot");
+        try {
+            deviceStates.putAll(StateSnapshot.read(snapshotFile));
+            logger.debug("==OWN== BridgeHandler restored state of {} devices from {}", deviceStates.size(),
+                    snapshotFile);
+        } catch (IOException e) {
+            logger.warn("==OWN== BridgeHandler cannot read snapshot {}: {}", snapshotFile, e.getMessage());
+        }
+        snapshotJob = scheduler.scheduleWithFixedDelay(this::writeSnapshot, SNAPSHOT_INTERVAL, SNAPSHOT_INTERVAL,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Write the snapshot file with the current state of registered devices, if any state changed since last write
+     */
+    private synchronized void writeSnapshot() {
+        if (!snapshotDirty) {
+            return;
+        }
+        snapshotDirty = false;
+        for (OpenWebNetDeviceHandler device : new HashSet<>(registeredDevices.values())) {
+            DeviceState state = device.getSnapshotState();
+            if (state != null) {
+                deviceStates.put(device.getOwnId(), state);
+            }
+        }
+        try {
+            StateSnapshot.write(snapshotFile, new HashMap<>(deviceStates));
+            logger.debug("==OWN== BridgeHandler saved state of {} devices to {}", deviceStates.size(), snapshotFile);
+        } catch (IOException e) {
+            logger.warn("==OWN== BridgeHandler cannot write snapshot {}: {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the last known state of a device, restored from the snapshot file
+     *
+     * @param ownId device OpenWebNet id
+     * @param thingUID device thing UID: the state is returned only if it was saved for the same thing
+     * @return the state, or null if not known
+     */
+    protected DeviceState getLastKnownState(String ownId, String thingUID) {
+        DeviceState state = deviceStates.get(ownId);
+        return state != null && state.getThingUID().equals(thingUID) ? state : null;
+    }
+
+    /**
+     * Save the last known state of a device that is being disposed
+     */
+    protected void saveLastKnownState(String ownId, DeviceState state) {
+        deviceStates.put(ownId, state);
+        snapshotDirty = true;
+    }
+
+    /**
+     * Forget the last known state of a device that has been removed
+     */
+    protected void forgetLastKnownState(String ownId) {
+        if (deviceStates.remove(ownId) != null) {
+            snapshotDirty = true;
+        }
+    }
+
+    /**
+     * Notify that a device state changed, so that the snapshot file must be updated
+     */
+    protected void deviceStateChanged() {
+        snapshotDirty = true;
+    }
+
+    /**
+     * Init the scheduler of commands sent to the gateway based on config properties
+     *
+     */
+    private void initCommandScheduler() {
+        int queueSize = getConfigInt(CONFIG_PROPERTY_COMMAND_QUEUE_SIZE, CONFIG_COMMAND_DEFAULT_QUEUE_SIZE);
+        if (queueSize < 1) {
+            logger.warn("==OWN== BridgeHandler invalid value {} for config property {}, using default {}", queueSize,
+                    CONFIG_PROPERTY_COMMAND_QUEUE_SIZE, CONFIG_COMMAND_DEFAULT_QUEUE_SIZE);
+            queueSize = CONFIG_COMMAND_DEFAULT_QUEUE_SIZE;
+        }
+        commandScheduler = new CommandScheduler(getThing().getUID().toString(), queueSize, COMMAND_MAX_IN_FLIGHT,
+                this::sendCommandNow);
+        statusRequests = new StatusRequestRegistry(commandScheduler);
+    }
+
+    /**
+     * Init metrics, register their MBean and schedule the metrics channels update
+     *
+     */
+    private void initMetrics() {
+        metrics = new GatewayMetrics(eventDispatcher, commandScheduler, statusRequests, stateCache);
+        metrics.registerMBean(getThing().getUID().toString());
+        metricsJob = scheduler.scheduleWithFixedDelay(this::updateMetrics, METRICS_INTERVAL, METRICS_INTERVAL,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Compute metrics for the last interval and update the metrics channels
+     */
+    private void updateMetrics() {
+        metrics.update();
+        updateMetricsChannels();
+    }
+
+    private void updateMetricsChannels() {
+        updateMetricsChannel(CHANNEL_METRICS_FRAMES_RATE, metrics.getFramesPerSecond());
+        updateMetricsChannel(CHANNEL_METRICS_UNMATCHED_FRAMES, metrics.getUnmatchedFrames());
+        updateMetricsChannel(CHANNEL_METRICS_DROPPED_FRAMES, metrics.getDroppedFrames());
+        updateMetricsChannel(CHANNEL_METRICS_DISPATCH_QUEUE_DEPTH, metrics.getDispatchQueueDepth());
+        updateMetricsChannel(CHANNEL_METRICS_COMMAND_LATENCY_P50, metrics.getCommandLatencyP50Millis());
+        updateMetricsChannel(CHANNEL_METRICS_COMMAND_LATENCY_P99, metrics.getCommandLatencyP99Millis());
+        updateMetricsChannel(CHANNEL_METRICS_COMMAND_NACKS, metrics.getCommandNacks());
+        updateMetricsChannel(CHANNEL_METRICS_RECONNECTS, metrics.getReconnects());
+    }
+
+    private void updateMetricsChannel(String channelId, double value) {
+        if (isLinked(channelId)) {
+            updateState(channelId, new DecimalType(value));
+        }
+    }
+
+    private void updateMetricsChannel(String channelId, long value) {
+        if (isLinked(channelId)) {
+            updateState(channelId, new DecimalType(value));
+        }
+    }
+
+    /**
+     * Returns an integer config property, or a default value if it is not set
+     *
+     * @param key config property name
+     * @param defaultValue value to return if the property is not set
+     * @return the config value
+     */
+    private int getConfigInt(String key, int defaultValue) {
+        Object value = getConfig().get(key);
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).intValue();
+        } else if (value != null) {
+            try {
+                return Integer.parseInt(value.toString());
+            } catch (NumberFormatException e) {
+                logger.warn("==OWN== BridgeHandler invalid value '{}' for config property {}, using default {}", value,
+                        key, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * Init a ZigBee gateway based on config properties
      *
      */
-    private void initZigBeeGateway() {
+    private boolean initZigBeeGateway() {
         String serialPort = (String) (getConfig().get(CONFIG_PROPERTY_SERIAL_PORT));
-        if (serialPort == null) {
+        if (serialPort == null || serialPort.isEmpty()) {
             logger.warn(
                     "==OWN== BridgeHandler ZigBee gateway port config is <null>, will try to find a gateway on serial ports");
-            gateway = OpenWebNet.gatewayZigBeeAsSingleton(); // TODO do not use singleton
-        } else {
-            // TODO connect to serial port specified using config params
-            gateway = OpenWebNet.gatewayZigBeeAsSingleton();
+            // only ports not used by other dongle bridges nor by discovery are tried
+            gateway = new SerialPortGatewayZigBee();
+            return true;
+        }
+        // each dongle bridge has its own gateway, bound to its own serial port
+        SerialPortGatewayZigBee zigBeeGateway = new SerialPortGatewayZigBee(serialPort);
+        if (!zigBeeGateway.claimPort()) {
+            if (SerialPortGatewayZigBee.requestPort(serialPort)) {
+                // the port was being tried by discovery, which now releases it
+                logger.debug("==OWN== BridgeHandler serial port {} is being released by discovery, retrying in {}s",
+                        serialPort, ZIGBEE_PORT_RETRY);
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.NONE,
+                        "Waiting for discovery to release serial port " + serialPort);
+                portRetryJob = scheduler.schedule(this::initialize, ZIGBEE_PORT_RETRY, TimeUnit.SECONDS);
+                return false;
+            }
+            logger.warn("==OWN== BridgeHandler serial port {} is already used by another dongle", serialPort);
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
+                    "Serial port " + serialPort + " is already used by another dongle");
+            return false;
         }
+        gateway = zigBeeGateway;
+        return true;
     }
 
     /**
@@ -156,12 +547,132 @@ public class OpenWebNetBridgeHandler extends ConfigStatusBridgeHandler implement
         }
         logger.debug("==OWN== BridgeHandler creating new gatewayBus with config properties: {}:{}, {}", host, port,
                 passwd);
+        if (CONFIG_TRANSPORT_NIO.equalsIgnoreCase((String) getConfig().get(CONFIG_PROPERTY_TRANSPORT))) {
+            // monitor and commands on the shared non-blocking event loop: no pooled sessions nor sender threads
+            logger.debug("==OWN== BridgeHandler using NIO transport");
+            gateway = new NioOpenGatewayBus(host, port, passwd);
+            return;
+        }
         gateway = OpenWebNet.gatewayBus(host, port, passwd);
+        int sessions = getConfigInt(CONFIG_PROPERTY_COMMAND_SESSIONS, CONFIG_COMMAND_DEFAULT_SESSIONS);
+        if (sessions < 1) {
+            logger.warn("==OWN== BridgeHandler invalid value {} for config property {}, using default {}", sessions,
+                    CONFIG_PROPERTY_COMMAND_SESSIONS, CONFIG_COMMAND_DEFAULT_SESSIONS);
+            sessions = CONFIG_COMMAND_DEFAULT_SESSIONS;
+        }
+        commandSessions = sessions;
+        commandSessionPool = new BusCommandSessionPool(host, port, passwd, sessions,
+                getConfigInt(CONFIG_PROPERTY_COMMAND_SESSION_KEEPALIVE, CONFIG_COMMAND_SESSION_DEFAULT_KEEPALIVE),
+                scheduler, this::executeBlocking);
+        commandSender = new BatchingCommandSender(newThreadFactory("commands"), commandSessionPool,
+                getConfigInt(CONFIG_PROPERTY_COMMAND_BATCH_WINDOW, CONFIG_COMMAND_BATCH_DEFAULT_WINDOW),
+                this::onFrame);
+    }
+
+    /**
+     * Send a command to the gateway with {@link CommandPriority#HIGH} priority
+     *
+     * @param msg the command to send
+     * @return future completed with true if the gateway answered ACK, false if it answered NACK, or exceptionally in
+     *         case of communication error or if the command could not be queued
+     */
+    public CompletableFuture<Boolean> sendCommand(OpenMessage msg) {
+        return sendCommand(msg, CommandPriority.HIGH);
+    }
+
+    /**
+     * Send a command to the gateway. Commands are queued by priority: if the queue is full the command is rejected,
+     * and if it waits in the queue longer than the priority deadline it is dropped. On BUS gateways commands sent
+     * within a short window are batched and sent over pooled command sessions.
+     *
+     * A status request for a device that has one pending is not sent again: the future of the pending request is
+     * returned. A command for a device cancels its status request still queued.
+     *
+     * @param msg the command to send
+     * @param priority the command priority
+     * @return future completed with true if the gateway answered ACK, false if it answered NACK, or exceptionally in
+     *         case of communication error, full queue, expired deadline or superseded status request
+     */
+    public CompletableFuture<Boolean> sendCommand(OpenMessage msg, CommandPriority priority) {
+        return statusRequests.submit(msg, priority);
+    }
+
+    /**
+     * Hand a command to the transport, recording its latency
+     */
+    private CompletableFuture<Boolean> sendCommandNow(OpenMessage msg) {
+        final long start = System.nanoTime();
+        CompletableFuture<Boolean> result = sendCommandToGateway(msg);
+        final GatewayMetrics m = metrics;
+        if (m != null) {
+            result.whenComplete(
+                    (ack, error) -> m.commandCompleted(System.nanoTime() - start, error == null ? ack : null));
+        }
+        return result;
+    }
+
+    private CompletableFuture<Boolean> sendCommandToGateway(OpenMessage msg) {
+        if (commandSender != null) {
+            return commandSender.send(msg);
+        }
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        if (gateway instanceof NioOpenGatewayBus) {
+            // answers arrive on the event loop shared by all gateways: they are processed, and the command completed,
+            // on the threads of this bridge, so that callbacks of the command never run on the event loop
+            ((NioOpenGatewayBus) gateway).sendCommand(msg).whenCompleteAsync((responses, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                    return;
+                }
+                boolean ack = false;
+                for (OpenMessage response : responses) {
+                    if (OpenMessage.ACK.equals(response.getValue())) {
+                        ack = true;
+                    } else {
+                        onMessage(response);
+                    }
+                }
+                result.complete(ack);
+            }, this::executeBlocking);
+            return result;
+        }
+        OpenSession session = gateway.send(msg);
+        if (session == null) {
+            result.completeExceptionally(new IOException("Could not send command " + msg));
+            return result;
+        }
+        session.subscribe(new OpenSessionListener() {
+            @Override
+            public void onTimeout() {
+                result.completeExceptionally(new TimeoutException("Timeout waiting answer to command " + msg));
+            }
+
+            @Override
+            public void onError(OpenSessionError error) {
+                result.completeExceptionally(new IOException("Error " + error + " sending command " + msg));
+            }
+
+            @Override
+            public void onTerminated(List<OpenMessage> response) {
+                result.complete(response != null
+                        && response.stream().anyMatch(answer -> OpenMessage.ACK.equals(answer.getValue())));
+            }
+        });
+        // guard against sessions that never terminate
+        Timeout responseTimeout = timingWheel.schedule(() -> {
+            result.completeExceptionally(new TimeoutException("Timeout waiting answer to command " + msg));
+        }, COMMAND_RESPONSE_TIMEOUT, TimeUnit.SECONDS);
+        result.whenComplete((ack, error) -> responseTimeout.cancel());
+        return result;
     }
 
     @Override
     public void handleCommand(ChannelUID channelUID, Command command) {
         logger.debug("==OWN== BridgeHandler handleCommand (command={} - channel={})", command, channelUID);
+        if (command instanceof RefreshType && metrics != null) {
+            updateMetricsChannels(); // metrics channels are read-only: refresh is the only command
+            return;
+        }
         if (!gateway.isConnected()) {
             logger.debug("==OWN== BridgeHandler Gateway is NOT connected, skipping command");
             return;
@@ -197,9 +708,11 @@ public class OpenWebNetBridgeHandler extends ConfigStatusBridgeHandler implement
     public void handleRemoval() {
         logger.debug("==OWN==  XXX BridgeHandler.handleRemoval() ");
 
-        gateway.closeConnection();
-        gateway.unsubscribe(this);
-        logger.debug("==OWN==  XXX Connection closed and unsubscribed.");
+        if (gateway != null) {
+            gateway.closeConnection();
+            gateway.unsubscribe(this);
+            logger.debug("==OWN==  XXX Connection closed and unsubscribed.");
+        }
 
         logger.debug("==OWN==  XXX now calling super.handleRemoval()");
         super.handleRemoval();
@@ -209,14 +722,82 @@ public class OpenWebNetBridgeHandler extends ConfigStatusBridgeHandler implement
     public void dispose() {
         logger.debug("==OWN==  XXX BridgeHandler.dispose() ");
 
-        gateway.closeConnection();
-        gateway.unsubscribe(this);
-        logger.debug("==OWN==  XXX Connection closed and unsubscribed.");
+        if (portRetryJob != null) {
+            portRetryJob.cancel(false);
+            portRetryJob = null;
+        }
+        if (reconnectSupervisor != null) {
+            // before closing the connection, so that it is not reopened
+            reconnectSupervisor.dispose();
+        }
+        if (gateway != null) {
+            gateway.closeConnection();
+            gateway.unsubscribe(this);
+            if (gateway instanceof SerialPortGatewayZigBee) {
+                ((SerialPortGatewayZigBee) gateway).releasePort();
+            }
+            logger.debug("==OWN==  XXX Connection closed and unsubscribed.");
+        }
+        if (metricsJob != null) {
+            metricsJob.cancel(false);
+            metricsJob = null;
+        }
+        cancelBulkStatusRequest();
+        if (snapshotJob != null) {
+            snapshotJob.cancel(false);
+            snapshotJob = null;
+            writeSnapshot();
+        }
+        if (timingWheel != null) {
+            timingWheel.stop();
+        }
+        if (metrics != null) {
+            metrics.unregisterMBean();
+        }
+        if (commandScheduler != null) {
+            commandScheduler.dispose();
+        }
+        if (commandSender != null) {
+            commandSender.dispose();
+            commandSender = null;
+        }
+        if (commandSessionPool != null) {
+            commandSessionPool.close();
+            commandSessionPool = null;
+        }
+        if (eventDispatcher != null) {
+            eventDispatcher.stop();
+        }
 
         logger.debug("==OWN==  XXX now calling super.dispose()");
         super.dispose();
     }
 
+    /**
+     * Set a listener receiving all frames from the gateway, before they are dispatched to devices
+     *
+     * @param observer the listener, or null to remove it
+     */
+    public void setFrameObserver(FrameListener observer) {
+        frameObserver = observer;
+    }
+
+    /**
+     * Set the passive discovery receiving Lighting frames for WHEREs with no thing associated
+     *
+     * @param discovery the passive discovery, or null to remove it
+     */
+    public void setPassiveDiscovery(PassiveDeviceDiscovery discovery) {
+        passiveDiscovery = discovery;
+    }
+
+    /**
+     * @return number of command sessions used to send commands to the gateway in parallel
+     */
+    public int getCommandSessions() {
+        return commandSessions;
+    }
+
     /**
      * Search for devices connected to this bridge handler's gateway
      *
@@ -232,80 +813,232 @@ public class OpenWebNetBridgeHandler extends ConfigStatusBridgeHandler implement
     }
 
     /**
-     * Register a device thing to this bridge handler based on its id
+     * Register a device handler to this bridge handler based on its id. The handler is added to the dispatch index
+     * under all WHERE keys that frames for this device can carry.
      *
      * @param ownId device OpenWebNet id
-     * @param thingUID ThingUID
+     * @param deviceHandler OpenWebNetDeviceHandler
      */
-    protected void registerDevice(String ownId, ThingUID thingUID) {
+    protected void registerDevice(String ownId, OpenWebNetDeviceHandler deviceHandler) {
         logger.debug("==OWN==  BridgeHandler.registerDevice() ");
-        if (thingUID == null) {
-            throw new IllegalArgumentException("It's not allowed to pass a null 'ThingUID'.");
+        if (deviceHandler == null) {
+            throw new IllegalArgumentException("It's not allowed to pass a null 'OpenWebNetDeviceHandler'.");
         }
         if (ownId == null) {
             throw new IllegalArgumentException("It's not allowed to pass a null 'ownId'.");
         }
-        registeredDevices.put(ownId, thingUID);
+        for (String whereKey : whereKeys(ownId)) {
+            registeredDevices.put(whereKey, deviceHandler);
+        }
     }
 
     /**
-     * Un-register a device from this bridge handler
+     * Un-register a device from this bridge handler, under the WHERE keys still registered with the same handler
      *
      * @param ownId device OpenWebNet id
+     * @param deviceHandler the handler
      */
-    protected void unregisterDevice(String ownId) {
+    protected void unregisterDevice(String ownId, OpenWebNetDeviceHandler deviceHandler) {
         logger.debug("==OWN==  BridgeHandler.UNregisterDevice() ");
         if (ownId == null) {
             throw new IllegalArgumentException("It's not allowed to pass a null 'ownId'.");
         }
-        registeredDevices.remove(ownId);
+        for (String whereKey : whereKeys(ownId)) {
+            registeredDevices.remove(whereKey, deviceHandler);
+        }
+    }
+
+    /**
+     * Register an area or group to this bridge handler
+     *
+     * @param where area or group WHERE, as in frames
+     * @param groupHandler the handler
+     */
+    protected void registerGroup(String where, OpenWebNetGroupHandler groupHandler) {
+        if (where == null || groupHandler == null) {
+            throw new IllegalArgumentException("It's not allowed to pass a null 'where' or 'OpenWebNetGroupHandler'.");
+        }
+        registeredGroups.put(where, groupHandler);
+    }
+
+    /**
+     * Un-register an area or group from this bridge handler, if still registered with the same handler
+     *
+     * @param where area or group WHERE
+     * @param groupHandler the handler
+     */
+    protected void unregisterGroup(String where, OpenWebNetGroupHandler groupHandler) {
+        registeredGroups.remove(where, groupHandler);
+    }
+
+    /**
+     * @return WHERE of the devices registered to this bridge handler
+     */
+    protected Set<String> getDeviceWheres() {
+        return Collections.unmodifiableSet(registeredDevices.keySet());
+    }
+
+    /**
+     * Update registered lights as if a Lighting frame with the given WHAT had been received for each of them. Used to
+     * update the members of an area or group after a command for the whole area or group. The frames are dispatched
+     * like received frames, so each light is updated on its dispatcher thread, in order with the frames received for
+     * it.
+     *
+     * @param wheres WHERE of the lights; WHEREs with no device registered are skipped
+     * @param what the Lighting WHAT
+     * @return number of devices to be updated
+     */
+    protected int updateLightsState(Collection<String> wheres, Lighting.WHAT what) {
+        final StripedEventDispatcher<String> dispatcher = eventDispatcher;
+        if (dispatcher == null) {
+            return 0;
+        }
+        StringBuilder frame = new StringBuilder("*").append(Who.LIGHTING.value()).append('*').append(what.value())
+                .append('*');
+        int prefixLength = frame.length();
+        int updated = 0;
+        for (String where : wheres) {
+            if (registeredDevices.containsKey(where)) {
+                frame.setLength(prefixLength);
+                if (dispatcher.dispatch(frame.append(where).append("##").toString())) {
+                    updated++;
+                }
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Returns the WHERE keys used in the dispatch index for a device: the WHERE addresses frames for this device carry.
+     * For ZigBee devices all units (00, 01, 02) are mapped to the same device.
+     *
+     * @param ownId device OpenWebNet id
+     * @return array of WHERE keys
+     */
+    private String[] whereKeys(String ownId) {
+        if (isBusGateway) {
+            return new String[] { ownId.replace('h', '#') };
+        } else {
+            return new String[] { ownId + BaseOpenMessage.UNIT_ALL + ZIGBEE_WHERE_SUFFIX,
+                    ownId + BaseOpenMessage.UNIT_01 + ZIGBEE_WHERE_SUFFIX,
+                    ownId + BaseOpenMessage.UNIT_02 + ZIGBEE_WHERE_SUFFIX };
+        }
     }
 
     @Override
     public void onMessage(OpenMessage msg) {
-        logger.trace("==OWN==  RECEIVED <<<<< {}", msg);
-        if (OpenMessage.ACK.equals(msg.getValue()) || OpenMessage.NACK.equals(msg.getValue())) {
+        // messages already parsed by the library: only their frame is used
+        onFrame(msg.getValue());
+    }
+
+    @Override
+    public void onFrame(String frame) {
+        logger.trace("==OWN==  RECEIVED <<<<< {}", frame);
+        if (OpenMessage.ACK.equals(frame) || OpenMessage.NACK.equals(frame)) {
             return;// ignore
         }
+        metrics.frameReceived(OpenFrame.whoOf(frame));
+        final FrameListener observer = frameObserver;
+        if (observer != null) {
+            observer.onFrame(frame);
+        }
+        // device handlers are updated on the dispatcher threads, so the monitor thread is never blocked by them
+        eventDispatcher.dispatch(frame);
+    }
+
+    /**
+     * Dispatch a frame to the device handler registered for its WHERE. Called on the dispatcher threads, in order for
+     * each WHERE (package-private so that benchmarks can drive it directly).
+     *
+     * @param rawFrame the frame
+     */
+    void dispatchFrame(String rawFrame) {
+        OpenFrame frame = dispatchFrame.get();
+        if (!frame.parse(rawFrame)) {
+            logger.debug("==OWN==  BridgeHandler frame not recognized: {}", rawFrame);
+            return;
+        }
         // LIGHTING
-        if (msg instanceof Lighting) {
-            Lighting lightMsg = (Lighting) msg;
-            String ownId = ownIdFromWhere(lightMsg.getWhere());
-            logger.trace("==OWN==  ownId = {}", ownId);
-            ThingUID thingUID = registeredDevices.get(ownId);
-            Thing device = getThingByUID(thingUID);
-            if (device != null) {
-                OpenWebNetDeviceHandler deviceHandler = (OpenWebNetDeviceHandler) device.getHandler();
-                if (deviceHandler != null) {
-                    deviceHandler.updateLightState(lightMsg);
+        if (frame.getWho() == Who.LIGHTING) {
+            OpenWebNetDeviceHandler deviceHandler = registeredDevices.get(frame.getWhere());
+            OpenWebNetGroupHandler groupHandler;
+            if (deviceHandler != null) {
+                deviceHandler.updateLightState(frame);
+            } else if ((groupHandler = registeredGroups.get(frame.getWhere())) != null) {
+                groupHandler.updateGroupState(frame);
+            } else {
+                metrics.frameUnmatched();
+                final PassiveDeviceDiscovery discovery = passiveDiscovery;
+                if (discovery != null && backgroundDiscovery) {
+                    discovery.onUnmatchedFrame(frame);
                 } else {
-                    logger.debug("==OWN==  ownId={} has NO HANDLER associated, ignoring it", ownId);
+                    logger.debug("==OWN==  WHERE={} has NO THING associated, ignoring it", frame.getWhere());
                 }
-            } else {
-                logger.debug("==OWN==  ownId={} has NO THING associated, ignoring it", ownId);
             }
         }
         // GATEWAY MANAGEMENT
-        else if (msg instanceof GatewayManagement) {
-            GatewayManagement gwMgmtMsg = (GatewayManagement) msg;
-            logger.debug("==OWN==  GatewayManagement WHAT = {}", gwMgmtMsg.getWhat());
+        else if (frame.getWho() == Who.GATEWAY_MANAGEMENT) {
+            logger.debug("==OWN==  GatewayManagement frame {}", frame);
         } else {
-            logger.debug("==OWN==  BridgeHandler ignoring frame {} (not useful here)", msg);
+            logger.debug("==OWN==  BridgeHandler ignoring frame {} (not useful here)", frame);
         }
+    }
 
+    /**
+     * @return number of received frames waiting to be dispatched to device handlers
+     */
+    public int getDispatchQueueDepth() {
+        return eventDispatcher != null ? eventDispatcher.getQueueDepth() : 0;
     }
 
     @Override
     public void onConnected() {
         isGatewayConnected = true;
+        if (gatewayOnlineTimeout != null) {
+            gatewayOnlineTimeout.cancel();
+            gatewayOnlineTimeout = null;
+        }
+        long outage = reconnectSupervisor.reconnected();
+        if (outage >= 0) {
+            // monitor session reopened by the reconnect supervisor after an outage
+            reconnected(outage);
+            return;
+        }
         if (gateway instanceof OpenGatewayZigBee) {
             logger.info("==OWN==  Gateway status: CONNECTED on port: {}",
                     ((OpenGatewayZigBee) gateway).getConnectedPort());
+        } else if (gateway instanceof NioOpenGatewayBus) {
+            logger.info("==OWN==  Gateway status: CONNECTED (NIO) on ip={}, port={}",
+                    ((NioOpenGatewayBus) gateway).getHost(), ((NioOpenGatewayBus) gateway).getPort());
         } else {
             logger.info("==OWN==  Gateway status: CONNECTED on ip={}, port={}", ((OpenGatewayBus) gateway).getHost(),
                     ((OpenGatewayBus) gateway).getPort());
         }
         updateStatus(ThingStatus.ONLINE);
+        warmUpCommandSessions();
+        scheduleBulkStatusRequest(BULK_STATUS_DELAY);
+    }
+
+    /**
+     * Open command sessions in advance in background, so that first commands do not wait for the session handshake
+     */
+    private void warmUpCommandSessions() {
+        final BusCommandSessionPool pool = commandSessionPool;
+        if (pool != null) {
+            executeBlocking(pool::warmUp);
+        }
+    }
+
+    /**
+     * Reopen the monitor session of the library transport, called by the reconnect supervisor. On success the gateway
+     * notifies {@link #onConnected()}.
+     *
+     * @return true if the monitor session is open
+     */
+    private boolean reopenMonitorSession() {
+        logger.debug("==OWN==  BridgeHandler reopening monitor session...");
+        gateway.connect();
+        return gateway.isConnected();
     }
 
     @Override
@@ -351,19 +1084,139 @@ public class OpenWebNetBridgeHandler extends ConfigStatusBridgeHandler implement
     public void onDisconnected() {
         isGatewayConnected = false;
         logger.error("==OWN==  ERROR: The gateway has been disconnected.");
+        metrics.disconnected();
+        cancelBulkStatusRequest();
+        // state changes are not received while disconnected
+        stateCache.clear();
+        // idle command sessions were lost with the gateway: reopen them while the monitor session reconnects
+        if (commandSessionPool != null) {
+            commandSessionPool.closeIdleSessions();
+        }
+        if (gateway instanceof OpenGatewayBus) {
+            // stop the fixed-delay reconnect loop of the library: the supervisor reopens the monitor session
+            gateway.closeConnection();
+        }
+        reconnectSupervisor.disconnected();
         updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.OFFLINE.COMMUNICATION_ERROR,
                 "The gateway HAS BEEN DISCONNECTED");
         logger.debug("==OWN==  Bridge status: OFFLINE");
-        // TODO start here a re-connect cycle??
     }
 
     @Override
     public void onReconnected() {
-        logger.info("==OWN==  onReconnected()");
+        reconnected(reconnectSupervisor.reconnected());
+    }
+
+    /**
+     * The monitor session is back after an outage: resync the devices
+     *
+     * @param outage duration (ms) of the outage, or -1 if unknown
+     */
+    private void reconnected(long outage) {
+        metrics.reconnected();
+        if (outage >= 0) {
+            metrics.outageEnded(outage);
+            logger.info("==OWN==  onReconnected() after an outage of {} ms", outage);
+        } else {
+            logger.info("==OWN==  onReconnected()");
+        }
         updateStatus(ThingStatus.ONLINE);
         logger.debug("==OWN==  Bridge status: ONLINE");
-        // TODO refresh devices' status?
+        warmUpCommandSessions();
+        // devices are already registered: resync the state changes missed during the outage right away
+        scheduleBulkStatusRequest(0);
+    }
+
+    /**
+     * Schedule a bulk status request, so that the state of all devices is read in a single BUS sweep instead of a
+     * status request for each device. Devices registering in the meanwhile do not request their own state.
+     *
+     * @param delay time (sec) to wait before sending the request
+     */
+    private synchronized void scheduleBulkStatusRequest(int delay) {
+        if (!isBusGateway) {
+            return;
+        }
+        if (bulkStatusJob != null) {
+            bulkStatusJob.cancel(false);
+        }
+        bulkStatusPending = true;
+        bulkStatusJob = scheduler.schedule(this::requestBulkStatus, delay, TimeUnit.SECONDS);
+    }
+
+    private synchronized void cancelBulkStatusRequest() {
+        if (bulkStatusJob != null) {
+            bulkStatusJob.cancel(false);
+            bulkStatusJob = null;
+        }
+        bulkStatusPending = false;
+    }
+
+    /**
+     * Send a general status request (WHERE=0) for each WHO family of registered devices, plus one for each local bus
+     * with registered devices. Answers are dispatched to devices as any other frame.
+     */
+    private void requestBulkStatus() {
+        Set<Who> whos = EnumSet.noneOf(Who.class);
+        Set<String> wheres = new LinkedHashSet<>();
+        wheres.add(WHERE_GENERAL);
+        for (Map.Entry<String, OpenWebNetDeviceHandler> device : registeredDevices.entrySet()) {
+            whos.add(device.getValue().getWho());
+            String where = device.getKey();
+            int localBus = where.indexOf(WHERE_LOCAL_BUS);
+            if (localBus > 0) {
+                wheres.add(WHERE_GENERAL + where.substring(localBus));
+            }
+        }
+        if (whos.isEmpty()) {
+            whos.add(Who.LIGHTING); // no device registered yet: lights are the devices most likely to register
+        }
+        logger.debug("==OWN==  BridgeHandler bulk status request for WHO={} WHERE={}", whos, wheres);
+        CompletableFuture<?>[] requests = new CompletableFuture<?>[whos.size() * wheres.size()];
+        int i = 0;
+        for (Who who : whos) {
+            for (String where : wheres) {
+                OpenMessage msg = OpenMessageFactory.parse("*#" + who.value() + "*" + where + "##");
+                requests[i++] = sendCommand(msg, CommandPriority.NORMAL);
+            }
+        }
+        CompletableFuture.allOf(requests).whenComplete((result, error) -> {
+            if (error != null) {
+                logger.debug("==OWN==  BridgeHandler bulk status request failed: {}", error.getMessage());
+            }
+            synchronized (this) {
+                if (bulkStatusPending) {
+                    bulkStatusJob = scheduler.schedule(this::completeBulkStatus, BULK_STATUS_SETTLE,
+                            TimeUnit.SECONDS);
+                }
+            }
+        });
+    }
 
+    /**
+     * End the bulk status request: devices that did not get their state from it (still with no state or with the state
+     * restored from the snapshot) request it themselves
+     */
+    private void completeBulkStatus() {
+        synchronized (this) {
+            bulkStatusJob = null;
+            bulkStatusPending = false;
+        }
+        int missing = 0;
+        for (OpenWebNetDeviceHandler device : new HashSet<>(registeredDevices.values())) {
+            if (device.getThing().getStatus() != ThingStatus.ONLINE || device.isStateRestored()) {
+                device.requestAllChannelsState();
+                missing++;
+            }
+        }
+        logger.debug("==OWN==  BridgeHandler bulk status completed, {} devices without state", missing);
+    }
+
+    /**
+     * @return true if a bulk status request is pending: its answers will bring the state of all devices
+     */
+    public boolean isBulkStatusPending() {
+        return bulkStatusPending;
     }
 
     /**
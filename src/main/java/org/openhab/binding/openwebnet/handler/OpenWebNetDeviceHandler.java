@@ -10,14 +10,21 @@ package org.openhab.binding.openwebnet.handler;
 
 import static org.openhab.binding.openwebnet.OpenWebNetBindingConstants.*;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
 import org.eclipse.smarthome.core.library.types.DecimalType;
 import org.eclipse.smarthome.core.library.types.IncreaseDecreaseType;
 import org.eclipse.smarthome.core.library.types.OnOffType;
 import org.eclipse.smarthome.core.library.types.PercentType;
 import org.eclipse.smarthome.core.thing.Bridge;
+import org.eclipse.smarthome.core.thing.Channel;
 import org.eclipse.smarthome.core.thing.ChannelUID;
 import org.eclipse.smarthome.core.thing.Thing;
 import org.eclipse.smarthome.core.thing.ThingStatus;
@@ -26,12 +33,22 @@ import org.eclipse.smarthome.core.thing.ThingTypeUID;
 import org.eclipse.smarthome.core.thing.binding.BaseThingHandler;
 import org.eclipse.smarthome.core.types.Command;
 import org.eclipse.smarthome.core.types.RefreshType;
+import org.eclipse.smarthome.core.types.State;
 import org.openhab.binding.openwebnet.OpenWebNetBindingConstants;
+import org.openhab.binding.openwebnet.internal.command.CommandPriority;
+import org.openhab.binding.openwebnet.internal.command.DimmerCommandThrottle;
+import org.openhab.binding.openwebnet.internal.frame.OpenFrame;
+import org.openhab.binding.openwebnet.internal.state.ChannelStateCoalescer;
+import org.openhab.binding.openwebnet.internal.state.DeviceStateCache;
+import org.openhab.binding.openwebnet.internal.state.DimmerState;
+import org.openhab.binding.openwebnet.internal.state.StateSnapshot;
+import org.openhab.binding.openwebnet.internal.state.StateSnapshot.DeviceState;
+import org.openhab.binding.openwebnet.internal.timer.HashedTimingWheel.Timeout;
 import org.openwebnet.OpenGateway;
 import org.openwebnet.message.BaseOpenMessage;
 import org.openwebnet.message.Lighting;
-import org.openwebnet.message.OpenMessageFactory;
 import org.openwebnet.message.What;
+import org.openwebnet.message.Who;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,15 +63,35 @@ public class OpenWebNetDeviceHandler extends BaseThingHandler {
 
     public final static Set<ThingTypeUID> SUPPORTED_THING_TYPES = OpenWebNetBindingConstants.DEVICE_SUPPORTED_THING_TYPES;
 
-    private double lastBrightnessChangeSentTS = 0; // timestamp when last brightness change was sent to the device
-    private static final int BRIGHTNESS_CHANGE_DELAY = 1500; // ms delay to wasit before sending a bri status request
+    // states for brightness levels 0-10, shared to avoid creating new state objects for each frame
+    private static final PercentType[] BRIGHTNESS_PERCENT = new PercentType[11];
+    private static final DecimalType[] BRIGHTNESS_LEVEL = new DecimalType[11];
 
-    private boolean brightnessLevelRequested = false; // was the brightness level requested ?
-    private int latestBrightnessWhat = -1; // latest brightness WHAT value (-1 = unknown)
-    private int latestBrightnessWhatBeforeOff = -1; // latest brightness WHAT value before device was set to off
+    static {
+        for (int level = 0; level <= 10; level++) {
+            BRIGHTNESS_PERCENT[level] = new PercentType(level * 10);
+            BRIGHTNESS_LEVEL[level] = new DecimalType(level);
+        }
+    }
+
+    // a brightness status request with no answer after this time is no longer considered pending
+    private static final long LEVEL_REQUEST_TIMEOUT = TimeUnit.SECONDS.toNanos(DEVICE_STATE_REQ_TIMEOUT);
+
+    // brightness state, replaced by compare-and-set by command and frame threads
+    private final AtomicReference<DimmerState> dimmerState = new AtomicReference<>(DimmerState.INITIAL);
 
     private OpenWebNetBridgeHandler bridgeHandler;
     private OpenGateway gateway;
+    private ChannelStateCoalescer stateCoalescer;
+    private DeviceStateCache stateCache;
+    private final BiConsumer<ChannelUID, State> statePublisher = this::updateState;
+    private final Runnable stateRequestExpired = this::onStateRequestTimeout;
+    private DimmerCommandThrottle dimmerThrottle; // paces dim commands, adapting to the gateway ACK latency
+    private volatile Timeout stateRequestTimeout; // cancelled when a frame for this device arrives
+    private final Map<String, ChannelUID> channelUIDs = new ConcurrentHashMap<>(); // channel id -> ChannelUID
+    private final Map<String, State> channelStates = new ConcurrentHashMap<>(); // channel id -> last state
+    private volatile boolean stateRestored = false; // state restored from snapshot, not yet confirmed by the gateway
+    private boolean removed = false;
     private String ownId; // OpenWebNet identifier for this device
     private Lighting.Type lightingType = Lighting.Type.ZIGBEE;
 
@@ -71,14 +108,26 @@ public class OpenWebNetDeviceHandler extends BaseThingHandler {
             if (bridge.getHandler() != null) {
                 bridgeHandler = (OpenWebNetBridgeHandler) bridge.getHandler();
                 gateway = bridgeHandler.getGateway();
+                stateCoalescer = bridgeHandler.getStateCoalescer();
+                if (stateCoalescer != null) {
+                    stateCoalescer.forget(getThing().getUID());
+                }
+                stateCache = bridgeHandler.getStateCache();
+                if (stateCache != null) {
+                    stateCache.forget(getThing().getUID());
+                }
                 if (bridgeHandler.isBusGateway()) {
                     lightingType = Lighting.Type.POINT_TO_POINT;
                 }
                 ownId = (String) getConfig().get(CONFIG_PROPERTY_WHERE);
+                dimmerThrottle = new DimmerCommandThrottle(getThing().getUID().toString(), this::sendDimLevel,
+                        scheduler);
                 // FIXME deviceWhere : create a final deviceWhere to be set at initialization and used later
-                bridgeHandler.registerDevice(ownId, getThing().getUID());
+                bridgeHandler.registerDevice(ownId, this);
                 logger.debug("==OWN:DeviceHandler== associated device to bridge with ownId={}", ownId);
-                updateStatus(ThingStatus.UNKNOWN, ThingStatusDetail.NONE, "waiting state update...");
+                if (!restoreLastKnownState()) {
+                    updateStatus(ThingStatus.UNKNOWN, ThingStatusDetail.NONE, "waiting state update...");
+                }
                 // TODO handleCommand(REFRESH) : is it called automatically ? otherwise do here a:
                 // bridgeHandler.requestDeviceState(getThing().getUID());
             }
@@ -88,6 +137,65 @@ public class OpenWebNetDeviceHandler extends BaseThingHandler {
         }
     }
 
+    /**
+     * Publish the last known state saved in the bridge snapshot, if any. The device goes ONLINE marked as restored
+     * until the state is confirmed by the gateway.
+     *
+     * @return true if the state was restored
+     */
+    private boolean restoreLastKnownState() {
+        DeviceState state = bridgeHandler.getLastKnownState(ownId, getThing().getUID().getAsString());
+        if (state == null || state.getChannels().isEmpty()) {
+            return false;
+        }
+        dimmerState.set(DimmerState.restored(state.getBrightnessWhat(), state.getBrightnessWhatBeforeOff()));
+        for (Map.Entry<String, State> channel : state.getChannels().entrySet()) {
+            channelStates.put(channel.getKey(), channel.getValue());
+            // not written to the state cache: refreshes must still reach the gateway
+            updateState(new ChannelUID(getThing().getUID(), channel.getKey()), channel.getValue());
+        }
+        stateRestored = true;
+        updateStatus(ThingStatus.ONLINE, ThingStatusDetail.NONE, "last known state restored, waiting state update...");
+        logger.debug("==OWN:DeviceHandler== restored last known state of device={}", getThing().getUID());
+        return true;
+    }
+
+    /**
+     * @return the last known state of this device to be saved in the bridge snapshot, or null if not known
+     */
+    DeviceState getSnapshotState() {
+        Map<String, State> states = new HashMap<>();
+        for (Map.Entry<String, State> channel : channelStates.entrySet()) {
+            if (StateSnapshot.isSupported(channel.getValue())) {
+                states.put(channel.getKey(), channel.getValue());
+            }
+        }
+        if (states.isEmpty()) {
+            return null;
+        }
+        DimmerState dimmer = dimmerState.get();
+        return new DeviceState(getThing().getUID().getAsString(), states, dimmer.getWhat(),
+                dimmer.getWhatBeforeOff());
+    }
+
+    /**
+     * @return true if the device state was restored from the snapshot and not yet confirmed by the gateway
+     */
+    boolean isStateRestored() {
+        return stateRestored;
+    }
+
+    String getOwnId() {
+        return ownId;
+    }
+
+    /**
+     * @return the WHO family of this device, used to request the state of all devices of the same family at once
+     */
+    Who getWho() {
+        return Who.LIGHTING;
+    }
+
     /**
      * Handles a command arrived from OH2 to this device
      *
@@ -106,11 +214,25 @@ public class OpenWebNetDeviceHandler extends BaseThingHandler {
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_OFFLINE);
             return;
         }
+        if (stateCoalescer != null) {
+            // after a refresh or a command the state received from the network must always be published
+            stateCoalescer.invalidate(channel);
+        }
         if (command instanceof RefreshType) {
+            State cached = stateCache != null ? stateCache.get(channel) : null;
+            if (cached != null) {
+                logger.debug("==OWN:DeviceHandler== Refreshing channel {} from cached state {}", channel, cached);
+                updateState(channel, cached);
+                return;
+            }
             logger.debug("==OWN:DeviceHandler== Refreshing channel {}", channel);
             requestChannelState(channel);
             return;
         }
+        if (stateCache != null) {
+            // the state cached before the command is stale until the new state is received or written by the command
+            stateCache.invalidate(channel);
+        }
         switch (channel.getId()) {
             case CHANNEL_BRIGHTNESS:
             case "dimmerLevel":
@@ -142,9 +264,9 @@ public class OpenWebNetDeviceHandler extends BaseThingHandler {
         logger.debug("==OWN:DeviceHandler== handleSwitchCommand() (command={} - channel={})", command, channel);
         if (command instanceof OnOffType) {
             if (OnOffType.ON.equals(command)) {
-                gateway.send(Lighting.requestTurnOn(toWhere(channel), lightingType));
+                bridgeHandler.sendCommand(Lighting.requestTurnOn(toWhere(channel), lightingType));
             } else if (OnOffType.OFF.equals(command)) {
-                gateway.send(Lighting.requestTurnOff(toWhere(channel), lightingType));
+                bridgeHandler.sendCommand(Lighting.requestTurnOff(toWhere(channel), lightingType));
             }
         } else {
             logger.error("==OWN:DeviceHandler== Unsupported command {}", command);
@@ -160,47 +282,41 @@ public class OpenWebNetDeviceHandler extends BaseThingHandler {
      */
     private void dimLightTo(int whatInt, Command command) {
         final String channel = CHANNEL_BRIGHTNESS;
-        final String where = toWhere(BaseOpenMessage.UNIT_01);
-        int newWhatInt = whatInt;
-        logger.debug("$$$ START---dimLightTo latestBriWhat={} latestBriBeforeOff={} briLevelRequested={}",
-                latestBrightnessWhat, latestBrightnessWhatBeforeOff, brightnessLevelRequested);
-        What newWhat;
-        if (OnOffType.ON.equals(command) && latestBrightnessWhat <= 0) {
-            // ON after OFF/Unknown -> we reset channel to last value before OFF (if exists)
-            if (latestBrightnessWhatBeforeOff > 0) {
-                newWhatInt = latestBrightnessWhatBeforeOff;
-                updateState(channel, new PercentType(newWhatInt * 10));
-            } else {
-                newWhatInt = 10;
+        DimmerState current;
+        int newWhatInt;
+        do {
+            current = dimmerState.get();
+            newWhatInt = whatInt;
+            if (OnOffType.ON.equals(command) && current.getWhat() <= 0) {
+                // ON after OFF/Unknown -> we reset channel to last value before OFF (if exists)
+                newWhatInt = current.getWhatBeforeOff() > 0 ? current.getWhatBeforeOff() : 10;
             }
-        }
-        logger.debug("$ new={}, latest={}", newWhatInt, latestBrightnessWhat);
-        if (newWhatInt != latestBrightnessWhat) {
-            if (newWhatInt >= 0 && newWhatInt <= 10) {
-                newWhat = Lighting.WHAT.fromValue(newWhatInt);
-                if (newWhat.equals(Lighting.WHAT.ON)) {
-                    // change it to WHAT.DIM_20 (dimming to 10% is not allowed in OWN)
-                    newWhat = Lighting.WHAT.DIM_20;
-                }
-                lastBrightnessChangeSentTS = System.currentTimeMillis();
-                gateway.send(Lighting.requestDimTo(where, newWhat, lightingType));
-                logger.debug("################### {}", lastBrightnessChangeSentTS);
-                if (!(command instanceof PercentType)) {
-                    updateState(channel, new PercentType(newWhatInt * 10));
-                }
-                updateState("dimmerLevel", new DecimalType(newWhatInt));
-                if (newWhatInt == 0) {
-                    latestBrightnessWhatBeforeOff = latestBrightnessWhat;
-                }
-                latestBrightnessWhat = newWhatInt;
-            } else {
-                logger.debug("$ do nothing");
+            if (newWhatInt == current.getWhat() || newWhatInt < 0 || newWhatInt > 10) {
+                logger.debug("$ do nothing: new={}, {}", newWhatInt, current);
+                return;
             }
-        } else {
-            logger.debug("$ do nothing");
+        } while (!dimmerState.compareAndSet(current, current.withLevel(newWhatInt)));
+        logger.debug("$ dimLightTo new={}, was {}", newWhatInt, current);
+        What newWhat = Lighting.WHAT.fromValue(newWhatInt);
+        if (newWhat.equals(Lighting.WHAT.ON)) {
+            // change it to WHAT.DIM_20 (dimming to 10% is not allowed in OWN)
+            newWhat = Lighting.WHAT.DIM_20;
         }
-        logger.debug("$$$ END ---dimLightTo latestBriWhat={} latestBriBeforeOff={} briLevelRequested={}",
-                latestBrightnessWhat, latestBrightnessWhatBeforeOff, brightnessLevelRequested);
+        dimmerThrottle.submit(newWhat.value());
+        // the item of a percent command already has the commanded brightness: it is not published again
+        commandChannelState(channel, BRIGHTNESS_PERCENT[newWhatInt], !(command instanceof PercentType));
+        commandChannelState("dimmerLevel", BRIGHTNESS_LEVEL[newWhatInt], true);
+    }
+
+    /**
+     * Send a dim command, called by the dimmer throttle
+     *
+     * @param whatInt the WHAT (int value) to dim to
+     * @return future completed with the gateway answer
+     */
+    private CompletableFuture<Boolean> sendDimLevel(int whatInt) {
+        return bridgeHandler.sendCommand(Lighting.requestDimTo(toWhere(BaseOpenMessage.UNIT_01),
+                Lighting.WHAT.fromValue(whatInt), lightingType));
     }
 
     /**
@@ -219,13 +335,13 @@ public class OpenWebNetDeviceHandler extends BaseThingHandler {
             }
         } else if (command instanceof IncreaseDecreaseType) {
             if (IncreaseDecreaseType.INCREASE.equals(command)) {
-                dimLightTo(latestBrightnessWhat + 1, command);
+                dimLightTo(dimmerState.get().getWhat() + 1, command);
             } else { // DECREASE
-                dimLightTo(latestBrightnessWhat - 1, command);
+                dimLightTo(dimmerState.get().getWhat() - 1, command);
             }
         } else if (command instanceof OnOffType) {
             if (OnOffType.ON.equals(command)) {
-                dimLightTo(latestBrightnessWhat, command);
+                dimLightTo(dimmerState.get().getWhat(), command);
             } else { // OFF
                 dimLightTo(0, command);
             }
@@ -248,26 +364,61 @@ public class OpenWebNetDeviceHandler extends BaseThingHandler {
     public void requestChannelState(ChannelUID channel) {
         logger.debug("==OWN==  DeviceHandler.requestChannelState() thingUID={} channel={}", thing.getUID(),
                 channel.getId());
-        gateway.send(Lighting.requestStatus(toWhere(channel), lightingType));
-        scheduler.schedule(() -> {
-            // if state is still unknown after timer ends, set the device as OFFLINE
-            if (thing.getStatus().equals(ThingStatus.UNKNOWN)) {
-                logger.info(
-                        "==OWN:DeviceHandler== Device state request timer expired, still unknown. Setting device={} to OFFLINE",
-                        thing.getUID());
-                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, "Could not get channel state");
-                logger.debug("==OWN:DeviceHandler== Device OFFLINE");
-            }
-        }, DEVICE_STATE_REQ_TIMEOUT, TimeUnit.SECONDS);
+        if (bridgeHandler.isBulkStatusPending()) {
+            logger.debug("==OWN:DeviceHandler== bulk status request pending, channel {} state will come from it",
+                    channel.getId());
+            return;
+        }
+        bridgeHandler.sendCommand(Lighting.requestStatus(toWhere(channel), lightingType), CommandPriority.NORMAL);
+        Timeout previous = stateRequestTimeout;
+        if (previous != null) {
+            previous.cancel();
+        }
+        stateRequestTimeout = bridgeHandler.getTimingWheel().schedule(stateRequestExpired, DEVICE_STATE_REQ_TIMEOUT,
+                TimeUnit.SECONDS);
+    }
+
+    private void onStateRequestTimeout() {
+        // if state is still unknown (or only restored) after timer ends, set the device as OFFLINE
+        if (thing.getStatus().equals(ThingStatus.UNKNOWN) || stateRestored) {
+            logger.info(
+                    "==OWN:DeviceHandler== Device state request timer expired, still unknown. Setting device={} to OFFLINE",
+                    thing.getUID());
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, "Could not get channel state");
+            logger.debug("==OWN:DeviceHandler== Device OFFLINE");
+        }
+    }
+
+    private void cancelStateRequestTimeout() {
+        Timeout timeout = stateRequestTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+            stateRequestTimeout = null;
+        }
+    }
+
+    /**
+     * Request to gateway state for all device channels
+     */
+    protected void requestAllChannelsState() {
+        for (Channel channel : getThing().getChannels()) {
+            requestChannelState(channel.getUID());
+        }
     }
 
     /**
-     * Updates light state based on a Lighting message received from the OWN network
+     * Updates light state based on a Lighting frame received from the OWN network. The frame object is reused by the
+     * caller and must not be kept after this method returns.
      */
-    protected void updateLightState(Lighting msg) {
+    protected void updateLightState(OpenFrame msg) {
         logger.debug("==OWN:DeviceHandler== updateLightState() for thing: {}", getThing().getUID());
-        // update status to ONLINE if not already online
-        if (ThingStatus.ONLINE != getThing().getStatus()) {
+        if (msg.isDimension() && msg.getDimensionCode() < 0) {
+            return; // a status request (*#1*WHERE##), e.g. the echo of our own request, is not an answer
+        }
+        cancelStateRequestTimeout();
+        // update status to ONLINE if not already online, or if online with a restored state
+        if (ThingStatus.ONLINE != getThing().getStatus() || stateRestored) {
+            stateRestored = false;
             updateStatus(ThingStatus.ONLINE);
         }
         ThingTypeUID thingType = getThing().getThingTypeUID();
@@ -279,74 +430,71 @@ public class OpenWebNetDeviceHandler extends BaseThingHandler {
     }
 
     /**
-     * Updates brightness level based on a Lighting message received from the OWN network
+     * Updates brightness level based on a Lighting frame received from the OWN network
      */
-    private synchronized void updateLightBrightnessState(Lighting msg) {
+    private void updateLightBrightnessState(OpenFrame msg) {
         final String channel = CHANNEL_BRIGHTNESS;
-        String where = toWhere(BaseOpenMessage.UNIT_01);
-        logger.debug("==OWN:DeviceHandler== updateLightBrightnessState() msg={}", msg);
-        logger.debug("$$$ START---updateLightBr latestBriWhat={} latestBriBeforeOff={} brightnessLevelRequested={}",
-                latestBrightnessWhat, latestBrightnessWhatBeforeOff, brightnessLevelRequested);
-        double now = System.currentTimeMillis();
-        double delta = now - lastBrightnessChangeSentTS;
-        logger.debug("$bri now={} delta={}", now, delta);
-        if (msg.isOn() && !brightnessLevelRequested) {
-            if (delta >= BRIGHTNESS_CHANGE_DELAY) {
-                // we send a light brightness status request ONLY if last brightness change
-                // was sent >BRIGHTNESS_CHANGE_DELAY ago
-                logger.debug("$bri change sent >={}ms ago, sending requestStatus...", BRIGHTNESS_CHANGE_DELAY);
-                brightnessLevelRequested = true;
-                gateway.send(Lighting.requestStatus(where, lightingType));
+        final DimmerState current = dimmerState.get();
+        logger.debug("==OWN:DeviceHandler== updateLightBrightnessState() msg={} {}", msg, current);
+        boolean settling = dimmerThrottle.isSettling();
+        long now = System.nanoTime();
+        if (msg.isOn() && !current.isLevelRequested(now, LEVEL_REQUEST_TIMEOUT)) {
+            if (!settling) {
+                // we send a light brightness status request ONLY if no brightness change was sent within the
+                // throttle settle window
+                if (dimmerState.compareAndSet(current, current.withLevelRequested(now))) {
+                    logger.debug("$bri no change being sent, sending requestStatus...");
+                    bridgeHandler.sendCommand(Lighting.requestStatus(toWhere(BaseOpenMessage.UNIT_01), lightingType),
+                            CommandPriority.LOW);
+                } else {
+                    logger.debug("$bri state changed meanwhile, NO requestStatus needed");
+                }
             } else {
-                logger.debug("$bri change sent {}<{}ms, NO requestStatus needed", delta, BRIGHTNESS_CHANGE_DELAY);
+                logger.debug("$bri change being sent (latency {}ms), NO requestStatus needed",
+                        dimmerThrottle.getLatencyMillis());
             }
+        } else if (msg.getLightingWhat() == null || msg.getWhatCode() > 10) {
+            logger.debug("$bri frame {} has no brightness level, ignoring it", msg);
         } else {
             logger.debug("$bri update from network -> level should be present in WHAT part of the message");
-            int newLevel = msg.getWhat().value();
-            logger.debug("$bri latest {} ----> new {}", latestBrightnessWhat, newLevel);
-            if (latestBrightnessWhat != newLevel) {
-                if (delta >= BRIGHTNESS_CHANGE_DELAY) {
-                    logger.debug("$bri change sent >={}ms ago, updating state...", BRIGHTNESS_CHANGE_DELAY);
-                    updateState(channel, new PercentType(newLevel * 10));
+            final int newLevel = msg.getWhatCode();
+            DimmerState previous = dimmerState.getAndUpdate(state -> state.withLevelReceived(newLevel));
+            logger.debug("$bri latest {} ----> new {}", previous.getWhat(), newLevel);
+            if (previous.getWhat() != newLevel) {
+                if (!settling) {
+                    logger.debug("$bri no change being sent, updating state...");
+                    updateChannelState(channel, BRIGHTNESS_PERCENT[newLevel]);
                 } else if (msg.isOff()) {
                     logger.debug("$bri change just sent, but OFF from network received, updating state...");
-                    updateState(channel, new PercentType(newLevel * 10));
+                    updateChannelState(channel, BRIGHTNESS_PERCENT[newLevel]);
                 } else {
                     logger.debug("$bri change just sent, NO update needed.");
                 }
-                updateState("dimmerLevel", new DecimalType(newLevel));
-                if (msg.isOff()) {
-                    latestBrightnessWhatBeforeOff = latestBrightnessWhat;
-                }
-                latestBrightnessWhat = newLevel;
+                updateChannelState("dimmerLevel", BRIGHTNESS_LEVEL[newLevel]);
             } else {
                 logger.debug("$bri no change");
             }
-            brightnessLevelRequested = false;
         }
-        logger.debug("$$$ END  ---updateLightBr latestBriWhat={} latestBriBeforeOff={} brightnessLevelRequested={}",
-                latestBrightnessWhat, latestBrightnessWhatBeforeOff, brightnessLevelRequested);
-
     }
 
     /**
-     * Updates on/off state based on a Lighting message received from the OWN network
+     * Updates on/off state based on a Lighting frame received from the OWN network
      */
-    private void updateLightOnOffState(Lighting msg) {
+    private void updateLightOnOffState(OpenFrame msg) {
         String channelID;
         if (bridgeHandler.isBusGateway()) {
             channelID = CHANNEL_SWITCH;
         } else {
-            if (BaseOpenMessage.UNIT_02.equals(OpenMessageFactory.getUnit(msg.getWhere()))) {
+            if (BaseOpenMessage.UNIT_02.equals(msg.getUnit())) {
                 channelID = CHANNEL_SWITCH_02;
             } else {
                 channelID = CHANNEL_SWITCH_01;
             }
         }
         if (msg.isOn()) {
-            updateState(channelID, OnOffType.ON);
+            updateChannelState(channelID, OnOffType.ON);
         } else if (msg.isOff()) {
-            updateState(channelID, OnOffType.OFF);
+            updateChannelState(channelID, OnOffType.OFF);
         } else {
             logger.error(
                     "==OWN:DeviceHandler== updateLightOnOffState() NOT SUPPORTED OWN LIGHTING COMMAND for thing {}, ignoring it. Frame={}",
@@ -358,17 +506,97 @@ public class OpenWebNetDeviceHandler extends BaseThingHandler {
     public void handleRemoval() {
         logger.debug("==OWN:DeviceHandler== handleRemoval() device={}", getThing().getUID());
         if (bridgeHandler != null) {
-            bridgeHandler.unregisterDevice(ownId);
+            bridgeHandler.unregisterDevice(ownId, this);
+            bridgeHandler.forgetLastKnownState(ownId);
         }
+        removed = true;
         super.handleRemoval();
     }
 
     @Override
     public void dispose() {
         logger.debug("==OWN:DeviceHandler== dispose() device={}", getThing().getUID());
+        if (bridgeHandler != null && ownId != null) {
+            // the dispatch index holds this handler instance: remove it so no frames reach a disposed handler
+            bridgeHandler.unregisterDevice(ownId, this);
+            DeviceState state = getSnapshotState();
+            if (state != null && !removed) {
+                bridgeHandler.saveLastKnownState(ownId, state);
+            }
+        }
+        if (stateCoalescer != null) {
+            stateCoalescer.forget(getThing().getUID());
+        }
+        if (stateCache != null) {
+            stateCache.forget(getThing().getUID());
+        }
+        cancelStateRequestTimeout();
+        if (dimmerThrottle != null) {
+            dimmerThrottle.dispose();
+        }
         super.dispose();
     }
 
+    /**
+     * Updates a channel state received from the network through the bridge state coalescer, so that redundant updates
+     * do not reach the event bus. The state is also written to the bridge state cache.
+     *
+     * @param channelId channel id
+     * @param state new state
+     */
+    private void updateChannelState(String channelId, State state) {
+        ChannelUID channel = recordChannelState(channelId, state);
+        if (stateCache != null) {
+            stateCache.put(channel, state);
+        }
+        publishChannelState(channel, state);
+    }
+
+    /**
+     * Updates a channel state set by a command and not yet confirmed by the gateway. It is not written to the bridge
+     * state cache, which only serves states received from the network: the cached state is forgotten instead.
+     *
+     * @param channelId channel id
+     * @param state commanded state
+     * @param publish false if the state must not be published, as the item already has it
+     */
+    private void commandChannelState(String channelId, State state, boolean publish) {
+        ChannelUID channel = recordChannelState(channelId, state);
+        if (stateCache != null) {
+            stateCache.invalidate(channel);
+        }
+        if (publish) {
+            publishChannelState(channel, state);
+        }
+    }
+
+    private void publishChannelState(ChannelUID channel, State state) {
+        if (stateCoalescer != null) {
+            stateCoalescer.update(channel, state, statePublisher);
+        } else {
+            updateState(channel, state);
+        }
+    }
+
+    /**
+     * Records a channel state in the device snapshot
+     *
+     * @param channelId channel id
+     * @param state new state
+     * @return the channel UID
+     */
+    private ChannelUID recordChannelState(String channelId, State state) {
+        ChannelUID channel = channelUIDs.get(channelId);
+        if (channel == null) {
+            channel = new ChannelUID(getThing().getUID(), channelId);
+            channelUIDs.put(channelId, channel);
+        }
+        if (!state.equals(channelStates.put(channelId, state))) {
+            bridgeHandler.deviceStateChanged();
+        }
+        return channel;
+    }
+
     /**
      * Returns a WHERE address based on bridge type and unit (optional)
      *
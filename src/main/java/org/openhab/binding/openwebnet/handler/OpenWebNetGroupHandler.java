@@ -0,0 +1,245 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.handler;
+
+import static org.openhab.binding.openwebnet.OpenWebNetBindingConstants.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.eclipse.smarthome.core.thing.Bridge;
+import org.eclipse.smarthome.core.thing.ChannelUID;
+import org.eclipse.smarthome.core.thing.Thing;
+import org.eclipse.smarthome.core.thing.ThingStatus;
+import org.eclipse.smarthome.core.thing.ThingStatusDetail;
+import org.eclipse.smarthome.core.thing.ThingStatusInfo;
+import org.eclipse.smarthome.core.thing.ThingTypeUID;
+import org.eclipse.smarthome.core.thing.binding.BaseThingHandler;
+import org.eclipse.smarthome.core.types.Command;
+import org.eclipse.smarthome.core.types.RefreshType;
+import org.openhab.binding.openwebnet.OpenWebNetBindingConstants;
+import org.openhab.binding.openwebnet.internal.frame.OpenFrame;
+import org.openwebnet.message.Lighting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link OpenWebNetGroupHandler} is responsible for handling commands for all the lights of a BUS area or group.
+ * A command is sent with a single Lighting frame addressed to the whole area or group, instead of one frame for each
+ * light; once the gateway acknowledges it, the member lights associated to a thing are updated right away, without
+ * waiting for their state from the BUS.
+ *
+ * Members of an area are the lights with a point WHERE in that area; members of a group are listed in the thing
+ * configuration, since group membership is set on the devices and cannot be read from their address.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class OpenWebNetGroupHandler extends BaseThingHandler {
+
+    private final Logger logger = LoggerFactory.getLogger(OpenWebNetGroupHandler.class);
+
+    public final static Set<ThingTypeUID> SUPPORTED_THING_TYPES = OpenWebNetBindingConstants.GROUP_SUPPORTED_THING_TYPES;
+
+    private static final String WHERE_GENERAL = "0";
+    private static final String WHERE_AREA_0 = "00";
+    private static final String WHERE_AREA_10 = "100";
+    private static final int MAX_GROUP = 255;
+
+    private OpenWebNetBridgeHandler bridgeHandler;
+    private Lighting.Type lightingType;
+    private String where; // WHERE of the area or group, as in frames (1-9, 00, 100, 0 for general, #G for groups)
+    private String commandWhere; // WHERE as accepted by the library to build commands
+    private List<String> members = Collections.emptyList(); // group members from config
+
+    public OpenWebNetGroupHandler(Thing thing) {
+        super(thing);
+    }
+
+    @Override
+    public void initialize() {
+        logger.debug("==OWN:GroupHandler== initialize() group={}", getThing().getUID());
+        Bridge bridge = getBridge();
+        if (bridge == null || bridge.getHandler() == null) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
+                    "No bridge associated, please assign a bridge in thing configuration.");
+            return;
+        }
+        Object whereConfig = getConfig().get(CONFIG_PROPERTY_WHERE);
+        String configWhere = whereConfig != null ? whereConfig.toString().trim() : "";
+        if (THING_TYPE_BUS_GROUP.equals(getThing().getThingTypeUID())) {
+            if (configWhere.startsWith("#")) {
+                configWhere = configWhere.substring(1);
+            }
+            if (!isNumberInRange(configWhere, 1, MAX_GROUP)) {
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
+                        "Invalid group '" + whereConfig + "': must be between 1 and " + MAX_GROUP);
+                return;
+            }
+            lightingType = Lighting.Type.GROUP;
+            commandWhere = configWhere;
+            where = "#" + configWhere;
+            members = parseMembers(getConfig().get(CONFIG_PROPERTY_MEMBERS));
+        } else {
+            if (!isAreaWhere(configWhere)) {
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
+                        "Invalid area '" + whereConfig + "': must be 1-9, 00 (area 0), 100 (area 10) or 0 (all)");
+                return;
+            }
+            lightingType = WHERE_GENERAL.equals(configWhere) ? Lighting.Type.GENERAL : Lighting.Type.AREA;
+            commandWhere = configWhere;
+            where = configWhere;
+        }
+        bridgeHandler = (OpenWebNetBridgeHandler) bridge.getHandler();
+        bridgeHandler.registerGroup(where, this);
+        logger.debug("==OWN:GroupHandler== associated group to bridge with WHERE={}", where);
+        if (bridge.getStatus() == ThingStatus.ONLINE) {
+            updateStatus(ThingStatus.ONLINE);
+        } else {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_OFFLINE);
+        }
+    }
+
+    @Override
+    public void bridgeStatusChanged(ThingStatusInfo bridgeStatusInfo) {
+        logger.debug("==OWN:GroupHandler== bridgeStatusChanged() group={} bridge={}", getThing().getUID(),
+                bridgeStatusInfo.getStatus());
+        if (bridgeHandler == null) {
+            return; // not initialized: keep the configuration error
+        }
+        if (bridgeStatusInfo.getStatus() == ThingStatus.ONLINE) {
+            updateStatus(ThingStatus.ONLINE);
+        } else {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_OFFLINE);
+        }
+    }
+
+    @Override
+    public void handleCommand(ChannelUID channel, Command command) {
+        logger.debug("==OWN:GroupHandler== handleCommand() (command={} - channel={})", command, channel);
+        if (bridgeHandler == null || command instanceof RefreshType) {
+            return; // the state of an area or group cannot be requested: it is only known from commands
+        }
+        if (!CHANNEL_SWITCH.equals(channel.getId()) || !(command instanceof OnOffType)) {
+            logger.warn("==OWN:GroupHandler== Unsupported command {} for channel {}", command, channel);
+            return;
+        }
+        if (!bridgeHandler.getGateway().isConnected()) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_OFFLINE);
+            return;
+        }
+        final boolean on = OnOffType.ON.equals(command);
+        Lighting msg = on ? Lighting.requestTurnOn(commandWhere, lightingType)
+                : Lighting.requestTurnOff(commandWhere, lightingType);
+        bridgeHandler.sendCommand(msg).whenComplete((ack, error) -> {
+            if (error != null) {
+                logger.warn("==OWN:GroupHandler== command {} for WHERE={} failed: {}", command, where,
+                        error.getMessage());
+            } else if (Boolean.TRUE.equals(ack)) {
+                updateMembers(on);
+            } else {
+                logger.warn("==OWN:GroupHandler== command {} for WHERE={} refused by the gateway", command, where);
+            }
+        });
+    }
+
+    /**
+     * Update the group and its members from a Lighting frame received for the group WHERE, for example when the area
+     * is switched from a BUS push-button
+     *
+     * @param frame the frame, used only during the call
+     */
+    protected void updateGroupState(OpenFrame frame) {
+        if (frame.isOn()) {
+            updateMembers(true);
+        } else if (frame.isOff()) {
+            updateMembers(false);
+        }
+    }
+
+    private void updateMembers(boolean on) {
+        updateState(CHANNEL_SWITCH, on ? OnOffType.ON : OnOffType.OFF);
+        List<String> wheres = lightingType == Lighting.Type.GROUP ? members : areaMembers();
+        int updated = bridgeHandler.updateLightsState(wheres, on ? Lighting.WHAT.ON : Lighting.WHAT.OFF);
+        logger.debug("==OWN:GroupHandler== WHERE={} switched {}, {} member things updated", where, on ? "ON" : "OFF",
+                updated);
+    }
+
+    /**
+     * @return WHERE of the lights registered on the bridge that belong to this area (all of them for general)
+     */
+    private List<String> areaMembers() {
+        List<String> wheres = new ArrayList<>();
+        for (String deviceWhere : bridgeHandler.getDeviceWheres()) {
+            String area = OpenFrame.areaOf(deviceWhere);
+            if (area != null && (lightingType == Lighting.Type.GENERAL || area.equals(where))) {
+                wheres.add(deviceWhere);
+            }
+        }
+        return wheres;
+    }
+
+    private static boolean isAreaWhere(String value) {
+        return WHERE_GENERAL.equals(value) || WHERE_AREA_0.equals(value) || WHERE_AREA_10.equals(value)
+                || (value.length() == 1 && isNumberInRange(value, 1, 9));
+    }
+
+    private static boolean isNumberInRange(String value, int min, int max) {
+        if (value.isEmpty() || value.length() > 4) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        int number = Integer.parseInt(value);
+        return number >= min && number <= max;
+    }
+
+    /**
+     * @return WHERE of the group members from a comma separated list
+     */
+    private static List<String> parseMembers(Object value) {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        Set<String> wheres = new LinkedHashSet<>();
+        for (String member : value.toString().split(",")) {
+            member = member.trim();
+            if (!member.isEmpty()) {
+                wheres.add(member.replace('h', '#'));
+            }
+        }
+        return new ArrayList<>(wheres);
+    }
+
+    @Override
+    public void handleRemoval() {
+        logger.debug("==OWN:GroupHandler== handleRemoval() group={}", getThing().getUID());
+        unregister();
+        super.handleRemoval();
+    }
+
+    @Override
+    public void dispose() {
+        logger.debug("==OWN:GroupHandler== dispose() group={}", getThing().getUID());
+        unregister();
+        super.dispose();
+    }
+
+    private void unregister() {
+        if (bridgeHandler != null && where != null) {
+            bridgeHandler.unregisterGroup(where, this);
+        }
+    }
+}
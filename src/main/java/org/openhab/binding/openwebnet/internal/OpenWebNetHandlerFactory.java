@@ -23,6 +23,7 @@ import org.eclipse.smarthome.core.thing.binding.BaseThingHandlerFactory;
 import org.eclipse.smarthome.core.thing.binding.ThingHandler;
 import org.openhab.binding.openwebnet.handler.OpenWebNetBridgeHandler;
 import org.openhab.binding.openwebnet.handler.OpenWebNetDeviceHandler;
+import org.openhab.binding.openwebnet.handler.OpenWebNetGroupHandler;
 import org.openhab.binding.openwebnet.internal.discovery.OpenWebNetDeviceDiscoveryService;
 import org.osgi.framework.ServiceRegistration;
 import org.slf4j.Logger;
@@ -56,6 +57,9 @@ public class OpenWebNetHandlerFactory extends BaseThingHandlerFactory {
         } else if (OpenWebNetDeviceHandler.SUPPORTED_THING_TYPES.contains(thing.getThingTypeUID())) {
             logger.debug("==OWN:HandlerFactory== creating NEW Device Handler");
             return new OpenWebNetDeviceHandler(thing);
+        } else if (OpenWebNetGroupHandler.SUPPORTED_THING_TYPES.contains(thing.getThingTypeUID())) {
+            logger.debug("==OWN:HandlerFactory== creating NEW Group Handler");
+            return new OpenWebNetGroupHandler(thing);
         }
         return null;
     }
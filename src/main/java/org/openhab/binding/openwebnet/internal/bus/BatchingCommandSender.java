@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.bus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.openwebnet.message.BaseOpenMessage;
+import org.openwebnet.message.OpenMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link BatchingCommandSender} sends command frames to a BUS gateway in batches: commands submitted within a short
+ * window are sent one after the other over a single command session taken from a {@link BusCommandSessionPool},
+ * instead of opening a new session for each command. Each caller gets back the ACK/NACK result of its own frame.
+ *
+ * Commands are spread over one lane for each session of the pool, based on their WHERE: lanes send in parallel, while
+ * commands for the same WHERE always go through the same lane and keep their order.
+ *
+ * Frames received in answer to a command (for example status frames in answer to a status request) are passed to a
+ * response listener.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class BatchingCommandSender {
+
+    private final Logger logger = LoggerFactory.getLogger(BatchingCommandSender.class);
+
+    private final BusCommandSessionPool sessionPool;
+    private final long batchWindowMillis;
+    private final Consumer<String> responseListener;
+
+    private final Lane[] lanes;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * @param threadFactory creates the sender threads
+     * @param sessionPool pool of command sessions to the gateway. One lane is used for each session of the pool
+     * @param batchWindowMillis time (ms) to wait for more commands before sending a batch
+     * @param responseListener receives frames sent by the gateway in answer to commands (except ACK/NACK)
+     */
+    public BatchingCommandSender(ThreadFactory threadFactory, BusCommandSessionPool sessionPool, long batchWindowMillis,
+            Consumer<String> responseListener) {
+        this.sessionPool = sessionPool;
+        this.batchWindowMillis = batchWindowMillis;
+        this.responseListener = responseListener;
+        this.lanes = new Lane[sessionPool.getSize()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane();
+        }
+        this.executor = new ScheduledThreadPoolExecutor(lanes.length, threadFactory);
+    }
+
+    /**
+     * Queue a command frame to be sent in the next batch
+     *
+     * @param msg the command
+     * @return future completed with true if the gateway answered ACK, false if NACK, or exceptionally in case of
+     *         communication error
+     */
+    public CompletableFuture<Boolean> send(OpenMessage msg) {
+        PendingCommand command = new PendingCommand(msg);
+        Lane lane = laneOf(msg);
+        lane.queue.add(command);
+        if (lane.flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.schedule(lane, batchWindowMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                lane.queue.remove(command);
+                command.result.completeExceptionally(new IOException("Command sender disposed"));
+            }
+        }
+        return command.result;
+    }
+
+    private Lane laneOf(OpenMessage msg) {
+        if (lanes.length == 1 || !(msg instanceof BaseOpenMessage)) {
+            return lanes[0];
+        }
+        String where = ((BaseOpenMessage) msg).getWhere();
+        return lanes[((where == null ? 0 : where.hashCode()) & 0x7fffffff) % lanes.length];
+    }
+
+    /**
+     * Send a batch of commands over one session from the pool. A command is sent again on a new session only if it
+     * could not be written: once written the gateway may have executed it, and commands like dim up/down must not be
+     * executed twice.
+     */
+    private void sendBatch(List<PendingCommand> batch) {
+        logger.debug("==OWN:CommandSender== sending batch of {} command(s)", batch.size());
+        BusCommandSession session = null;
+        int i = 0;
+        boolean retried = false;
+        while (i < batch.size()) {
+            PendingCommand pending = batch.get(i);
+            boolean written = false;
+            try {
+                if (session == null) {
+                    session = sessionPool.borrow();
+                }
+                session.write(pending.msg.getValue());
+                written = true;
+                List<String> answer = session.readAnswer();
+                String last = answer.get(answer.size() - 1);
+                for (int j = 0; j < answer.size() - 1; j++) {
+                    notifyResponse(answer.get(j));
+                }
+                pending.result.complete(OpenMessage.ACK.equals(last));
+                i++;
+            } catch (IOException e) {
+                if (session != null) {
+                    sessionPool.invalidate(session);
+                    session = null;
+                }
+                if (written) {
+                    // no answer: the command may have been executed, it is not sent again
+                    logger.warn("==OWN:CommandSender== no answer to {}: {}", pending.msg, e.getMessage());
+                    pending.result.completeExceptionally(e);
+                    i++;
+                }
+                if (!retried) {
+                    // the session may have been closed by the gateway: go on once with a new session
+                    logger.debug("==OWN:CommandSender== error sending {}: {}. Going on with a new session",
+                            pending.msg, e.getMessage());
+                    retried = true;
+                } else {
+                    logger.warn("==OWN:CommandSender== error sending {}: {}", pending.msg, e.getMessage());
+                    for (; i < batch.size(); i++) {
+                        batch.get(i).result.completeExceptionally(e);
+                    }
+                }
+            }
+        }
+        if (session != null) {
+            sessionPool.release(session);
+        }
+    }
+
+    private void notifyResponse(String frame) {
+        try {
+            responseListener.accept(frame);
+        } catch (RuntimeException e) {
+            logger.warn("==OWN:CommandSender== error processing response frame {}: {}", frame, e.getMessage());
+        }
+    }
+
+    /**
+     * Stop the sender. Queued commands are completed exceptionally.
+     */
+    public void dispose() {
+        executor.shutdownNow();
+        for (Lane lane : lanes) {
+            PendingCommand command;
+            while ((command = lane.queue.poll()) != null) {
+                command.result.completeExceptionally(new IOException("Command sender disposed"));
+            }
+        }
+    }
+
+    /**
+     * A lane queues commands and sends them in batches. At most one batch per lane is being sent at any time.
+     */
+    private class Lane implements Runnable {
+        private final ConcurrentLinkedQueue<PendingCommand> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+        @Override
+        public void run() {
+            do {
+                List<PendingCommand> batch = new ArrayList<>();
+                PendingCommand command;
+                while ((command = queue.poll()) != null) {
+                    batch.add(command);
+                }
+                if (!batch.isEmpty()) {
+                    sendBatch(batch);
+                }
+                flushScheduled.set(false);
+                // commands queued after the queue was drained but before the flag was reset are sent now
+            } while (!queue.isEmpty() && flushScheduled.compareAndSet(false, true));
+        }
+    }
+
+    private static class PendingCommand {
+        private final OpenMessage msg;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        PendingCommand(OpenMessage msg) {
+            this.msg = msg;
+        }
+    }
+}
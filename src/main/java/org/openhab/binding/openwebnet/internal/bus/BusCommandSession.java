@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.bus;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openwebnet.bus.MyHomeSocketFactory;
+import org.openwebnet.message.OpenMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link BusCommandSession} is an authenticated OpenWebNet command session with a BUS gateway. Several frames can
+ * be sent one after the other on the same session: for each frame all frames received from the gateway up to the
+ * final ACK/NACK are returned.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class BusCommandSession {
+
+    private static final int READ_TIMEOUT = 5000; // ms
+    private static final int MAX_FRAME_LENGTH = 1024;
+    private static final String HEALTH_CHECK_FRAME = "*#13**0##"; // gateway time request: harmless, always answered
+
+    private final Logger logger = LoggerFactory.getLogger(BusCommandSession.class);
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final StringBuilder frameBuffer = new StringBuilder(64);
+
+    private volatile long lastUsedNanos = System.nanoTime();
+
+    private BusCommandSession(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setSoTimeout(READ_TIMEOUT);
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.out = socket.getOutputStream();
+    }
+
+    /**
+     * Open a new command session with the gateway, including the OPEN password handshake
+     *
+     * @param host gateway host
+     * @param port gateway port
+     * @param passwd gateway password
+     * @return the new session
+     * @throws IOException if the session could not be opened
+     */
+    public static BusCommandSession open(String host, int port, String passwd) throws IOException {
+        Socket socket = MyHomeSocketFactory.openCommandSession(host, port, passwd);
+        if (socket == null) {
+            throw new IOException("Could not open command session with gateway " + host + ":" + port);
+        }
+        return new BusCommandSession(socket);
+    }
+
+    /**
+     * Send a frame and wait for the gateway answer
+     *
+     * @param frame the frame to send
+     * @return all frames received in answer, the last one being ACK or NACK
+     * @throws IOException in case of communication error or timeout
+     */
+    public List<String> send(String frame) throws IOException {
+        write(frame);
+        return readAnswer();
+    }
+
+    /**
+     * Send a frame, without waiting for the gateway answer
+     *
+     * @param frame the frame to send
+     * @throws IOException if the frame could not be sent
+     */
+    public void write(String frame) throws IOException {
+        logger.trace("==OWN:CommandSession== SEND >>>>> {}", frame);
+        out.write(frame.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * Wait for the gateway answer to the frame sent
+     *
+     * @return all frames received in answer, the last one being ACK or NACK
+     * @throws IOException in case of communication error or timeout
+     */
+    public List<String> readAnswer() throws IOException {
+        List<String> answer = new ArrayList<>(2);
+        String received;
+        do {
+            received = readFrame();
+            logger.trace("==OWN:CommandSession== RECEIVED <<<<< {}", received);
+            answer.add(received);
+        } while (!OpenMessage.ACK.equals(received) && !OpenMessage.NACK.equals(received));
+        lastUsedNanos = System.nanoTime();
+        return answer;
+    }
+
+    /**
+     * Check the session is still alive by sending a harmless request to the gateway
+     *
+     * @return true if the gateway answered ACK
+     */
+    public boolean ping() {
+        try {
+            List<String> answer = send(HEALTH_CHECK_FRAME);
+            return OpenMessage.ACK.equals(answer.get(answer.size() - 1));
+        } catch (IOException e) {
+            logger.debug("==OWN:CommandSession== health check failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return time (ns) since the session was last used to send a frame
+     */
+    public long getIdleNanos() {
+        return System.nanoTime() - lastUsedNanos;
+    }
+
+    /**
+     * Read a frame, up to its closing ##
+     */
+    private String readFrame() throws IOException {
+        frameBuffer.setLength(0);
+        int len = 0;
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Command session closed by gateway");
+            }
+            frameBuffer.append((char) b);
+            len++;
+            if (b == '#' && len >= 2 && frameBuffer.charAt(len - 2) == '#') {
+                return frameBuffer.toString();
+            }
+            if (len > MAX_FRAME_LENGTH) {
+                throw new IOException("Invalid frame received from gateway (no end of frame)");
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    /**
+     * Close the session
+     */
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("==OWN:CommandSession== exception while closing session: {}", e.getMessage());
+        }
+    }
+}
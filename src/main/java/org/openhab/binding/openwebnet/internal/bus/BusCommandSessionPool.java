@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.bus;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link BusCommandSessionPool} keeps a small pool of authenticated command sessions with a BUS gateway, so that
+ * commands are sent over already opened sessions instead of paying the connection and OPEN password handshake for
+ * each command. Idle sessions are periodically checked and kept alive; sessions that fail the check are closed.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class BusCommandSessionPool {
+
+    private static final int BORROW_TIMEOUT = 10; // (sec) max time to wait for a free session
+
+    private final Logger logger = LoggerFactory.getLogger(BusCommandSessionPool.class);
+
+    private final String host;
+    private final int port;
+    private final String passwd;
+    private final int size;
+    private final long keepAliveNanos;
+
+    // idle sessions, most recently used first
+    private final LinkedBlockingDeque<BusCommandSession> idleSessions = new LinkedBlockingDeque<>();
+    // one permit for each session that can be borrowed at the same time
+    private final Semaphore permits;
+    // sessions being opened by warm-up and not yet idle, reserved so that concurrent warm-ups do not open them twice
+    private final AtomicInteger warmingUp = new AtomicInteger();
+
+    private final Executor blockingExecutor;
+    private final AtomicBoolean keepAliveRunning = new AtomicBoolean(false);
+    private ScheduledFuture<?> keepAliveJob;
+    private volatile boolean closed = false;
+
+    /**
+     * @param host gateway host
+     * @param port gateway port
+     * @param passwd gateway password
+     * @param size max number of sessions
+     * @param keepAliveSeconds idle sessions are checked and kept alive every keepAliveSeconds
+     * @param scheduler scheduler used for the keep-alive job
+     * @param blockingExecutor executor running the keep-alive checks, which block on gateway I/O
+     */
+    public BusCommandSessionPool(String host, int port, String passwd, int size, int keepAliveSeconds,
+            ScheduledExecutorService scheduler, Executor blockingExecutor) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be > 0");
+        }
+        this.host = host;
+        this.port = port;
+        this.passwd = passwd;
+        this.size = size;
+        this.keepAliveNanos = TimeUnit.SECONDS.toNanos(keepAliveSeconds);
+        this.permits = new Semaphore(size, true);
+        this.blockingExecutor = blockingExecutor;
+        if (keepAliveSeconds > 0) {
+            keepAliveJob = scheduler.scheduleWithFixedDelay(this::scheduleKeepAlive, keepAliveSeconds,
+                    keepAliveSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @return max number of sessions of this pool
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Borrow a session from the pool, opening a new one if no idle session is available. The session must be given
+     * back with {@link #release(BusCommandSession)} or {@link #invalidate(BusCommandSession)}.
+     *
+     * @return an authenticated session
+     * @throws IOException if no session is available or a new session could not be opened
+     */
+    public BusCommandSession borrow() throws IOException {
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT, TimeUnit.SECONDS)) {
+                throw new IOException("Timeout waiting for a free command session");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a free command session");
+        }
+        if (closed) {
+            permits.release();
+            throw new IOException("Command session pool closed");
+        }
+        BusCommandSession session;
+        while ((session = idleSessions.pollFirst()) != null) {
+            if (!session.isClosed()) {
+                return session;
+            }
+        }
+        try {
+            logger.debug("==OWN:SessionPool== opening new command session with {}:{}", host, port);
+            return BusCommandSession.open(host, port, passwd);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Give back a healthy session to the pool
+     *
+     * @param session the session
+     */
+    public void release(BusCommandSession session) {
+        if (closed) {
+            session.close();
+        } else {
+            idleSessions.offerFirst(session);
+        }
+        permits.release();
+    }
+
+    /**
+     * Give back a session that failed: it is closed and will be replaced by a new one when needed
+     *
+     * @param session the session
+     */
+    public void invalidate(BusCommandSession session) {
+        session.close();
+        permits.release();
+    }
+
+    /**
+     * Open sessions in advance, up to the pool size, so that the first commands find warm sessions
+     *
+     * @return true if all sessions that could be opened were opened, false if a session could not be opened
+     */
+    public boolean warmUp() {
+        // free permits not backed by an idle session, nor by a session another warm-up is opening, correspond to
+        // sessions that can still be opened: reserve them
+        int reserved;
+        int toOpen;
+        do {
+            reserved = warmingUp.get();
+            toOpen = permits.availablePermits() - idleSessions.size() - reserved;
+            if (toOpen <= 0) {
+                return true;
+            }
+        } while (!warmingUp.compareAndSet(reserved, reserved + toOpen));
+        int opened = 0;
+        try {
+            for (; opened < toOpen && !closed; opened++) {
+                idleSessions.offerLast(BusCommandSession.open(host, port, passwd));
+                warmingUp.decrementAndGet();
+            }
+        } catch (IOException e) {
+            logger.debug("==OWN:SessionPool== could not open command session with {}:{}: {}", host, port,
+                    e.getMessage());
+            return false;
+        } finally {
+            warmingUp.addAndGet(opened - toOpen); // release reservations of sessions not opened
+        }
+        logger.debug("==OWN:SessionPool== warm-up opened {} command session(s) with {}:{}", opened, host, port);
+        return true;
+    }
+
+    /**
+     * Close idle sessions, for example when the connection with the gateway was lost and they are no longer usable.
+     * Sessions in use are given back as usual.
+     */
+    public void closeIdleSessions() {
+        BusCommandSession session;
+        int count = 0;
+        while ((session = idleSessions.pollFirst()) != null) {
+            session.close();
+            count++;
+        }
+        logger.debug("==OWN:SessionPool== closed {} idle command session(s) with {}:{}", count, host, port);
+    }
+
+    /**
+     * Run the keep-alive check on the blocking executor, unless the previous one is still running
+     */
+    private void scheduleKeepAlive() {
+        if (closed || !keepAliveRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            blockingExecutor.execute(() -> {
+                try {
+                    keepAlive();
+                } finally {
+                    keepAliveRunning.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            keepAliveRunning.set(false);
+        }
+    }
+
+    /**
+     * Check idle sessions that have not been used for a while: healthy sessions are kept alive, others are closed
+     */
+    private void keepAlive() {
+        int toCheck = idleSessions.size();
+        for (int i = 0; i < toCheck && !closed; i++) {
+            if (!permits.tryAcquire()) {
+                return; // all sessions are in use
+            }
+            BusCommandSession session = idleSessions.pollLast();
+            if (session == null) {
+                permits.release();
+                return;
+            }
+            if (session.getIdleNanos() < keepAliveNanos || session.ping()) {
+                idleSessions.offerFirst(session);
+                permits.release();
+            } else {
+                logger.debug("==OWN:SessionPool== idle command session with {}:{} is not healthy, closing it", host,
+                        port);
+                invalidate(session);
+            }
+        }
+    }
+
+    /**
+     * Close all sessions and the pool
+     */
+    public void close() {
+        closed = true;
+        if (keepAliveJob != null) {
+            keepAliveJob.cancel(false);
+        }
+        BusCommandSession session;
+        while ((session = idleSessions.pollFirst()) != null) {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.bus;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.openhab.binding.openwebnet.internal.timer.ExponentialBackoff;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ReconnectSupervisor} follows the outages of a gateway connection: it measures how long the monitor
+ * session was lost and, in parallel, reopens the monitor session and the command sessions with jittered exponential
+ * backoff, each on its own schedule, so that command sessions are ready as soon as the monitor session is back.
+ *
+ * Reopening a session blocks on gateway I/O: the scheduler only waits for the delays, attempts run on the blocking
+ * executor.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class ReconnectSupervisor {
+
+    private static final long INITIAL_DELAY = 500; // ms
+    private static final long MAX_DELAY = 30000; // ms
+
+    private final Logger logger = LoggerFactory.getLogger(ReconnectSupervisor.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final Executor blockingExecutor;
+    private final ReopenTask monitorTask;
+    private final ReopenTask commandTask;
+
+    // guarded by this
+    private boolean disconnected = false;
+    private boolean disposed = false;
+    private long disconnectedNanos;
+
+    private volatile long lastOutageMillis = -1;
+
+    /**
+     * @param scheduler scheduler used to wait before each attempt
+     * @param blockingExecutor executor running the attempts, which block on gateway I/O
+     * @param reopenMonitorSession reopens the monitor session and returns true if done, false to retry later; null if
+     *            the transport reconnects the monitor session itself
+     * @param reopenCommandSessions opens command sessions and returns true if done, false to retry later; null if the
+     *            transport opens command sessions itself
+     */
+    public ReconnectSupervisor(ScheduledExecutorService scheduler, Executor blockingExecutor,
+            BooleanSupplier reopenMonitorSession, BooleanSupplier reopenCommandSessions) {
+        this.scheduler = scheduler;
+        this.blockingExecutor = blockingExecutor;
+        this.monitorTask = reopenMonitorSession != null ? new ReopenTask("monitor session", reopenMonitorSession)
+                : null;
+        this.commandTask = reopenCommandSessions != null ? new ReopenTask("command sessions", reopenCommandSessions)
+                : null;
+    }
+
+    /**
+     * The monitor session was lost: start measuring the outage and reopening sessions
+     */
+    public synchronized void disconnected() {
+        if (disposed || disconnected) {
+            return;
+        }
+        disconnected = true;
+        disconnectedNanos = System.nanoTime();
+        start(monitorTask);
+        start(commandTask);
+    }
+
+    /**
+     * The monitor session is back: stop reopening sessions and end the outage
+     *
+     * @return duration (ms) of the outage, or -1 if no outage was in progress
+     */
+    public synchronized long reconnected() {
+        if (!disconnected) {
+            return -1;
+        }
+        disconnected = false;
+        cancel(monitorTask);
+        cancel(commandTask);
+        lastOutageMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - disconnectedNanos);
+        return lastOutageMillis;
+    }
+
+    /**
+     * @return duration (ms) of the last outage, or -1 if the connection was never lost
+     */
+    public long getLastOutageMillis() {
+        return lastOutageMillis;
+    }
+
+    public synchronized void dispose() {
+        disposed = true;
+        disconnected = false;
+        cancel(monitorTask);
+        cancel(commandTask);
+    }
+
+    private void start(ReopenTask task) {
+        if (task != null) {
+            task.backoff.reset();
+            schedule(task);
+        }
+    }
+
+    private void schedule(ReopenTask task) {
+        long delay = task.backoff.nextDelayMillis();
+        logger.debug("==OWN== ReconnectSupervisor reopening {} in {} ms (attempt {})", task.name, delay,
+                task.backoff.getAttempts());
+        task.job = scheduler.schedule(() -> execute(task), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancel(ReopenTask task) {
+        if (task != null && task.job != null) {
+            task.job.cancel(false);
+            task.job = null;
+        }
+    }
+
+    private void execute(ReopenTask task) {
+        try {
+            blockingExecutor.execute(() -> reopen(task));
+        } catch (RejectedExecutionException e) {
+            logger.debug("==OWN== ReconnectSupervisor cannot reopen {}: {}", task.name, e.getMessage());
+        }
+    }
+
+    private void reopen(ReopenTask task) {
+        synchronized (this) {
+            if (!disconnected) {
+                return;
+            }
+        }
+        boolean done;
+        try {
+            done = task.action.getAsBoolean();
+        } catch (RuntimeException e) {
+            logger.debug("==OWN== ReconnectSupervisor exception reopening {}: {}", task.name, e.getMessage());
+            done = false;
+        }
+        synchronized (this) {
+            if (done || !disconnected) {
+                task.job = null;
+                if (done) {
+                    logger.debug("==OWN== ReconnectSupervisor {} reopened", task.name);
+                }
+            } else {
+                schedule(task);
+            }
+        }
+    }
+
+    private static class ReopenTask {
+        private final String name;
+        private final BooleanSupplier action;
+        // guarded by the supervisor
+        private final ExponentialBackoff backoff = new ExponentialBackoff(INITIAL_DELAY, MAX_DELAY);
+        private ScheduledFuture<?> job;
+
+        private ReopenTask(String name, BooleanSupplier action) {
+            this.name = name;
+            this.action = action;
+        }
+    }
+}
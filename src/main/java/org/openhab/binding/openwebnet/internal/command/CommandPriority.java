@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.command;
+
+/**
+ * The {@link CommandPriority} is the priority of a command sent through the {@link CommandScheduler}. Each priority
+ * has a default deadline: a command still queued after its deadline is dropped instead of being sent late.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public enum CommandPriority {
+    /** commands requested by the user (switch, dim, ...) */
+    HIGH(10000),
+    /** status requests for channel refreshes */
+    NORMAL(5000),
+    /** background status requests, useless if not sent soon */
+    LOW(2000);
+
+    private final long defaultDeadlineMillis;
+
+    private CommandPriority(long defaultDeadlineMillis) {
+        this.defaultDeadlineMillis = defaultDeadlineMillis;
+    }
+
+    /**
+     * @return time (ms) after which a queued command with this priority is dropped
+     */
+    public long getDefaultDeadlineMillis() {
+        return defaultDeadlineMillis;
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.command;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.openwebnet.message.OpenMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link CommandScheduler} orders commands for a gateway by {@link CommandPriority} before they are handed to the
+ * transport. Each priority has a bounded lock-free queue: when it is full new commands are rejected at once
+ * (backpressure), instead of piling up without limit.
+ *
+ * At most maxInFlight commands are handed to the transport at the same time, so that when the gateway is slow the
+ * order in which waiting commands are sent is still decided here: higher priorities first, and commands whose deadline
+ * expired while waiting are dropped instead of being sent late.
+ *
+ * A command whose future is cancelled while it is still queued is not sent. Once a command has been taken from its
+ * queue to be handed to the transport its future can no longer be cancelled: it completes with the gateway answer.
+ *
+ * There is no scheduler thread: queues are drained by the threads submitting commands and completing them, one at a
+ * time.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class CommandScheduler {
+
+    private final Logger logger = LoggerFactory.getLogger(CommandScheduler.class);
+
+    private static final CommandPriority[] PRIORITIES = CommandPriority.values();
+
+    private final String name;
+    private final int maxInFlight;
+    private final Function<OpenMessage, CompletableFuture<Boolean>> sender;
+    private final List<MpscBoundedQueue<QueuedCommand>> queues; // one for each priority
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong expiredCommands = new AtomicLong();
+    private final AtomicLong rejectedCommands = new AtomicLong();
+
+    private volatile boolean disposed = false;
+
+    /**
+     * @param name name used in logs
+     * @param queueCapacity capacity of the queue of each priority
+     * @param maxInFlight maximum number of commands handed to the transport and not yet answered
+     * @param sender sends a command to the gateway: the returned future is completed with the gateway answer
+     */
+    public CommandScheduler(String name, int queueCapacity, int maxInFlight,
+            Function<OpenMessage, CompletableFuture<Boolean>> sender) {
+        if (queueCapacity < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("queueCapacity and maxInFlight must be > 0");
+        }
+        this.name = name;
+        this.maxInFlight = maxInFlight;
+        this.sender = sender;
+        this.queues = new ArrayList<>(PRIORITIES.length);
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues.add(new MpscBoundedQueue<>(queueCapacity));
+        }
+    }
+
+    /**
+     * Queue a command with the default deadline of its priority
+     *
+     * @param msg the command
+     * @param priority the command priority
+     * @return future completed with true if the gateway answered ACK, false if NACK, or exceptionally: with
+     *         {@link RejectedExecutionException} if the queue is full, with {@link TimeoutException} if the deadline
+     *         expired before the command was sent, or in case of communication error
+     */
+    public CompletableFuture<Boolean> submit(OpenMessage msg, CommandPriority priority) {
+        return submit(msg, priority, priority.getDefaultDeadlineMillis());
+    }
+
+    /**
+     * Queue a command
+     *
+     * @param msg the command
+     * @param priority the command priority
+     * @param deadlineMillis time (ms) after which the command is dropped if not sent yet
+     * @return future completed as for {@link #submit(OpenMessage, CommandPriority)}
+     */
+    public CompletableFuture<Boolean> submit(OpenMessage msg, CommandPriority priority, long deadlineMillis) {
+        QueuedCommand command = new QueuedCommand(msg,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis));
+        if (disposed) {
+            command.result.completeExceptionally(new IOException("Command scheduler disposed"));
+            return command.result;
+        }
+        if (!queues.get(priority.ordinal()).offer(command)) {
+            rejectedCommands.incrementAndGet();
+            logger.debug("==OWN:CommandScheduler== {} {} queue full, rejecting command {}", name, priority, msg);
+            command.result.completeExceptionally(
+                    new RejectedExecutionException("Command queue full (" + priority + "), command not sent: " + msg));
+            return command.result;
+        }
+        drain();
+        return command.result;
+    }
+
+    /**
+     * Hand queued commands to the transport while there is room in flight. Only one thread drains at a time; a
+     * thread that finds another one draining leaves the work to it.
+     */
+    private void drain() {
+        while (draining.compareAndSet(false, true)) {
+            try {
+                while (disposed || inFlight.get() < maxInFlight) {
+                    QueuedCommand command = next();
+                    if (command == null) {
+                        break;
+                    }
+                    if (disposed) {
+                        command.result.completeExceptionally(new IOException("Command scheduler disposed"));
+                    } else {
+                        dispatch(command);
+                    }
+                }
+            } finally {
+                draining.set(false);
+            }
+            // commands queued or completed by other threads while this one was draining are handled now
+            if (isEmpty() || (!disposed && inFlight.get() >= maxInFlight)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the next command to send, highest priority first, dropping expired commands
+     */
+    private QueuedCommand next() {
+        long now = System.nanoTime();
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            QueuedCommand command;
+            while ((command = queues.get(i).poll()) != null) {
+                if (!command.result.take()) {
+                    continue; // cancelled while queued
+                }
+                if (now - command.deadlineNanos < 0 || disposed) {
+                    return command;
+                }
+                expiredCommands.incrementAndGet();
+                logger.debug("==OWN:CommandScheduler== {} deadline expired, dropping {} command {}", name,
+                        PRIORITIES[i], command.msg);
+                command.result.completeExceptionally(
+                        new TimeoutException("Deadline expired before sending command " + command.msg));
+            }
+        }
+        return null;
+    }
+
+    private void dispatch(QueuedCommand command) {
+        inFlight.incrementAndGet();
+        CompletableFuture<Boolean> sent;
+        try {
+            sent = sender.apply(command.msg);
+        } catch (RuntimeException e) {
+            sent = new CompletableFuture<>();
+            sent.completeExceptionally(e);
+        }
+        sent.whenComplete((ack, error) -> {
+            inFlight.decrementAndGet();
+            if (error != null) {
+                command.result.completeExceptionally(error);
+            } else {
+                command.result.complete(ack);
+            }
+            drain();
+        });
+    }
+
+    private boolean isEmpty() {
+        for (MpscBoundedQueue<QueuedCommand> queue : queues) {
+            if (!queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop the scheduler. Queued commands and new commands are completed exceptionally.
+     */
+    public void dispose() {
+        disposed = true;
+        drain();
+    }
+
+    /**
+     * @return number of commands waiting to be sent
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (MpscBoundedQueue<QueuedCommand> queue : queues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return number of commands dropped because their deadline expired while waiting
+     */
+    public long getExpiredCommands() {
+        return expiredCommands.get();
+    }
+
+    /**
+     * @return number of commands rejected because their queue was full
+     */
+    public long getRejectedCommands() {
+        return rejectedCommands.get();
+    }
+
+    private static class QueuedCommand {
+        private final OpenMessage msg;
+        private final long deadlineNanos;
+        private final CommandFuture result = new CommandFuture();
+
+        QueuedCommand(OpenMessage msg, long deadlineNanos) {
+            this.msg = msg;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    /**
+     * Future of a queued command: cancel succeeds only while the command is still queued
+     */
+    private static class CommandFuture extends CompletableFuture<Boolean> {
+        // set when the command is taken from its queue or cancelled, whichever comes first
+        private final AtomicBoolean taken = new AtomicBoolean(false);
+
+        /**
+         * @return true if the command was taken from its queue, false if it had been cancelled
+         */
+        private boolean take() {
+            return taken.compareAndSet(false, true);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return taken.compareAndSet(false, true) && super.cancel(mayInterruptIfRunning);
+        }
+    }
+}
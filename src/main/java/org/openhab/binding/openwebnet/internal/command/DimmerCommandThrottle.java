@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.command;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link DimmerCommandThrottle} paces the dim commands sent to one dimmer, for example while a UI slider is
+ * dragged. The first level is sent at once; while a command is waiting for the gateway answer only the newest level is
+ * kept, and it is sent when the answer arrives, so the light never walks through stale levels.
+ *
+ * The pace adapts to the gateway: the ACK latency of dim commands is averaged (EWMA), the next command is not sent
+ * before that time after the previous answer, and level frames received within a settle window after a command
+ * (twice the average latency, within bounds) are considered stale.
+ *
+ * There is no lock: levels are handed over with atomics and one command at a time is in flight.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class DimmerCommandThrottle {
+
+    private static final int NONE = -1;
+    private static final double EWMA_ALPHA = 0.2;
+    private static final long INITIAL_LATENCY = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long MIN_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MAX_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1000);
+    private static final long MIN_SETTLE = TimeUnit.MILLISECONDS.toNanos(300);
+    private static final long MAX_SETTLE = TimeUnit.MILLISECONDS.toNanos(1500);
+
+    private final Logger logger = LoggerFactory.getLogger(DimmerCommandThrottle.class);
+
+    private final String name;
+    private final IntFunction<CompletableFuture<Boolean>> sender;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicInteger pendingLevel = new AtomicInteger(NONE);
+    // true from when a command is taken to be sent until its answer, including the wait before sending it
+    private final AtomicBoolean inFlight = new AtomicBoolean(false);
+
+    // written only by the thread holding inFlight
+    private volatile long latencyNanos = INITIAL_LATENCY;
+    private volatile long nextSendNanos = System.nanoTime();
+    private volatile long lastSentNanos = System.nanoTime() - MAX_SETTLE;
+
+    private volatile boolean disposed = false;
+
+    /**
+     * @param name name used in logs
+     * @param sender sends a level to the dimmer: the returned future is completed with the gateway answer
+     * @param scheduler scheduler used to wait before sending the next level
+     */
+    public DimmerCommandThrottle(String name, IntFunction<CompletableFuture<Boolean>> sender,
+            ScheduledExecutorService scheduler) {
+        this.name = name;
+        this.sender = sender;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Send a level, at once if no command is in flight, otherwise as soon as the gateway answers the command in flight.
+     * A level not yet sent is replaced by the new one.
+     *
+     * @param level the level (Lighting WHAT) to send
+     */
+    public void submit(int level) {
+        if (level < 0) {
+            throw new IllegalArgumentException("level must be >= 0");
+        }
+        if (pendingLevel.getAndSet(level) != NONE) {
+            logger.debug("==OWN:DimmerThrottle== {} replaced pending level with {}", name, level);
+        }
+        trySend();
+    }
+
+    /**
+     * @return true if a level is being sent or was sent within the settle window: level frames received now may be
+     *         stale and should not override the level requested
+     */
+    public boolean isSettling() {
+        return inFlight.get() || pendingLevel.get() != NONE
+                || System.nanoTime() - lastSentNanos < settleWindowNanos();
+    }
+
+    /**
+     * @return the average ACK latency (ms) of dim commands
+     */
+    public long getLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+    }
+
+    /**
+     * Drop the pending level, if any. Levels are no longer sent.
+     */
+    public void dispose() {
+        disposed = true;
+        pendingLevel.set(NONE);
+    }
+
+    private long settleWindowNanos() {
+        return Math.max(MIN_SETTLE, Math.min(2 * latencyNanos, MAX_SETTLE));
+    }
+
+    private void trySend() {
+        if (disposed || pendingLevel.get() == NONE || !inFlight.compareAndSet(false, true)) {
+            return; // nothing to send, or the thread holding inFlight sends it when done
+        }
+        long wait = nextSendNanos - System.nanoTime();
+        if (wait > 0) {
+            try {
+                scheduler.schedule(this::sendPending, wait, TimeUnit.NANOSECONDS);
+                return;
+            } catch (RejectedExecutionException e) {
+                logger.debug("==OWN:DimmerThrottle== {} cannot wait before sending, sending now", name);
+            }
+        }
+        sendPending();
+    }
+
+    /**
+     * Send the pending level. Called only by the thread holding inFlight.
+     */
+    private void sendPending() {
+        int level = pendingLevel.getAndSet(NONE);
+        if (level == NONE || disposed) {
+            release();
+            return;
+        }
+        final long start = System.nanoTime();
+        lastSentNanos = start;
+        logger.debug("==OWN:DimmerThrottle== {} sending level {}", name, level);
+        CompletableFuture<Boolean> result;
+        try {
+            result = sender.apply(level);
+        } catch (RuntimeException e) {
+            logger.warn("==OWN:DimmerThrottle== {} exception sending level {}: {}", name, level, e.getMessage());
+            release();
+            return;
+        }
+        result.whenComplete((ack, error) -> {
+            long now = System.nanoTime();
+            if (error == null) {
+                latencyNanos += (long) ((now - start - latencyNanos) * EWMA_ALPHA);
+            }
+            nextSendNanos = now + Math.max(MIN_INTERVAL, Math.min(latencyNanos, MAX_INTERVAL));
+            lastSentNanos = now;
+            release();
+        });
+    }
+
+    private void release() {
+        inFlight.set(false);
+        trySend(); // a level may have been submitted while inFlight was held
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.command;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The {@link MpscBoundedQueue} is a bounded, lock-free, multi-producer single-consumer queue on a ring buffer. Each
+ * slot has a sequence number telling producers when it is free and the consumer when it has been published, so
+ * {@link #offer(Object)} never blocks: it returns false when the queue is full.
+ *
+ * Any thread can offer; {@link #poll()} must be called by one thread at a time.
+ *
+ * @author Massimo Valla - Initial contribution
+ *
+ * @param <E> element type
+ */
+class MpscBoundedQueue<E> {
+
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * @param capacity queue capacity, rounded up to a power of 2 and to at least 2: with a single slot a published
+     *            element has the sequence of a free slot for the next position, so the queue would never be full
+     */
+    MpscBoundedQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        buffer = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Add an element, if there is room
+     *
+     * @param element the element
+     * @return true if added, false if the queue is full
+     */
+    boolean offer(E element) {
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                return false; // slot still used by an element not yet polled: full
+            }
+            // else another producer took this position: retry
+        }
+        buffer.set(index, element);
+        sequences.set(index, position + 1); // publish to the consumer
+        return true;
+    }
+
+    /**
+     * Remove the oldest element. Must be called by one thread at a time.
+     *
+     * @return the element, or null if the queue is empty
+     */
+    E poll() {
+        long position = head;
+        int index = (int) (position & mask);
+        if (sequences.get(index) != position + 1) {
+            return null; // empty, or the producer of this slot has not published yet
+        }
+        E element = buffer.get(index);
+        buffer.set(index, null);
+        sequences.set(index, position + mask + 1); // free the slot for the next round
+        head = position + 1;
+        return element;
+    }
+
+    /**
+     * @return number of elements in the queue (approximate while producers are adding)
+     */
+    int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
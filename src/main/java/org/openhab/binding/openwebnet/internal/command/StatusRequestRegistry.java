@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.command;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.binding.openwebnet.internal.frame.OpenFrame;
+import org.openwebnet.message.OpenMessage;
+import org.openwebnet.message.Who;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link StatusRequestRegistry} sits in front of a {@link CommandScheduler} and keeps track of the status requests
+ * (<code>*#WHO*WHERE##</code>) pending for each WHO+WHERE.
+ *
+ * A status request for a WHO+WHERE that already has one pending is not sent again: the caller gets the future of the
+ * pending request, so all waiters are resolved by the same gateway answer. A command for a WHO+WHERE supersedes the
+ * status request pending for it if the request is still queued in the scheduler: it is cancelled and not sent, as the
+ * command answer brings the new state anyway. A request already handed to the transport is left to complete with its
+ * answer.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class StatusRequestRegistry {
+
+    private final Logger logger = LoggerFactory.getLogger(StatusRequestRegistry.class);
+
+    private final CommandScheduler scheduler;
+    private final ConcurrentMap<String, PendingRequest> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong mergedRequests = new AtomicLong();
+    private final AtomicLong supersededRequests = new AtomicLong();
+
+    /**
+     * @param scheduler the scheduler commands and status requests are submitted to
+     */
+    public StatusRequestRegistry(CommandScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Submit a command or status request to the scheduler, merging it with a pending status request for the same
+     * WHO+WHERE, or superseding it
+     *
+     * @param msg the command or status request
+     * @param priority the priority
+     * @return future completed as for {@link CommandScheduler#submit(OpenMessage, CommandPriority)}; it completes
+     *         exceptionally with {@link java.util.concurrent.CancellationException} if the status request was
+     *         superseded by a command before being sent
+     */
+    public CompletableFuture<Boolean> submit(OpenMessage msg, CommandPriority priority) {
+        String frame = msg.getValue();
+        Who who = OpenFrame.whoOf(frame);
+        String where = OpenFrame.whereOf(frame);
+        if (who == null || where.isEmpty()) {
+            return scheduler.submit(msg, priority);
+        }
+        String key = who.value() + "*" + where;
+        if (!isStatusRequest(frame, key)) {
+            PendingRequest request = pending.get(key);
+            if (request != null && request.cancelIfQueued()) {
+                pending.remove(key, request);
+                supersededRequests.incrementAndGet();
+                logger.debug("==OWN:StatusRequests== status request for {} superseded by command {}", key, msg);
+            }
+            return scheduler.submit(msg, priority);
+        }
+        while (true) {
+            PendingRequest request = pending.get(key);
+            if (request != null && !request.result.isDone()) {
+                mergedRequests.incrementAndGet();
+                return request.result;
+            }
+            PendingRequest newRequest = new PendingRequest();
+            boolean added = request == null ? pending.putIfAbsent(key, newRequest) == null
+                    : pending.replace(key, request, newRequest);
+            if (!added) {
+                continue; // another thread registered a request meanwhile: check it again
+            }
+            final CompletableFuture<Boolean> result = newRequest.result;
+            final CompletableFuture<Boolean> queued = scheduler.submit(msg, priority);
+            newRequest.queued = queued;
+            // a waiter cancelling the result cancels the request, if still queued
+            result.whenComplete((ack, error) -> {
+                pending.remove(key, newRequest);
+                if (result.isCancelled()) {
+                    queued.cancel(false);
+                }
+            });
+            queued.whenComplete((ack, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(ack);
+                }
+            });
+            return result;
+        }
+    }
+
+    private static boolean isStatusRequest(String frame, String key) {
+        // *#WHO*WHERE##
+        return frame.length() == key.length() + 4 && frame.startsWith("*#")
+                && frame.regionMatches(2, key, 0, key.length());
+    }
+
+    private static class PendingRequest {
+        // returned to all waiters of the request
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        // future of the request submitted to the scheduler, null while it is being submitted
+        private volatile CompletableFuture<Boolean> queued;
+
+        /**
+         * @return true if the request was still queued in the scheduler and has been cancelled
+         */
+        private boolean cancelIfQueued() {
+            CompletableFuture<Boolean> request = queued;
+            // the scheduler lets a request be cancelled only before handing it to the transport
+            return request != null && request.cancel(false);
+        }
+    }
+
+    /**
+     * @return number of status requests merged with a pending one
+     */
+    public long getMergedRequests() {
+        return mergedRequests.get();
+    }
+
+    /**
+     * @return number of pending status requests superseded by a command
+     */
+    public long getSupersededRequests() {
+        return supersededRequests.get();
+    }
+}
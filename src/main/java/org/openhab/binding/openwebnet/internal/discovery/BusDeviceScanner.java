@@ -0,0 +1,270 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.discovery;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.openhab.binding.openwebnet.handler.OpenWebNetBridgeHandler;
+import org.openhab.binding.openwebnet.internal.command.CommandPriority;
+import org.openhab.binding.openwebnet.internal.frame.FrameListener;
+import org.openhab.binding.openwebnet.internal.frame.OpenFrame;
+import org.openwebnet.OpenDeviceType;
+import org.openwebnet.OpenNewDeviceListener;
+import org.openwebnet.message.Lighting;
+import org.openwebnet.message.OpenMessageFactory;
+import org.openwebnet.message.Who;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link BusDeviceScanner} discovers lights on a BUS gateway one chunk at a time: each chunk is an area of the main
+ * bus (00 for area 0, 1-9, 100 for area 10), scanned with one area status request, or a local bus, scanned with one
+ * general status request for that bus. Several chunks are scanned in parallel (one for each command session) and
+ * devices are reported as soon as their chunk is answered.
+ *
+ * The scanner remembers which chunks have been scanned: a scan that is stopped before the end is resumed from the
+ * first chunk not yet scanned, and a new full scan starts only after all chunks have been scanned.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class BusDeviceScanner implements FrameListener {
+
+    private static final String[] AREAS = { "00", "1", "2", "3", "4", "5", "6", "7", "8", "9", "100" };
+    private static final int LOCAL_BUSES = 15;
+    private static final String LOCAL_BUS = "#4#";
+    private static final String WHERE_GENERAL = "0";
+
+    private final Logger logger = LoggerFactory.getLogger(BusDeviceScanner.class);
+
+    private final OpenWebNetBridgeHandler bridgeHandler;
+    private final List<String> chunks; // WHERE of the area status request of each chunk
+    // chunk of each main bus area WHERE and of each local bus (#4#II)
+    private final Map<String, Integer> chunkByArea = new HashMap<>();
+
+    // scan progress, guarded by this
+    private final BitSet scanned = new BitSet();
+    private final BitSet failed = new BitSet(); // chunks not answered in the current scan
+    private final Map<Integer, CompletableFuture<Boolean>> inFlight = new HashMap<>();
+    private final Map<Integer, Map<String, OpenDeviceType>> found = new HashMap<>();
+    private OpenNewDeviceListener listener;
+    private Runnable onCompleted;
+    private boolean running = false;
+    private boolean scanning = false;
+
+    private final OpenFrame frame = new OpenFrame();
+
+    public BusDeviceScanner(OpenWebNetBridgeHandler bridgeHandler) {
+        this.bridgeHandler = bridgeHandler;
+        List<String> wheres = new ArrayList<>();
+        for (String area : AREAS) {
+            chunkByArea.put(area, wheres.size());
+            wheres.add(area);
+        }
+        for (int bus = 1; bus <= LOCAL_BUSES; bus++) {
+            String localBus = LOCAL_BUS + (bus < 10 ? "0" : "") + bus;
+            chunkByArea.put(localBus, wheres.size());
+            wheres.add(WHERE_GENERAL + localBus);
+        }
+        chunks = Collections.unmodifiableList(wheres);
+    }
+
+    /**
+     * Start scanning, or resume the previous scan if it was stopped before the end
+     *
+     * @param listener receives devices found
+     * @param onCompleted called when no chunks are left to scan in this scan, without holding the scanner lock
+     */
+    public void start(OpenNewDeviceListener listener, Runnable onCompleted) {
+        Runnable completed;
+        synchronized (this) {
+            if (running) {
+                logger.debug("==OWN:DeviceDiscovery== scan already in progress -> SKIPPING...");
+                return;
+            }
+            this.listener = listener;
+            this.onCompleted = onCompleted;
+            running = true;
+            failed.clear();
+            logger.debug("==OWN:DeviceDiscovery== scanning {} chunks ({} already scanned)", chunks.size(),
+                    scanned.cardinality());
+            bridgeHandler.setFrameObserver(this);
+            completed = scanNext();
+        }
+        if (completed != null) {
+            completed.run();
+        }
+    }
+
+    /**
+     * Stop scanning. Chunks not completed will be scanned by the next scan.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        bridgeHandler.setFrameObserver(null);
+        for (CompletableFuture<Boolean> request : inFlight.values()) {
+            request.cancel(false);
+        }
+        inFlight.clear();
+        found.clear();
+        logger.debug("==OWN:DeviceDiscovery== scan stopped, {}/{} chunks scanned", scanned.cardinality(),
+                chunks.size());
+    }
+
+    /**
+     * Send status requests for the next chunks not yet scanned, one for each command session
+     *
+     * @return the completion callback if the scan ended, to be run after leaving the scanner lock, or null
+     */
+    private Runnable scanNext() {
+        if (scanning) {
+            return null; // called while sending a request: the loop below goes on
+        }
+        scanning = true;
+        try {
+            int parallelism = Math.max(1, bridgeHandler.getCommandSessions());
+            while (running && inFlight.size() < parallelism) {
+                int next = nextChunk();
+                if (next < 0) {
+                    break;
+                }
+                scanChunk(next);
+            }
+        } finally {
+            scanning = false;
+        }
+        if (running && inFlight.isEmpty()) {
+            return finish();
+        }
+        return null;
+    }
+
+    /**
+     * @return the first chunk not yet scanned, not failed in this scan and not being scanned, or -1
+     */
+    private int nextChunk() {
+        for (int chunk = scanned.nextClearBit(0); chunk < chunks.size(); chunk = scanned.nextClearBit(chunk + 1)) {
+            if (!failed.get(chunk) && !inFlight.containsKey(chunk)) {
+                return chunk;
+            }
+        }
+        return -1;
+    }
+
+    private void scanChunk(int chunk) {
+        found.put(chunk, new LinkedHashMap<>());
+        CompletableFuture<Boolean> request = bridgeHandler.sendCommand(
+                OpenMessageFactory.parse("*#" + Who.LIGHTING.value() + "*" + chunks.get(chunk) + "##"),
+                CommandPriority.NORMAL);
+        inFlight.put(chunk, request);
+        request.whenComplete((ack, error) -> chunkCompleted(chunk, request, error == null));
+    }
+
+    private void chunkCompleted(int chunk, CompletableFuture<Boolean> request, boolean answered) {
+        Runnable completed;
+        synchronized (this) {
+            if (!running || inFlight.get(chunk) != request) {
+                return; // stopped
+            }
+            completed = chunkAnswered(chunk, answered);
+        }
+        if (completed != null) {
+            completed.run();
+        }
+    }
+
+    /**
+     * @return the completion callback if the scan ended, to be run after leaving the scanner lock, or null
+     */
+    private Runnable chunkAnswered(int chunk, boolean answered) {
+        inFlight.remove(chunk);
+        Map<String, OpenDeviceType> devices = found.remove(chunk);
+        if (answered) {
+            scanned.set(chunk);
+            logger.debug("==OWN:DeviceDiscovery== chunk WHERE={} scanned, {} devices found", chunks.get(chunk),
+                    devices.size());
+            for (Map.Entry<String, OpenDeviceType> device : devices.entrySet()) {
+                try {
+                    listener.onNewDevice(device.getKey(), device.getValue());
+                } catch (RuntimeException e) {
+                    logger.warn("==OWN:DeviceDiscovery== exception reporting device WHERE={}: {}", device.getKey(),
+                            e.getMessage());
+                }
+            }
+        } else {
+            failed.set(chunk); // left for the next scan
+            logger.debug("==OWN:DeviceDiscovery== chunk WHERE={} not answered, will be scanned again",
+                    chunks.get(chunk));
+        }
+        return scanNext();
+    }
+
+    /**
+     * End of scan: if all chunks have been scanned the next scan starts from the beginning, otherwise it resumes
+     *
+     * @return the completion callback, to be run after leaving the scanner lock
+     */
+    private Runnable finish() {
+        if (scanned.cardinality() == chunks.size()) {
+            logger.info("==OWN:DeviceDiscovery== scan completed, {} chunks scanned", chunks.size());
+            scanned.clear();
+        } else {
+            logger.info("==OWN:DeviceDiscovery== scan ended, {}/{} chunks scanned: next scan will resume",
+                    scanned.cardinality(), chunks.size());
+        }
+        Runnable completed = onCompleted;
+        stop();
+        return completed;
+    }
+
+    /**
+     * Collect Lighting frames for the chunks being scanned
+     */
+    @Override
+    public synchronized void onFrame(String rawFrame) {
+        if (!running || !frame.parse(rawFrame) || frame.getWho() != Who.LIGHTING) {
+            return;
+        }
+        String where = frame.getWhere();
+        Map<String, OpenDeviceType> devices = found.get(chunkOf(where));
+        if (devices == null) {
+            return;
+        }
+        boolean dimmer = frame.isDimension() || (frame.getLightingWhat() != null
+                && frame.getLightingWhat() != Lighting.WHAT.ON && frame.getLightingWhat() != Lighting.WHAT.OFF);
+        if (dimmer) {
+            devices.put(where, OpenDeviceType.SCS_DIMMER_SWITCH);
+        } else {
+            devices.putIfAbsent(where, OpenDeviceType.SCS_ON_OFF_SWITCH);
+        }
+    }
+
+    /**
+     * @return the chunk of a point WHERE (AP, AAPP, or one of them followed by #4#II on a local bus), or -1
+     */
+    private int chunkOf(String where) {
+        int localBus = where.indexOf(LOCAL_BUS);
+        String point = localBus < 0 ? where : where.substring(0, localBus);
+        String area = OpenFrame.areaOf(point);
+        if (area == null) {
+            return -1;
+        }
+        Integer chunk = chunkByArea.get(localBus < 0 ? area : where.substring(localBus));
+        return chunk != null ? chunk : -1;
+    }
+}
@@ -9,10 +9,13 @@
 package org.openhab.binding.openwebnet.internal.discovery;
 
 import java.io.IOException;
-import java.net.Socket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.smarthome.config.discovery.AbstractDiscoveryService;
 import org.eclipse.smarthome.config.discovery.DiscoveryResult;
@@ -21,11 +24,10 @@ import org.eclipse.smarthome.core.thing.ThingTypeUID;
 import org.eclipse.smarthome.core.thing.ThingUID;
 import org.openhab.binding.openwebnet.OpenWebNetBindingConstants;
 //import org.openhab.binding.openwebnet.handler.OpenWebNetBridgeHandler;
+import org.openhab.binding.openwebnet.internal.nio.NioGatewayScanner;
+import org.openhab.binding.openwebnet.internal.zigbee.SerialPortGatewayZigBee;
 import org.openwebnet.OpenError;
-import org.openwebnet.OpenGatewayZigBee;
 import org.openwebnet.OpenListener;
-import org.openwebnet.OpenWebNet;
-import org.openwebnet.bus.MyHomeSocketFactory;
 import org.openwebnet.message.GatewayManagement;
 import org.openwebnet.message.OpenMessage;
 import org.slf4j.Logger;
@@ -37,18 +39,26 @@ import org.slf4j.LoggerFactory;
  * @author Massimo Valla - Initial contribution
  */
 
-public class OpenWebNetBridgeDiscoveryService extends AbstractDiscoveryService implements OpenListener {
+public class OpenWebNetBridgeDiscoveryService extends AbstractDiscoveryService {
 
     private final Logger logger = LoggerFactory.getLogger(OpenWebNetBridgeDiscoveryService.class);
 
     private final static int DISCOVERY_TIMEOUT = 30; // seconds
 
+    private static final String CONFIG_SCAN_RANGE = "scanRange"; // comma separated CIDR ranges to scan for gateways
+    private static final int BUS_GATEWAY_PORT = 20000;
+    private static final int BUS_SCAN_TIMEOUT = 500; // ms to wait for each address to connect and greet
+    private static final int BUS_SCAN_PARALLELISM = 128; // connections open at the same time
+
     // private OpenWebNetBridgeHandler bthandler; //not needed
 
-    // TODO support multiple dongles at the same time
-    private OpenGatewayZigBee zbgateway;
-    private int dongleAddr = 0;
-    private ThingUID dongleUID = null;
+    // dongles being searched, by serial port: each free serial port is tried by its own gateway
+    private final Map<String, DongleProbe> dongleProbes = new ConcurrentHashMap<>();
+
+    private final NioGatewayScanner busScanner = new NioGatewayScanner(BUS_GATEWAY_PORT, BUS_SCAN_TIMEOUT,
+            BUS_SCAN_PARALLELISM);
+    private String scanRange; // if null, networks this host is connected to are scanned
+    private volatile boolean busScanning = false;
 
     public OpenWebNetBridgeDiscoveryService() {
         super(OpenWebNetBindingConstants.BRIDGE_SUPPORTED_THING_TYPES, DISCOVERY_TIMEOUT, false);
@@ -63,54 +73,113 @@ public class OpenWebNetBridgeDiscoveryService extends AbstractDiscoveryService i
         logger.debug("==OWN:BridgeDiscovery== constructor(timeout)");
     }
 
+    @Override
+    protected void activate(Map<String, Object> configProperties) {
+        readConfig(configProperties);
+        super.activate(configProperties);
+    }
+
+    @Override
+    protected void modified(Map<String, Object> configProperties) {
+        readConfig(configProperties);
+        super.modified(configProperties);
+    }
+
+    private void readConfig(Map<String, Object> configProperties) {
+        Object range = configProperties != null ? configProperties.get(CONFIG_SCAN_RANGE) : null;
+        scanRange = range != null && !range.toString().trim().isEmpty() ? range.toString() : null;
+        logger.debug("==OWN:BridgeDiscovery== scanRange={}", scanRange);
+    }
+
     @Override
     protected void startScan() {
         logger.info("==OWN:BridgeDiscovery== ------ startScan() - SEARCHING for bridges...");
         startZigBeeScan();
-        // FIXME
-        // startBUSScan();
+        startBUSScan();
+    }
+
+    @Override
+    protected void stopScan() {
+        busScanner.cancel();
+        for (DongleProbe probe : dongleProbes.values()) {
+            probe.end();
+        }
+        super.stopScan();
+    }
+
+    /**
+     * Called when a dongle search ends: the whole scan is stopped only if no other search is in progress
+     */
+    private void stopZigBeeScan() {
+        if (!busScanning && dongleProbes.isEmpty()) {
+            stopScan();
+        }
     }
 
     /**
-     * OWN ZigBee gw discovery
+     * OWN ZigBee gw discovery: each free serial port (not used by a dongle bridge) is tried in parallel by its own
+     * gateway
      */
     private void startZigBeeScan() {
-        if (zbgateway == null) {
-            logger.debug("==OWN:BridgeDiscovery:Dongle== Gateway NULL, creating a new one ...");
-            zbgateway = OpenWebNet.gatewayZigBeeAsSingleton();
-            zbgateway.subscribe(this);
-        }
-        if (!zbgateway.isConnected()) {
-            logger.debug("==OWN:BridgeDiscovery:Dongle== ... trying to connect dongle ...");
-            zbgateway.connect();
-        } else { // dongle is already connected
-            logger.debug("==OWN:BridgeDiscovery:Dongle== ... dongle is already connected ...");
-            if (dongleAddr != 0) {
-                // a dongle was already discovered, notify new dongle thing to inbox
-                logger.debug("==OWN:BridgeDiscovery:Dongle== ... dongle ADDR is: {}", dongleAddr);
-                notifyNewDongleThing(dongleAddr);
-            } else {
-                logger.debug("==OWN:BridgeDiscovery:Dongle== ... requesting again MACAddress ...");
-                zbgateway.send(GatewayManagement.requestMACAddress());
+        List<String> ports;
+        try {
+            ports = SerialPortGatewayZigBee.findFreeSerialPorts();
+        } catch (LinkageError e) {
+            logger.warn("==OWN:BridgeDiscovery:Dongle== cannot list serial ports: {}", e.getMessage());
+            return;
+        }
+        logger.debug("==OWN:BridgeDiscovery:Dongle== trying free serial ports: {}", ports);
+        for (String port : ports) {
+            SerialPortGatewayZigBee zbgateway = new SerialPortGatewayZigBee(port);
+            DongleProbe probe = new DongleProbe(zbgateway);
+            // a bridge initialized meanwhile takes precedence: the search on its port ends
+            if (dongleProbes.containsKey(port) || !zbgateway.claimPort(probe::endLater)) {
+                continue; // already being tried, or claimed by a bridge meanwhile
             }
+            dongleProbes.put(port, probe);
+            zbgateway.subscribe(probe);
+            logger.debug("==OWN:BridgeDiscovery:Dongle== ... trying to connect dongle on port {} ...", port);
+            scheduler.execute(zbgateway::connect);
         }
     }
 
     /**
-     * BUS gw discovery for VDK on localhost:20000 (debug)
+     * BUS gw discovery: scan the configured ranges (or the networks this host is connected to) for gateways answering
+     * on the OpenWebNet port
      *
      */
     private void startBUSScan() {
-        String host = "localhost";
-        int port = 20000;
+        List<InetAddress> hosts;
         try {
-            Socket monitorSk = MyHomeSocketFactory.openMonitorSession(host, port, "12345");
-            monitorSk.close();
-        } catch (IOException e) {
-            logger.debug("==OWN:BridgeDiscovery== localhost GW not found");
+            hosts = NioGatewayScanner
+                    .parseRanges(scanRange != null ? scanRange : String.join(",", NioGatewayScanner.localRanges()));
+        } catch (IllegalArgumentException e) {
+            logger.warn("==OWN:BridgeDiscovery== invalid {} '{}': {}", CONFIG_SCAN_RANGE, scanRange, e.getMessage());
             return;
         }
-        ThingUID busgw = new ThingUID(OpenWebNetBindingConstants.THING_TYPE_BUS_GATEWAY, host);
+        if (hosts.isEmpty()) {
+            logger.debug("==OWN:BridgeDiscovery== no networks to scan for BUS gateways");
+            return;
+        }
+        try {
+            busScanning = true;
+            busScanner.scan(hosts, this::notifyNewBusGateway).whenComplete((found, error) -> {
+                busScanning = false;
+                logger.debug("==OWN:BridgeDiscovery== BUS scan ended: {} gateways found", found);
+            });
+        } catch (IOException e) {
+            busScanning = false;
+            logger.warn("==OWN:BridgeDiscovery== cannot scan for BUS gateways: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Notifies to inbox a new BUS gateway thing has been discovered
+     */
+    private void notifyNewBusGateway(InetSocketAddress address) {
+        String host = address.getAddress().getHostAddress();
+        int port = address.getPort();
+        ThingUID busgw = new ThingUID(OpenWebNetBindingConstants.THING_TYPE_BUS_GATEWAY, host.replace('.', '_'));
         Map<String, Object> busgwProperties = new HashMap<>(3);
         busgwProperties.put(OpenWebNetBindingConstants.CONFIG_PROPERTY_HOST, host);
         busgwProperties.put(OpenWebNetBindingConstants.CONFIG_PROPERTY_PORT, Integer.toString(port));
@@ -130,70 +199,99 @@ public class OpenWebNetBridgeDiscoveryService extends AbstractDiscoveryService i
     /**
      * Notifies to inbox a new USB dongle thing has been discovered
      */
-    private void notifyNewDongleThing(int dongleAddr) {
-        dongleUID = new ThingUID(OpenWebNetBindingConstants.THING_TYPE_DONGLE, Integer.toString(dongleAddr));
+    private void notifyNewDongleThing(SerialPortGatewayZigBee zbgateway, int dongleAddr) {
+        ThingUID dongleUID = new ThingUID(OpenWebNetBindingConstants.THING_TYPE_DONGLE, Integer.toString(dongleAddr));
         Map<String, Object> dongleProperties = new HashMap<>(2);
-        dongleProperties.put(OpenWebNetBindingConstants.CONFIG_PROPERTY_SERIAL_PORT, zbgateway.getConnectedPort());
-        dongleProperties.put(OpenWebNetBindingConstants.CONFIG_PROPERTY_FIRMWARE, zbgateway.getDongleFirmwareVersion());
+        dongleProperties.put(OpenWebNetBindingConstants.CONFIG_PROPERTY_SERIAL_PORT, zbgateway.getPortName());
+        String firmware = zbgateway.getDongleFirmwareVersion();
+        if (firmware != null) {
+            dongleProperties.put(OpenWebNetBindingConstants.CONFIG_PROPERTY_FIRMWARE, firmware);
+        }
 
         DiscoveryResult discoveryResult = DiscoveryResultBuilder.create(dongleUID).withProperties(dongleProperties)
                 .withLabel(OpenWebNetBindingConstants.THING_LABEL_DONGLE + " (ID=" + dongleAddr + ", "
-                        + zbgateway.getConnectedPort() + ", v=" + zbgateway.getDongleFirmwareVersion() + ")")
+                        + zbgateway.getPortName() + ", v=" + firmware + ")")
                 .build();
         logger.info("==OWN:BridgeDiscovery== --- DONGLE thing discovered: {}", discoveryResult.getLabel());
         thingDiscovered(discoveryResult);
     }
 
-    @Override
-    public void onConnected() {
-        logger.info("==OWN:BridgeDiscovery:Dongle== onConnected() FOUND DONGLE: CONNECTED port={}",
-                zbgateway.getConnectedPort());
-        dongleAddr = 0; // reset dongleAddr
-        zbgateway.send(GatewayManagement.requestFirmwareVersion());
-        zbgateway.send(GatewayManagement.requestMACAddress());
-    }
+    /**
+     * Search of a dongle on one serial port: connects, reads the dongle address and then releases the port
+     */
+    private class DongleProbe implements OpenListener {
+        private final SerialPortGatewayZigBee zbgateway;
+        private volatile boolean found = false;
 
-    @Override
-    public void onConnectionError(OpenError error) {
-        logger.warn("==OWN:BridgeDiscovery== onConnectionError() - CONNECTION ERROR: errorCode = {}", error);
-        stopScan();
-        // TODO handle other dongle connection problems
-    }
+        private DongleProbe(SerialPortGatewayZigBee zbgateway) {
+            this.zbgateway = zbgateway;
+        }
 
-    @Override
-    public void onConnectionClosed() {
-        logger.debug("==OWN:BridgeDiscovery== onConnectionClosed()");
-        stopScan();
-    }
+        /**
+         * End the search from a gateway callback: the connection is not closed from the gateway threads
+         */
+        private void endLater() {
+            scheduler.execute(this::end);
+        }
 
-    @Override
-    public void onDisconnected() {
-        logger.error("==OWN:BridgeDiscovery== onDisconnected()");
-        stopScan();
-    }
+        /**
+         * Close the connection and release the serial port, so that it can be used by a dongle bridge
+         */
+        private void end() {
+            if (dongleProbes.remove(zbgateway.getPortName(), this)) {
+                zbgateway.unsubscribe(this);
+                zbgateway.closeConnection();
+                zbgateway.releasePort();
+                stopZigBeeScan();
+            }
+        }
 
-    @Override
-    public void onReconnected() {
-        logger.info("==OWN:BridgeDiscovery== onReconnected()");
-    }
+        @Override
+        public void onConnected() {
+            logger.info("==OWN:BridgeDiscovery:Dongle== onConnected() FOUND DONGLE: CONNECTED port={}",
+                    zbgateway.getConnectedPort());
+            zbgateway.send(GatewayManagement.requestFirmwareVersion());
+            zbgateway.send(GatewayManagement.requestMACAddress());
+        }
 
-    @Override
-    public void onMessage(OpenMessage msg) {
-        // TODO change this to listen to response to MACddress request session with timeout
-        // and not to all messages that arrive here
-        if (dongleAddr == 0) { // we do not know the discovered dongle addr yet, check if it was discovered with this
-                               // message
+        @Override
+        public void onConnectionError(OpenError error) {
+            logger.debug("==OWN:BridgeDiscovery:Dongle== onConnectionError() port={}: errorCode = {}",
+                    zbgateway.getPortName(), error);
+            endLater();
+        }
+
+        @Override
+        public void onConnectionClosed() {
+            logger.debug("==OWN:BridgeDiscovery:Dongle== onConnectionClosed() port={}", zbgateway.getPortName());
+            endLater();
+        }
+
+        @Override
+        public void onDisconnected() {
+            logger.debug("==OWN:BridgeDiscovery:Dongle== onDisconnected() port={}", zbgateway.getPortName());
+            endLater();
+        }
+
+        @Override
+        public void onReconnected() {
+            logger.info("==OWN:BridgeDiscovery:Dongle== onReconnected() port={}", zbgateway.getPortName());
+        }
+
+        @Override
+        public void onMessage(OpenMessage msg) {
+            // TODO change this to listen to response to MACddress request session with timeout
+            // and not to all messages that arrive here
             int addr = zbgateway.getDongleAddrAsDecimal();
-            if (addr != 0) {
+            if (addr != 0 && !found) {
                 // a dongle was discovered, notify new dongle thing to inbox
-                dongleAddr = addr;
-                logger.debug("==OWN:BridgeDiscovery== DONGLE ADDR is set: {}", dongleAddr);
-                notifyNewDongleThing(dongleAddr);
+                found = true;
+                logger.debug("==OWN:BridgeDiscovery== DONGLE ADDR is set: {}", addr);
+                notifyNewDongleThing(zbgateway, addr);
+                endLater();
+            } else {
+                logger.trace("==OWN:BridgeDiscovery== onReceiveFrame() ignoring (msg={})", msg);
             }
-        } else {
-            logger.trace("==OWN:BridgeDiscovery== onReceiveFrame() dongleAddr != 0 : ignoring (msg={})", msg);
         }
-
     }
-
-}
\ No newline at end of file
+}
@@ -45,6 +45,8 @@ public class OpenWebNetDeviceDiscoveryService extends AbstractDiscoveryService
     private final Logger logger = LoggerFactory.getLogger(OpenWebNetDeviceDiscoveryService.class);
     private final OpenWebNetBridgeHandler bridgeHandler;
     private final ThingUID bridgeUID;
+    private BusDeviceScanner busScanner; // BUS gateways only: scans one area or local bus at a time, resumes scans
+    private PassiveDeviceDiscovery passiveDiscovery; // background discovery from frames of devices without a thing
 
     public OpenWebNetDeviceDiscoveryService(OpenWebNetBridgeHandler handler) {
         super(SEARCH_TIME);
@@ -67,13 +69,54 @@ public class OpenWebNetDeviceDiscoveryService extends AbstractDiscoveryService
     @Override
     protected void startScan() {
         logger.info("==OWN:DeviceDiscovery== ------ startScan() - SEARCHING for devices...");
-        bridgeHandler.searchDevices(this);
+        if (bridgeHandler.isBusGateway()) {
+            if (!bridgeHandler.getGateway().isConnected()) {
+                logger.warn("==OWN:DeviceDiscovery== bridge is NOT connected, cannot search for devices!");
+                return;
+            }
+            BusDeviceScanner scanner = getBusScanner();
+            scanner.start(this, this::stopScan);
+        } else {
+            bridgeHandler.searchDevices(this);
+        }
+    }
+
+    private synchronized BusDeviceScanner getBusScanner() {
+        if (busScanner == null) {
+            busScanner = new BusDeviceScanner(bridgeHandler);
+        }
+        return busScanner;
     }
 
     @Override
     protected void stopScan() {
         logger.debug("==OWN:DeviceDiscovery== stopScan()");
-        // TOOD
+        BusDeviceScanner scanner = busScanner;
+        if (scanner != null) {
+            scanner.stop();
+        }
+        super.stopScan();
+    }
+
+    @Override
+    protected synchronized void startBackgroundDiscovery() {
+        logger.debug("==OWN:DeviceDiscovery== startBackgroundDiscovery()");
+        if (passiveDiscovery == null) {
+            // bridge type is checked here as the bridge handler may not be initialized yet
+            passiveDiscovery = new PassiveDeviceDiscovery(this,
+                    !OpenWebNetBindingConstants.THING_TYPE_DONGLE.equals(bridgeHandler.getThing().getThingTypeUID()));
+            bridgeHandler.setPassiveDiscovery(passiveDiscovery);
+        }
+    }
+
+    @Override
+    protected synchronized void stopBackgroundDiscovery() {
+        logger.debug("==OWN:DeviceDiscovery== stopBackgroundDiscovery()");
+        if (passiveDiscovery != null) {
+            bridgeHandler.setPassiveDiscovery(null);
+            passiveDiscovery.clear();
+            passiveDiscovery = null;
+        }
     }
 
     @Override
@@ -112,6 +155,12 @@ public class OpenWebNetDeviceDiscoveryService extends AbstractDiscoveryService
         String ownId = bridgeHandler.ownIdFromWhere(where);
         ThingUID thingUID = new ThingUID(thingTypeUID, bridgeUID, ownId.replace('#', 'h')); // '#' cannot be used in
                                                                                             // ThingUID
+        if (deviceType == OpenDeviceType.SCS_DIMMER_SWITCH || deviceType == OpenDeviceType.ZIGBEE_DIMMER_SWITCH) {
+            // a device first seen as on/off switch may turn out to be a dimmer: remove the on/off switch result
+            removeExistingResult(new ThingUID(deviceType == OpenDeviceType.SCS_DIMMER_SWITCH
+                    ? OpenWebNetBindingConstants.THING_TYPE_BUS_ON_OFF_SWITCH
+                    : OpenWebNetBindingConstants.THING_TYPE_ON_OFF_SWITCH, bridgeUID, ownId.replace('#', 'h')));
+        }
 
         DiscoveryResult discoveryResult = null;
         // check if a device with same thingUID has been found already in discovery results
@@ -143,8 +192,16 @@ public class OpenWebNetDeviceDiscoveryService extends AbstractDiscoveryService
         thingDiscovered(discoveryResult);
     }
 
+    private void removeExistingResult(ThingUID thingUID) {
+        if (discoveryServiceCallback != null && discoveryServiceCallback.getExistingDiscoveryResult(thingUID) != null) {
+            logger.debug("==OWN:DeviceDiscovery== removing previous result {}", thingUID);
+            thingRemoved(thingUID);
+        }
+    }
+
     public void activate() {
         logger.debug("==OWN:DeviceDiscovery== activate()");
+        super.activate(null); // starts background discovery, if enabled
         // TODO useful ?????
         // hueBridgeHandler.registerLightStatusListener(this);
     }
@@ -152,6 +209,7 @@ public class OpenWebNetDeviceDiscoveryService extends AbstractDiscoveryService
     @Override
     public void deactivate() {
         logger.debug("==OWN:DeviceDiscovery== deactivate()");
+        super.deactivate(); // stops background discovery
         // TODO useful?????
         // removeOlderResults(new Date().getTime());
         // hueBridgeHandler.unregisterLightStatusListener(this);
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.discovery;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.openwebnet.internal.frame.OpenFrame;
+import org.openwebnet.OpenDeviceType;
+import org.openwebnet.OpenNewDeviceListener;
+import org.openwebnet.message.BaseOpenMessage;
+import org.openwebnet.message.Lighting;
+import org.openwebnet.message.Who;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link PassiveDeviceDiscovery} discovers lights from the frames the monitor session receives anyway: every
+ * Lighting frame for a point WHERE that has no thing associated is a device candidate. The device type is inferred
+ * from the frames seen so far (dim levels and luminous intensity changes mean a dimmer, otherwise an on/off switch),
+ * so no request is sent to the gateway.
+ *
+ * Each WHERE is reported to the listener when first seen and then at most once every 10 minutes, unless its type
+ * changes from on/off switch to dimmer.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class PassiveDeviceDiscovery {
+
+    private static final long REPORT_INTERVAL = TimeUnit.MINUTES.toNanos(10);
+    private static final int MAX_CANDIDATES = 2048;
+    private static final String LOCAL_BUS = "#4#";
+    private static final int DIMENSION_LUMINOUS_INTENSITY = 1;
+    private static final Set<Lighting.WHAT> DIMMER_WHATS = EnumSet.of(Lighting.WHAT.DIM_20, Lighting.WHAT.DIM_30,
+            Lighting.WHAT.DIM_40, Lighting.WHAT.DIM_50, Lighting.WHAT.DIM_60, Lighting.WHAT.DIM_70,
+            Lighting.WHAT.DIM_80, Lighting.WHAT.DIM_90, Lighting.WHAT.DIM_100, Lighting.WHAT.DIM_UP,
+            Lighting.WHAT.DIM_DOWN);
+
+    private final Logger logger = LoggerFactory.getLogger(PassiveDeviceDiscovery.class);
+
+    private final OpenNewDeviceListener listener;
+    private final boolean isBusGateway;
+
+    // candidates by WHERE: a WHERE is updated only by the dispatcher thread its frames are dispatched on
+    private final ConcurrentMap<String, Candidate> candidates = new ConcurrentHashMap<>();
+    private volatile boolean full = false;
+
+    /**
+     * @param listener receives devices found
+     * @param isBusGateway true for BUS gateways, false for ZigBee dongles
+     */
+    public PassiveDeviceDiscovery(OpenNewDeviceListener listener, boolean isBusGateway) {
+        this.listener = listener;
+        this.isBusGateway = isBusGateway;
+    }
+
+    /**
+     * Process a frame for a WHERE with no thing associated. The frame is used only during the call.
+     *
+     * @param frame the parsed frame
+     */
+    public void onUnmatchedFrame(OpenFrame frame) {
+        if (frame.getWho() != Who.LIGHTING || (frame.isDimension() && frame.getDimensionCode() < 0)) {
+            return; // not a light, or a status request: says nothing about a device
+        }
+        String where = frame.getWhere();
+        if (isBusGateway ? !isBusPoint(where) : !isZigBeeUnit(frame.getUnit())) {
+            return;
+        }
+        boolean dimmer = frame.isDimension() ? frame.getDimensionCode() == DIMENSION_LUMINOUS_INTENSITY
+                : DIMMER_WHATS.contains(frame.getLightingWhat());
+        OpenDeviceType type = isBusGateway
+                ? (dimmer ? OpenDeviceType.SCS_DIMMER_SWITCH : OpenDeviceType.SCS_ON_OFF_SWITCH)
+                : (dimmer ? OpenDeviceType.ZIGBEE_DIMMER_SWITCH : OpenDeviceType.ZIGBEE_ON_OFF_SWITCH);
+        long now = System.nanoTime();
+        Candidate candidate = candidates.get(where);
+        if (candidate == null) {
+            if (candidates.size() >= MAX_CANDIDATES) {
+                if (!full) {
+                    full = true;
+                    logger.warn("==OWN:DeviceDiscovery== passive discovery: more than {} candidates, ignoring new ones",
+                            MAX_CANDIDATES);
+                }
+                return;
+            }
+            candidates.put(where, new Candidate(type, now));
+        } else if (candidate.dimmer || !dimmer) {
+            if (now - candidate.reportedNanos < REPORT_INTERVAL) {
+                return;
+            }
+            candidate.reportedNanos = now;
+            type = candidate.type; // keep dimmer type even if this frame is an ON/OFF
+        } else {
+            candidates.put(where, new Candidate(type, now)); // upgraded to dimmer: report it now
+        }
+        logger.debug("==OWN:DeviceDiscovery== passive discovery: WHERE={} deviceType={} from frame {}", where, type,
+                frame);
+        try {
+            listener.onNewDevice(where, type);
+        } catch (RuntimeException e) {
+            logger.warn("==OWN:DeviceDiscovery== exception reporting device WHERE={}: {}", where, e.getMessage());
+        }
+    }
+
+    /**
+     * Forget all candidates, so that they are reported again when seen
+     */
+    public void clear() {
+        candidates.clear();
+        full = false;
+    }
+
+    /**
+     * @return true if WHERE is a light point (AP, APPP, optionally on a local bus: #4#II), not an area, group or
+     *         general WHERE
+     */
+    private static boolean isBusPoint(String where) {
+        int localBus = where.indexOf(LOCAL_BUS);
+        int pointLength = localBus < 0 ? where.length() : localBus;
+        if ((pointLength != 2 && pointLength != 4) || (pointLength == 2 && where.startsWith("00"))) {
+            return false;
+        }
+        for (int i = 0; i < pointLength; i++) {
+            char c = where.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the ZigBee UNIT is a single unit of a device, not all units
+     */
+    private static boolean isZigBeeUnit(String unit) {
+        return BaseOpenMessage.UNIT_01.equals(unit) || BaseOpenMessage.UNIT_02.equals(unit);
+    }
+
+    private static class Candidate {
+        private final OpenDeviceType type;
+        private final boolean dimmer;
+        private volatile long reportedNanos;
+
+        private Candidate(OpenDeviceType type, long reportedNanos) {
+            this.type = type;
+            this.dimmer = type == OpenDeviceType.SCS_DIMMER_SWITCH || type == OpenDeviceType.ZIGBEE_DIMMER_SWITCH;
+            this.reportedNanos = reportedNanos;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.dispatch;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link BindingThreadFactory} creates the threads of a bridge, named <code>name-N</code>. When virtual threads
+ * are requested and the Java runtime supports them (Java 21 or later) threads are virtual: a thread blocked on I/O
+ * does not hold an OS thread, so the number of OS threads does not grow with bridges and sessions. Otherwise, or on
+ * older runtimes, threads are platform daemon threads.
+ *
+ * Virtual threads are created by reflection, so that the binding still runs on Java 8.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class BindingThreadFactory implements ThreadFactory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BindingThreadFactory.class);
+
+    // Thread.ofVirtual() and Thread.Builder methods, null if virtual threads are not supported
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            // on runtimes where virtual threads are a preview feature this fails
+            ofVirtual.invoke(null);
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+    }
+
+    private final String name;
+    private final ThreadFactory virtualFactory;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * @param name prefix of thread names
+     * @param virtual true to create virtual threads, if supported by the runtime
+     */
+    public BindingThreadFactory(String name, boolean virtual) {
+        this.name = name;
+        this.virtualFactory = virtual ? createVirtualFactory(name) : null;
+    }
+
+    /**
+     * @return true if the Java runtime supports virtual threads
+     */
+    public static boolean isVirtualSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @return true if this factory creates virtual threads
+     */
+    public boolean isVirtual() {
+        return virtualFactory != null;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        if (virtualFactory != null) {
+            return virtualFactory.newThread(runnable);
+        }
+        Thread thread = new Thread(runnable, name + "-" + threadCount.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static ThreadFactory createVirtualFactory(String name) {
+        if (OF_VIRTUAL == null) {
+            LOGGER.debug("==OWN== virtual threads not supported by this Java runtime, using platform threads for {}",
+                    name);
+            return null;
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, name + "-", 0L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn("==OWN== cannot create virtual threads for {}, using platform threads: {}", name,
+                    e.getMessage());
+            return null;
+        }
+    }
+}
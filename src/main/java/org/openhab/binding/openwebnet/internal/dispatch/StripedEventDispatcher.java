@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.dispatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link StripedEventDispatcher} hands events over from a producer thread (the gateway monitor) to a fixed set of
+ * worker threads (stripes). Events with the same key always go to the same stripe, so they are processed in order,
+ * while events with different keys are spread across stripes. Each stripe has a bounded queue; what happens when it
+ * is full is decided by the {@link OverflowPolicy}.
+ *
+ * The ordering key decides the stripe of an event, the coalescing key which queued events a newer event can replace:
+ * it can be finer than the ordering key (for example WHO+WHERE while events are ordered by WHERE).
+ *
+ * @author Massimo Valla - Initial contribution
+ *
+ * @param <E> event type
+ */
+public class StripedEventDispatcher<E> {
+
+    /**
+     * What to do when the queue of a stripe is full
+     */
+    public enum OverflowPolicy {
+        /** block the producer until there is room in the queue */
+        BLOCK,
+        /** drop the oldest queued event of the stripe */
+        DROP_OLDEST,
+        /** replace an older queued event with the same coalescing key, or drop the oldest event if there is none */
+        COALESCE;
+
+        public static OverflowPolicy fromConfig(Object value, OverflowPolicy defaultPolicy) {
+            if (value != null) {
+                for (OverflowPolicy p : values()) {
+                    if (p.name().equalsIgnoreCase(value.toString())) {
+                        return p;
+                    }
+                }
+            }
+            return defaultPolicy;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(StripedEventDispatcher.class);
+
+    private final String name;
+    private final ThreadFactory threadFactory;
+    private final List<Stripe> stripes;
+    private final OverflowPolicy overflowPolicy;
+    private final Function<E, Object> keyFunction;
+    private final Function<E, Object> coalesceKeyFunction;
+    private final Consumer<E> consumer;
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong coalescedEvents = new AtomicLong();
+
+    private volatile boolean running = false;
+
+    /**
+     * @param name name used in logs
+     * @param threadFactory creates the worker threads
+     * @param stripeCount number of stripes (worker threads)
+     * @param queueCapacity queue capacity of each stripe
+     * @param overflowPolicy what to do when a stripe queue is full
+     * @param keyFunction returns the ordering key of an event
+     * @param coalesceKeyFunction returns the coalescing key of an event, used only by {@link OverflowPolicy#COALESCE}
+     * @param consumer processes events on the stripe threads
+     */
+    public StripedEventDispatcher(String name, ThreadFactory threadFactory, int stripeCount, int queueCapacity,
+            OverflowPolicy overflowPolicy, Function<E, Object> keyFunction, Function<E, Object> coalesceKeyFunction,
+            Consumer<E> consumer) {
+        if (stripeCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("stripeCount and queueCapacity must be > 0");
+        }
+        this.name = name;
+        this.threadFactory = threadFactory;
+        this.overflowPolicy = overflowPolicy;
+        this.keyFunction = keyFunction;
+        this.coalesceKeyFunction = coalesceKeyFunction;
+        this.consumer = consumer;
+        this.stripes = new ArrayList<>(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes.add(new Stripe(queueCapacity));
+        }
+    }
+
+    /**
+     * Start the stripe worker threads
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (Stripe stripe : stripes) {
+            Thread worker = threadFactory.newThread(stripe);
+            stripe.worker = worker;
+            worker.start();
+        }
+        logger.debug("==OWN:Dispatcher== {} started with {} stripes, overflowPolicy={}", name, stripes.size(),
+                overflowPolicy);
+    }
+
+    /**
+     * Stop the stripe worker threads. Queued events are discarded.
+     */
+    public synchronized void stop() {
+        running = false;
+        for (Stripe stripe : stripes) {
+            if (stripe.worker != null) {
+                stripe.worker.interrupt();
+                stripe.worker = null;
+            }
+            stripe.queue.clear();
+        }
+        logger.debug("==OWN:Dispatcher== {} stopped", name);
+    }
+
+    /**
+     * Queue an event for processing on the stripe of its key
+     *
+     * @param event the event
+     * @return true if the event was queued, false if it was dropped
+     */
+    public boolean dispatch(E event) {
+        if (!running) {
+            return false;
+        }
+        Stripe stripe = stripeOf(keyFunction.apply(event));
+        ArrayBlockingQueue<E> queue = stripe.queue;
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            return queue.offer(event) || put(queue, event);
+        }
+        // producers of a stripe are serialized: the room made by replacing or dropping an event cannot be taken by
+        // another producer, so each event replaces or drops at most one queued event
+        synchronized (stripe) {
+            if (queue.offer(event)) {
+                return true;
+            }
+            if (overflowPolicy == OverflowPolicy.COALESCE && replaceSameKey(queue, event)) {
+                return true;
+            }
+            // no event with the same coalescing key to replace: fall back to drop oldest
+            return dropOldest(queue, event);
+        }
+    }
+
+    private boolean put(ArrayBlockingQueue<E> queue, E event) {
+        try {
+            queue.put(event);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedEvents.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Must be called holding the stripe lock
+     *
+     * @return true if a queued event with the same coalescing key was replaced by the event
+     */
+    private boolean replaceSameKey(ArrayBlockingQueue<E> queue, E event) {
+        Object key = coalesceKeyFunction.apply(event);
+        for (E queued : queue) {
+            if (key.equals(coalesceKeyFunction.apply(queued)) && queue.remove(queued)) {
+                coalescedEvents.incrementAndGet();
+                return queue.offer(event);
+            }
+        }
+        return false;
+    }
+
+    private boolean dropOldest(ArrayBlockingQueue<E> queue, E event) {
+        while (!queue.offer(event)) {
+            E dropped = queue.poll();
+            if (dropped != null) {
+                droppedEvents.incrementAndGet();
+                logger.debug("==OWN:Dispatcher== {} queue full, dropped event {}", name, dropped);
+            }
+        }
+        return true;
+    }
+
+    private Stripe stripeOf(Object key) {
+        return stripes.get((key.hashCode() & 0x7fffffff) % stripes.size());
+    }
+
+    /**
+     * @return total number of events waiting in the stripe queues
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Stripe stripe : stripes) {
+            depth += stripe.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return number of events dropped because a queue was full
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * @return number of queued events replaced by a newer event with the same coalescing key
+     */
+    public long getCoalescedEvents() {
+        return coalescedEvents.get();
+    }
+
+    private class Stripe implements Runnable {
+        private final ArrayBlockingQueue<E> queue;
+        private volatile Thread worker;
+
+        Stripe(int capacity) {
+            queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                E event;
+                try {
+                    event = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    consumer.accept(event);
+                } catch (RuntimeException e) {
+                    logger.warn("==OWN:Dispatcher== {} exception while processing event {}: {}", name, event,
+                            e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
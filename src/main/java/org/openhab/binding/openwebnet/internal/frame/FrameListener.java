@@ -0,0 +1,25 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.frame;
+
+/**
+ * The {@link FrameListener} receives raw frames from a gateway, before (and instead of) they are parsed into library
+ * messages. Gateways implemented in the binding deliver frames this way to listeners implementing this interface.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public interface FrameListener {
+
+    /**
+     * Called for each frame received from the gateway
+     *
+     * @param frame the frame, including the closing ##
+     */
+    void onFrame(String frame);
+}
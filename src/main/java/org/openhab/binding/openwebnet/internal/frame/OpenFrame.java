@@ -0,0 +1,315 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.frame;
+
+import org.openwebnet.message.BaseOpenMessage;
+import org.openwebnet.message.Lighting;
+import org.openwebnet.message.Who;
+
+/**
+ * The {@link OpenFrame} is a reusable (flyweight) view of an OpenWebNet frame. {@link #parse(CharSequence)} tokenizes
+ * a frame once and keeps WHO and Lighting WHAT as the library enums, and the WHERE as an interned string, so the same
+ * instance can be reused for every frame without allocating new objects in steady state.
+ *
+ * Supported frames are normal frames <code>*WHO*WHAT*WHERE##</code> (WHAT may have parameters:
+ * <code>WHAT#PAR</code>) and status/dimension frames <code>*#WHO*WHERE...##</code>.
+ *
+ * An instance must not be shared between threads.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public final class OpenFrame {
+
+    private static final String ZIGBEE_WHERE_SUFFIX = "#9";
+    private static final int WHERE_CACHE_CAPACITY = 4096;
+
+    // shared by all frames of all bridges: WHERE addresses are the same strings used as keys by the bridge
+    private static final WhereCache WHERE_CACHE = new WhereCache(WHERE_CACHE_CAPACITY);
+
+    private static final Who[] WHOS = Who.values();
+    private static final int[] WHO_VALUES = new int[WHOS.length];
+    private static final Lighting.WHAT[] LIGHTING_WHATS;
+
+    static {
+        for (int i = 0; i < WHOS.length; i++) {
+            WHO_VALUES[i] = WHOS[i].value();
+        }
+        int max = 0;
+        for (Lighting.WHAT what : Lighting.WHAT.values()) {
+            max = Math.max(max, what.value());
+        }
+        LIGHTING_WHATS = new Lighting.WHAT[max + 1];
+        for (Lighting.WHAT what : Lighting.WHAT.values()) {
+            LIGHTING_WHATS[what.value()] = what;
+        }
+    }
+
+    private CharSequence raw;
+    private Who who;
+    private boolean dimension;
+    private int dimensionCode;
+    private int whatCode;
+    private boolean whatParams;
+    private Lighting.WHAT lightingWhat;
+    private String where;
+    private String unit;
+
+    /**
+     * Tokenize a frame into this instance
+     *
+     * @param frame the frame, including the closing ##
+     * @return true if the frame is a valid normal or status/dimension frame with a known WHO. ACK/NACK and invalid
+     *         frames return false
+     */
+    public boolean parse(CharSequence frame) {
+        reset();
+        raw = frame;
+        int len = frame.length();
+        if (len < 6 || frame.charAt(0) != '*' || frame.charAt(len - 1) != '#' || frame.charAt(len - 2) != '#') {
+            return false;
+        }
+        int end = len - 2;
+        int pos = 1;
+        if (frame.charAt(1) == '#') {
+            dimension = true;
+            pos = 2;
+        }
+        int whoEnd = indexOf(frame, '*', pos, end);
+        if (whoEnd < 0) {
+            return false;
+        }
+        who = whoOf(parseInt(frame, pos, whoEnd));
+        if (who == null) {
+            return false;
+        }
+        int whereStart;
+        if (dimension) {
+            whereStart = whoEnd + 1;
+        } else {
+            int whatEnd = indexOf(frame, '*', whoEnd + 1, end);
+            if (whatEnd < 0) {
+                return false;
+            }
+            int whatParamStart = indexOf(frame, '#', whoEnd + 1, whatEnd);
+            whatParams = whatParamStart >= 0;
+            whatCode = parseInt(frame, whoEnd + 1, whatParams ? whatParamStart : whatEnd);
+            if (who == Who.LIGHTING && whatCode >= 0 && whatCode < LIGHTING_WHATS.length) {
+                lightingWhat = LIGHTING_WHATS[whatCode];
+            }
+            whereStart = whatEnd + 1;
+        }
+        int whereEnd = indexOf(frame, '*', whereStart, end);
+        if (whereEnd < 0) {
+            whereEnd = end;
+        }
+        where = WHERE_CACHE.lookup(frame, whereStart, whereEnd);
+        unit = unitOf(where);
+        if (dimension && whereEnd < end) {
+            int dimensionEnd = indexOf(frame, '*', whereEnd + 1, end);
+            dimensionCode = parseInt(frame, whereEnd + 1, dimensionEnd < 0 ? end : dimensionEnd);
+        }
+        return true;
+    }
+
+    private void reset() {
+        raw = null;
+        who = null;
+        dimension = false;
+        dimensionCode = -1;
+        whatCode = -1;
+        whatParams = false;
+        lightingWhat = null;
+        where = null;
+        unit = null;
+    }
+
+    /**
+     * Returns the interned WHERE of a frame, without tokenizing the rest of it
+     *
+     * @param frame the frame
+     * @return the WHERE, or an empty string if the frame has no WHERE
+     */
+    public static String whereOf(CharSequence frame) {
+        int len = frame.length();
+        if (len < 6 || frame.charAt(0) != '*') {
+            return "";
+        }
+        int end = len - 2;
+        boolean dim = frame.charAt(1) == '#';
+        // skip WHO (and WHAT for normal frames)
+        int pos = indexOf(frame, '*', dim ? 2 : 1, end);
+        if (pos >= 0 && !dim) {
+            pos = indexOf(frame, '*', pos + 1, end);
+        }
+        if (pos < 0) {
+            return "";
+        }
+        int whereEnd = indexOf(frame, '*', pos + 1, end);
+        return WHERE_CACHE.lookup(frame, pos + 1, whereEnd < 0 ? end : whereEnd);
+    }
+
+    /**
+     * Returns the WHO of a frame, without tokenizing the rest of it
+     *
+     * @param frame the frame
+     * @return the WHO, or null if the frame has no known WHO
+     */
+    public static Who whoOf(CharSequence frame) {
+        int len = frame.length();
+        if (len < 6 || frame.charAt(0) != '*') {
+            return null;
+        }
+        int start = frame.charAt(1) == '#' ? 2 : 1;
+        int whoEnd = indexOf(frame, '*', start, len - 2);
+        return whoEnd < 0 ? null : whoOf(parseInt(frame, start, whoEnd));
+    }
+
+    /**
+     * Returns the area WHERE a light point of the main BUS belongs to, as used to address the whole area: 00 for area
+     * 0, 1-9, 100 for area 10
+     *
+     * @param pointWhere WHERE of the light point (AP or AAPP)
+     * @return the area WHERE, or null if not a light point of the main BUS
+     */
+    public static String areaOf(String pointWhere) {
+        int length = pointWhere.length();
+        if ((length != 2 && length != 4) || parseInt(pointWhere, 0, length) < 0) {
+            return null;
+        }
+        int area = parseInt(pointWhere, 0, length / 2);
+        if (area == 0) {
+            return "00";
+        } else if (area == 10) {
+            return "100";
+        } else if (area < 10) {
+            return String.valueOf(area);
+        }
+        return null;
+    }
+
+    private static int indexOf(CharSequence seq, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (seq.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the non-negative int value of chars between start and end, or -1 if empty or not a number
+     */
+    private static int parseInt(CharSequence seq, int start, int end) {
+        if (start >= end || end - start > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = seq.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static Who whoOf(int value) {
+        for (int i = 0; i < WHO_VALUES.length; i++) {
+            if (WHO_VALUES[i] == value) {
+                return WHOS[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * ZigBee WHERE (ADDR+UNIT#9): returns the UNIT as one of the BaseOpenMessage UNIT constants, or null
+     */
+    private static String unitOf(String where) {
+        int len = where.length();
+        if (len < 4 || !where.endsWith(ZIGBEE_WHERE_SUFFIX)) {
+            return null;
+        }
+        if (where.regionMatches(len - 4, BaseOpenMessage.UNIT_01, 0, 2)) {
+            return BaseOpenMessage.UNIT_01;
+        } else if (where.regionMatches(len - 4, BaseOpenMessage.UNIT_02, 0, 2)) {
+            return BaseOpenMessage.UNIT_02;
+        } else if (where.regionMatches(len - 4, BaseOpenMessage.UNIT_ALL, 0, 2)) {
+            return BaseOpenMessage.UNIT_ALL;
+        }
+        return null;
+    }
+
+    public Who getWho() {
+        return who;
+    }
+
+    /**
+     * @return true for status/dimension frames (<code>*#WHO...</code>)
+     */
+    public boolean isDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return DIMENSION code of a dimension frame (<code>*#WHO*WHERE*DIM...##</code>), or -1 for normal frames and
+     *         status requests (<code>*#WHO*WHERE##</code>)
+     */
+    public int getDimensionCode() {
+        return dimensionCode;
+    }
+
+    /**
+     * @return WHAT code of a normal frame (without parameters), or -1
+     */
+    public int getWhatCode() {
+        return whatCode;
+    }
+
+    /**
+     * @return Lighting WHAT of a normal Lighting frame, or null if not a Lighting frame or the WHAT is not known
+     */
+    public Lighting.WHAT getLightingWhat() {
+        return lightingWhat;
+    }
+
+    /**
+     * @return WHERE address, as an interned string
+     */
+    public String getWhere() {
+        return where;
+    }
+
+    /**
+     * @return UNIT of a ZigBee WHERE as one of the BaseOpenMessage UNIT constants, or null
+     */
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * @return true if this is a Lighting ON frame (WHAT=1 without parameters)
+     */
+    public boolean isOn() {
+        return lightingWhat == Lighting.WHAT.ON && !whatParams;
+    }
+
+    /**
+     * @return true if this is a Lighting OFF frame (WHAT=0 without parameters)
+     */
+    public boolean isOff() {
+        return lightingWhat == Lighting.WHAT.OFF && !whatParams;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(raw);
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.frame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The {@link WhereCache} interns WHERE addresses: looking up a WHERE found inside a frame returns always the same
+ * {@link String} instance, without creating a new string once the address has been seen. The cache is bounded: when
+ * it is full new addresses are returned as new strings, without being cached.
+ *
+ * Thread-safe and lock-free (open addressing on an {@link AtomicReferenceArray}).
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+class WhereCache {
+
+    private final AtomicReferenceArray<String> table;
+    private final int mask;
+    private final int maxSize;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param capacity table capacity, rounded up to a power of 2. At most 3/4 of it is used
+     */
+    WhereCache(int capacity) {
+        int n = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        table = new AtomicReferenceArray<>(n);
+        mask = n - 1;
+        maxSize = n / 4 * 3;
+    }
+
+    /**
+     * Returns the cached string equal to the chars of seq between start (inclusive) and end (exclusive)
+     */
+    String lookup(CharSequence seq, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + seq.charAt(i);
+        }
+        int idx = (hash ^ (hash >>> 16)) & mask;
+        while (true) {
+            String cached = table.get(idx);
+            if (cached == null) {
+                String where = seq.subSequence(start, end).toString();
+                if (size.get() >= maxSize) {
+                    return where; // full: do not cache
+                }
+                if (table.compareAndSet(idx, null, where)) {
+                    size.incrementAndGet();
+                    return where;
+                }
+                continue; // slot taken meanwhile: check it again
+            }
+            if (cached.hashCode() == hash && contentEquals(cached, seq, start, end)) {
+                return cached;
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    private static boolean contentEquals(String s, CharSequence seq, int start, int end) {
+        if (s.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i - start) != seq.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int size() {
+        return size.get();
+    }
+}
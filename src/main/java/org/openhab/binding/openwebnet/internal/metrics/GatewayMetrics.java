@@ -0,0 +1,355 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.openhab.binding.openwebnet.internal.command.CommandScheduler;
+import org.openhab.binding.openwebnet.internal.command.StatusRequestRegistry;
+import org.openhab.binding.openwebnet.internal.dispatch.StripedEventDispatcher;
+import org.openhab.binding.openwebnet.internal.state.DeviceStateCache;
+import org.openwebnet.message.Who;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link GatewayMetrics} records how a gateway and its frame dispatching behave under load: received frames by
+ * WHO, frames with no device, dropped frames, dispatch queue depth, command queue depth, expired and rejected commands,
+ * merged and superseded status requests, state cache hits and misses, command latency (from sending a command to the gateway answer), NACKs,
+ * disconnects, reconnects and outage durations.
+ *
+ * Recording methods are lock-free and do not allocate, so they can be called on the hot path. Rates and latency
+ * percentiles are computed for the interval between two calls to {@link #update()}.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class GatewayMetrics implements GatewayMetricsMXBean {
+
+    private static final String JMX_DOMAIN = "org.openhab.binding.openwebnet";
+    private static final String WHO_UNKNOWN = "UNKNOWN";
+    private static final Who[] WHOS = Who.values();
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final Logger logger = LoggerFactory.getLogger(GatewayMetrics.class);
+
+    private final StripedEventDispatcher<?> dispatcher;
+    private final CommandScheduler commandScheduler;
+    private final StatusRequestRegistry statusRequests;
+    private final DeviceStateCache stateCache;
+
+    // one counter for each WHO (by ordinal), the last one for unknown WHOs
+    private final AtomicLongArray framesByWho = new AtomicLongArray(WHOS.length + 1);
+    private final AtomicLong unmatchedFrames = new AtomicLong();
+    private final AtomicLong commandsSent = new AtomicLong();
+    private final AtomicLong commandNacks = new AtomicLong();
+    private final AtomicLong commandErrors = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final LatencyHistogram commandLatency = new LatencyHistogram();
+    private volatile long lastOutageMillis = -1;
+    private volatile long maxOutageMillis = -1;
+
+    // state of the last interval, computed by update()
+    private long lastUpdateNanos = System.nanoTime();
+    private long[] lastFramesByWho = new long[WHOS.length + 1];
+    private LatencyHistogram.Snapshot lastLatency = commandLatency.snapshot();
+    private volatile double[] framesPerSecondByWho = new double[WHOS.length + 1];
+    private volatile LatencyHistogram.Snapshot intervalLatency = lastLatency;
+
+    private ObjectName objectName;
+
+    /**
+     * @param dispatcher the dispatcher of received frames, to read its queue depth and dropped frames
+     * @param commandScheduler the scheduler of commands, to read its queue depth, expired and rejected commands
+     * @param statusRequests the registry of status requests, to read merged and superseded requests
+     * @param stateCache the cache of channel states, to read its hits and misses
+     */
+    public GatewayMetrics(StripedEventDispatcher<?> dispatcher, CommandScheduler commandScheduler,
+            StatusRequestRegistry statusRequests, DeviceStateCache stateCache) {
+        this.dispatcher = dispatcher;
+        this.commandScheduler = commandScheduler;
+        this.statusRequests = statusRequests;
+        this.stateCache = stateCache;
+    }
+
+    /**
+     * Count a frame received from the gateway
+     *
+     * @param who the frame WHO, or null if not known
+     */
+    public void frameReceived(Who who) {
+        framesByWho.incrementAndGet(who != null ? who.ordinal() : WHOS.length);
+    }
+
+    /**
+     * Count a frame for a WHERE with no device associated
+     */
+    public void frameUnmatched() {
+        unmatchedFrames.incrementAndGet();
+    }
+
+    /**
+     * Record the outcome of a command
+     *
+     * @param nanos time (ns) from sending the command to the gateway answer
+     * @param ack true if the gateway answered ACK, false if NACK, null if the command failed
+     */
+    public void commandCompleted(long nanos, Boolean ack) {
+        commandsSent.incrementAndGet();
+        if (ack == null) {
+            commandErrors.incrementAndGet();
+            return;
+        }
+        if (!ack) {
+            commandNacks.incrementAndGet();
+        }
+        commandLatency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void disconnected() {
+        disconnects.incrementAndGet();
+    }
+
+    public void reconnected() {
+        reconnects.incrementAndGet();
+    }
+
+    /**
+     * Record the duration of an outage, from the monitor session lost to reconnected. Called by one thread at a time.
+     *
+     * @param millis duration (ms) of the outage
+     */
+    public void outageEnded(long millis) {
+        lastOutageMillis = millis;
+        if (millis > maxOutageMillis) {
+            maxOutageMillis = millis;
+        }
+    }
+
+    /**
+     * Compute rates and command latency for the interval since the previous call. Must not be called concurrently.
+     */
+    public void update() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastUpdateNanos) / 1e9;
+        long[] current = new long[framesByWho.length()];
+        double[] rates = new double[current.length];
+        for (int i = 0; i < current.length; i++) {
+            current[i] = framesByWho.get(i);
+            rates[i] = (current[i] - lastFramesByWho[i]) / seconds;
+        }
+        LatencyHistogram.Snapshot latency = commandLatency.snapshot();
+        intervalLatency = latency.minus(lastLatency);
+        framesPerSecondByWho = rates;
+        lastLatency = latency;
+        lastFramesByWho = current;
+        lastUpdateNanos = now;
+    }
+
+    /**
+     * Register the JMX MBean of these metrics. Errors are logged and otherwise ignored.
+     *
+     * @param gatewayName name of the gateway, used in the MBean ObjectName
+     */
+    public void registerMBean(String gatewayName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(
+                    JMX_DOMAIN + ":type=GatewayMetrics,name=" + ObjectName.quote(gatewayName));
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            objectName = name;
+            logger.debug("==OWN== GatewayMetrics registered MBean {}", name);
+        } catch (JMException | SecurityException e) {
+            logger.warn("==OWN== GatewayMetrics cannot register MBean for {}: {}", gatewayName, e.getMessage());
+        }
+    }
+
+    /**
+     * Unregister the JMX MBean, if registered
+     */
+    public void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException | SecurityException e) {
+            logger.debug("==OWN== GatewayMetrics cannot unregister MBean {}: {}", objectName, e.getMessage());
+        }
+        objectName = null;
+    }
+
+    @Override
+    public long getFramesReceived() {
+        long total = 0;
+        for (int i = 0; i < framesByWho.length(); i++) {
+            total += framesByWho.get(i);
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getFramesReceivedByWho() {
+        Map<String, Long> frames = new LinkedHashMap<>();
+        for (int i = 0; i < framesByWho.length(); i++) {
+            long count = framesByWho.get(i);
+            if (count > 0) {
+                frames.put(whoName(i), count);
+            }
+        }
+        return frames;
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        double total = 0;
+        for (double rate : framesPerSecondByWho) {
+            total += rate;
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Double> getFramesPerSecondByWho() {
+        double[] rates = framesPerSecondByWho;
+        Map<String, Double> frames = new LinkedHashMap<>();
+        for (int i = 0; i < rates.length; i++) {
+            if (rates[i] > 0) {
+                frames.put(whoName(i), rates[i]);
+            }
+        }
+        return frames;
+    }
+
+    private static String whoName(int index) {
+        return index < WHOS.length ? WHOS[index].name() : WHO_UNKNOWN;
+    }
+
+    @Override
+    public long getUnmatchedFrames() {
+        return unmatchedFrames.get();
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return dispatcher.getDroppedEvents();
+    }
+
+    @Override
+    public long getCoalescedFrames() {
+        return dispatcher.getCoalescedEvents();
+    }
+
+    @Override
+    public int getDispatchQueueDepth() {
+        return dispatcher.getQueueDepth();
+    }
+
+    @Override
+    public int getCommandQueueDepth() {
+        return commandScheduler.getQueueDepth();
+    }
+
+    @Override
+    public long getCommandsExpired() {
+        return commandScheduler.getExpiredCommands();
+    }
+
+    @Override
+    public long getCommandsRejected() {
+        return commandScheduler.getRejectedCommands();
+    }
+
+    @Override
+    public long getStatusRequestsMerged() {
+        return statusRequests.getMergedRequests();
+    }
+
+    @Override
+    public long getStatusRequestsSuperseded() {
+        return statusRequests.getSupersededRequests();
+    }
+
+    @Override
+    public long getStateCacheHits() {
+        return stateCache.getHits();
+    }
+
+    @Override
+    public long getStateCacheMisses() {
+        return stateCache.getMisses();
+    }
+
+    @Override
+    public long getCommandsSent() {
+        return commandsSent.get();
+    }
+
+    @Override
+    public long getCommandNacks() {
+        return commandNacks.get();
+    }
+
+    @Override
+    public long getCommandErrors() {
+        return commandErrors.get();
+    }
+
+    @Override
+    public double getCommandLatencyMeanMillis() {
+        return intervalLatency.getMean() / MICROS_PER_MILLI;
+    }
+
+    @Override
+    public double getCommandLatencyP50Millis() {
+        return intervalLatency.getValueAtPercentile(50) / MICROS_PER_MILLI;
+    }
+
+    @Override
+    public double getCommandLatencyP99Millis() {
+        return intervalLatency.getValueAtPercentile(99) / MICROS_PER_MILLI;
+    }
+
+    @Override
+    public double getCommandLatencyMaxMillis() {
+        return intervalLatency.getMax() / MICROS_PER_MILLI;
+    }
+
+    @Override
+    public long getDisconnects() {
+        return disconnects.get();
+    }
+
+    @Override
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    @Override
+    public long getLastOutageMillis() {
+        return lastOutageMillis;
+    }
+
+    @Override
+    public long getMaxOutageMillis() {
+        return maxOutageMillis;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.metrics;
+
+import java.util.Map;
+
+/**
+ * The {@link GatewayMetricsMXBean} is the JMX view of the {@link GatewayMetrics} of a gateway. Rates and command
+ * latencies refer to the last metrics interval; counters are totals since the bridge was initialized.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public interface GatewayMetricsMXBean {
+
+    long getFramesReceived();
+
+    Map<String, Long> getFramesReceivedByWho();
+
+    double getFramesPerSecond();
+
+    Map<String, Double> getFramesPerSecondByWho();
+
+    long getUnmatchedFrames();
+
+    long getDroppedFrames();
+
+    long getCoalescedFrames();
+
+    int getDispatchQueueDepth();
+
+    int getCommandQueueDepth();
+
+    long getCommandsExpired();
+
+    long getCommandsRejected();
+
+    long getStatusRequestsMerged();
+
+    long getStatusRequestsSuperseded();
+
+    long getStateCacheHits();
+
+    long getStateCacheMisses();
+
+    long getCommandsSent();
+
+    long getCommandNacks();
+
+    long getCommandErrors();
+
+    double getCommandLatencyMeanMillis();
+
+    double getCommandLatencyP50Millis();
+
+    double getCommandLatencyP99Millis();
+
+    double getCommandLatencyMaxMillis();
+
+    long getDisconnects();
+
+    long getReconnects();
+
+    long getLastOutageMillis();
+
+    long getMaxOutageMillis();
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The {@link LatencyHistogram} records latency values (in microseconds) in fixed log-linear buckets: each power of 2
+ * is split into 16 sub-buckets, so any value is counted with a relative error below 1/16 (6.25%), up to about 19
+ * hours. Recording is lock-free and does not allocate; percentiles are computed on a {@link Snapshot}.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 36) - 1; // us, about 19 hours
+    private static final int BUCKETS = bucketIndex(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * Record a value
+     *
+     * @param micros value (us). Negative values are recorded as 0, values above the maximum as the maximum
+     */
+    public void record(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+        counts.incrementAndGet(bucketIndex(value));
+        sum.addAndGet(value);
+    }
+
+    /**
+     * @return a copy of the current counts
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, sum.get());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the highest value counted in a bucket
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS * 2) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long mantissa = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of the histogram counts
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long sum;
+        private final long count;
+
+        private Snapshot(long[] counts, long sum) {
+            this.counts = counts;
+            this.sum = sum;
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.count = total;
+        }
+
+        /**
+         * @param previous an older snapshot of the same histogram
+         * @return a snapshot with only the values recorded since the previous snapshot
+         */
+        public Snapshot minus(Snapshot previous) {
+            long[] diff = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                diff[i] = counts[i] - previous.counts[i];
+            }
+            return new Snapshot(diff, sum - previous.sum);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return mean value (us), or 0 if there are no values
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile percentile, 0 to 100
+         * @return the value (us) below or equal to which the given percentile of values fall, or 0 if there are no
+         *         values
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return bucketUpperBound(counts.length - 1);
+        }
+
+        /**
+         * @return the maximum value (us), or 0 if there are no values
+         */
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
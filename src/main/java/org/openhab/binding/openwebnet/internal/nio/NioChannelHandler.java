@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.nio;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+
+/**
+ * The {@link NioChannelHandler} is attached to each channel registered with the {@link NioEventLoop} selector and
+ * handles its I/O events. Methods are called from the loop thread.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+interface NioChannelHandler {
+
+    /**
+     * Handle a selector event for the channel
+     *
+     * @param selectedKey the selected key of the channel
+     */
+    void handleEvent(SelectionKey selectedKey);
+
+    /**
+     * Close the channel. Does nothing if already closed.
+     *
+     * @param cause the reason, or null if closed on request
+     */
+    void close(IOException cause);
+}
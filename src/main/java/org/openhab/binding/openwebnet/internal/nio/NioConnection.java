@@ -0,0 +1,281 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+import org.openwebnet.bus.MyHomeSocketFactory;
+import org.openwebnet.message.OpenMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link NioConnection} is a non-blocking OpenWebNet session (monitor or command) with a BUS gateway, run by a
+ * {@link NioEventLoop}. It performs the OpenWebNet session handshake (including the OPEN password, if requested by the
+ * gateway) and then passes received frames to {@link #onFrame(String)}.
+ *
+ * Frames are cut directly from a single reused read buffer: the only object allocated per received frame is the frame
+ * string itself.
+ *
+ * All methods must be called from the loop thread.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+abstract class NioConnection implements NioChannelHandler {
+
+    static final String MONITOR_SESSION = "*99*1##";
+    static final String COMMAND_SESSION = "*99*0##";
+
+    private static final int READ_BUFFER_SIZE = 1024; // max frame length
+    private static final int HANDSHAKE_TIMEOUT = 10000; // ms
+
+    private enum State {
+        CONNECTING,
+        WAIT_GREETING,
+        WAIT_SESSION_ACK,
+        WAIT_AUTH_ACK,
+        READY,
+        CLOSED
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(NioConnection.class);
+
+    protected final NioEventLoop loop;
+    private final String host;
+    private final int port;
+    private final String passwd;
+    private final String sessionFrame;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private State state = State.CONNECTING;
+    private NioEventLoop.Timer handshakeTimer;
+
+    NioConnection(NioEventLoop loop, String host, int port, String passwd, String sessionFrame) {
+        this.loop = loop;
+        this.host = host;
+        this.port = port;
+        this.passwd = passwd;
+        this.sessionFrame = sessionFrame;
+    }
+
+    /**
+     * Start connecting to the gateway. The outcome is notified with {@link #onReady()} or
+     * {@link #onClosed(IOException)}.
+     */
+    void open() {
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            boolean connected = channel.connect(new InetSocketAddress(host, port));
+            state = connected ? State.WAIT_GREETING : State.CONNECTING;
+            key = channel.register(loop.selector(), connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+            handshakeTimer = loop.schedule(() -> {
+                if (state != State.READY) {
+                    close(new IOException("Timeout during session handshake with " + host + ":" + port));
+                }
+            }, HANDSHAKE_TIMEOUT);
+        } catch (IOException | RuntimeException e) {
+            close(e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+    }
+
+    boolean isReady() {
+        return state == State.READY;
+    }
+
+    boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    /**
+     * Handle a selector event for this connection
+     */
+    @Override
+    public void handleEvent(SelectionKey selectedKey) {
+        try {
+            if (selectedKey.isConnectable()) {
+                channel.finishConnect();
+                state = State.WAIT_GREETING;
+                selectedKey.interestOps(SelectionKey.OP_READ);
+            }
+            if (selectedKey.isValid() && selectedKey.isWritable()) {
+                flushWrites();
+            }
+            if (selectedKey.isValid() && selectedKey.isReadable()) {
+                read();
+            }
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    /**
+     * Queue a frame for sending
+     *
+     * @param frame the frame
+     */
+    void writeFrame(String frame) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        logger.trace("==OWN:NIO== SEND >>>>> {}", frame);
+        writeQueue.add(ByteBuffer.wrap(frame.getBytes(StandardCharsets.US_ASCII)));
+        try {
+            flushWrites();
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    private void flushWrites() throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = writeQueue.peek()) != null) {
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            writeQueue.poll();
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Read available bytes and pass on all complete frames. An incomplete frame is kept at the start of the buffer.
+     */
+    private void read() throws IOException {
+        int n = channel.read(readBuffer);
+        if (n < 0) {
+            throw new IOException("Connection closed by gateway " + host + ":" + port);
+        }
+        byte[] buf = readBuffer.array();
+        int end = readBuffer.position();
+        int start = 0;
+        for (int i = 1; i < end && state != State.CLOSED; i++) {
+            if (buf[i] == '#' && buf[i - 1] == '#' && i - 1 > start) {
+                String frame = new String(buf, start, i + 1 - start, StandardCharsets.US_ASCII);
+                start = i + 1;
+                logger.trace("==OWN:NIO== RECEIVED <<<<< {}", frame);
+                handleFrame(frame);
+            }
+        }
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            readBuffer.position(end - start);
+        } else if (!readBuffer.hasRemaining()) {
+            throw new IOException("Invalid frame received from gateway (no end of frame)");
+        }
+    }
+
+    /**
+     * Session handshake state machine: greeting ACK, session request, optional OPEN password
+     */
+    private void handleFrame(String frame) throws IOException {
+        switch (state) {
+            case READY:
+                onFrame(frame);
+                break;
+            case WAIT_GREETING:
+                if (!OpenMessage.ACK.equals(frame)) {
+                    throw new IOException("Unexpected greeting from gateway: " + frame);
+                }
+                state = State.WAIT_SESSION_ACK;
+                writeFrame(sessionFrame);
+                break;
+            case WAIT_SESSION_ACK:
+                if (OpenMessage.ACK.equals(frame)) {
+                    ready();
+                } else if (frame.startsWith("*#") && frame.length() > 4) {
+                    // OPEN password request: the gateway sends a nonce to be hashed with the password
+                    String nonce = frame.substring(2, frame.length() - 2);
+                    state = State.WAIT_AUTH_ACK;
+                    writeFrame("*#" + MyHomeSocketFactory.calcPass(passwd, nonce) + "##");
+                } else {
+                    throw new IOException("Session refused by gateway: " + frame);
+                }
+                break;
+            case WAIT_AUTH_ACK:
+                if (!OpenMessage.ACK.equals(frame)) {
+                    throw new IOException("Authentication refused by gateway (check password): " + frame);
+                }
+                ready();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void ready() {
+        state = State.READY;
+        handshakeTimer.cancel();
+        logger.debug("==OWN:NIO== session {} ready with {}:{}", sessionFrame, host, port);
+        onReady();
+    }
+
+    /**
+     * Close the connection. Does nothing if already closed.
+     *
+     * @param cause the reason, or null if closed on request
+     */
+    @Override
+    public void close(IOException cause) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        state = State.CLOSED;
+        if (handshakeTimer != null) {
+            handshakeTimer.cancel();
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("==OWN:NIO== exception while closing channel: {}", e.getMessage());
+            }
+        }
+        writeQueue.clear();
+        onClosed(cause);
+    }
+
+    /**
+     * Called when the session handshake completed
+     */
+    protected abstract void onReady();
+
+    /**
+     * Called for each frame received after the session handshake
+     */
+    protected abstract void onFrame(String frame);
+
+    /**
+     * Called once when the connection is closed
+     *
+     * @param cause the reason, or null if closed on request
+     */
+    protected abstract void onClosed(IOException cause);
+}
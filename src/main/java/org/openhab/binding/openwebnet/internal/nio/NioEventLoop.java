@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.nio;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link NioEventLoop} runs a single {@link Selector} on a single thread, shared by all NIO connections of all
+ * gateways: the number of threads used for gateway I/O does not grow with the number of bridges.
+ *
+ * The loop is reference counted: it is started by the first {@link #acquire()} and stopped by the last
+ * {@link #release(NioEventLoop)}. Connections and timers are only accessed from the loop thread; other threads hand
+ * over work with {@link #execute(Runnable)}. A loop stopped on error is no longer shared: the next {@link #acquire()}
+ * starts a new one.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class NioEventLoop implements Runnable {
+
+    private static final String THREAD_NAME = "OH-binding-openwebnet-nio";
+
+    private static NioEventLoop instance;
+    private static int refCount = 0;
+
+    private final Logger logger = LoggerFactory.getLogger(NioEventLoop.class);
+
+    private final Selector selector;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // accessed only from the loop thread
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+    private volatile boolean running = true;
+
+    private NioEventLoop() throws IOException {
+        selector = Selector.open();
+        thread = new Thread(this, THREAD_NAME);
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Get the shared event loop, starting it if needed. Each call must be paired with a call to
+     * {@link #release(NioEventLoop)}.
+     *
+     * @return the shared event loop
+     * @throws IOException if the selector could not be opened
+     */
+    public static synchronized NioEventLoop acquire() throws IOException {
+        if (instance == null) {
+            instance = new NioEventLoop();
+            instance.thread.start();
+        }
+        refCount++;
+        return instance;
+    }
+
+    /**
+     * Release the shared event loop: when no user is left, the loop is stopped after running already submitted tasks
+     *
+     * @param loop the event loop returned by {@link #acquire()}
+     */
+    public static synchronized void release(NioEventLoop loop) {
+        if (loop == null || loop != instance) {
+            return; // stopped on error: the next acquire() starts a new loop
+        }
+        if (--refCount == 0) {
+            instance = null;
+            loop.execute(() -> loop.running = false);
+        }
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * @return true if called from the loop thread
+     */
+    public boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Run a task on the loop thread
+     *
+     * @param task the task
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (!inLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Run a task on the loop thread after a delay. Must be called from the loop thread.
+     *
+     * @param task the task
+     * @param delayMillis delay (ms)
+     * @return the timer, that can be cancelled
+     */
+    public Timer schedule(Runnable task, long delayMillis) {
+        Timer timer = new Timer(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+        timers.add(timer);
+        return timer;
+    }
+
+    @Override
+    public void run() {
+        logger.debug("==OWN:NIO== event loop started");
+        try {
+            while (running) {
+                long timeout = nextTimeoutMillis();
+                if (timeout < 0) {
+                    selector.selectNow();
+                } else {
+                    selector.select(timeout);
+                }
+                processSelectedKeys();
+                runTasks();
+                runTimers();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            logger.warn("==OWN:NIO== event loop error: {}", e.getMessage());
+        } finally {
+            synchronized (NioEventLoop.class) {
+                if (instance == this) {
+                    // stopped on error: users still holding this loop are not counted by the next one
+                    instance = null;
+                    refCount = 0;
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                Object attachment = key.attachment();
+                if (attachment instanceof NioChannelHandler) {
+                    ((NioChannelHandler) attachment).close(new IOException("Event loop stopped"));
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.debug("==OWN:NIO== exception while closing selector: {}", e.getMessage());
+            }
+            logger.debug("==OWN:NIO== event loop stopped");
+        }
+    }
+
+    /**
+     * @return ms to wait before the next timer expires, 0 to wait without limit, -1 if a timer already expired
+     */
+    private long nextTimeoutMillis() {
+        if (!tasks.isEmpty()) {
+            return -1;
+        }
+        Timer next = timers.peek();
+        if (next == null) {
+            return 0;
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(next.deadline - System.nanoTime());
+        return millis > 0 ? millis : -1;
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            NioChannelHandler handler = (NioChannelHandler) key.attachment();
+            try {
+                handler.handleEvent(key);
+            } catch (RuntimeException e) {
+                logger.warn("==OWN:NIO== exception while handling I/O event: {}", e.getMessage(), e);
+                handler.close(new IOException(e));
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            runSafely(task);
+        }
+    }
+
+    private void runTimers() {
+        long now = System.nanoTime();
+        Timer timer;
+        while ((timer = timers.peek()) != null && timer.deadline - now <= 0) {
+            timers.poll();
+            if (!timer.cancelled) {
+                runSafely(timer.task);
+            }
+        }
+    }
+
+    private void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            logger.warn("==OWN:NIO== exception while running task: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A task to be run on the loop thread at a given time
+     */
+    public static class Timer implements Comparable<Timer> {
+        private final Runnable task;
+        private final long deadline;
+        private volatile boolean cancelled = false;
+
+        private Timer(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            return Long.compare(deadline - other.deadline, 0);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.nio;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.openwebnet.message.OpenMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link NioGatewayScanner} searches BUS gateways on the LAN: it connects to the OpenWebNet port of each address of
+ * one or more IPv4 ranges and checks that the gateway greets with an ACK (<code>*#*1##</code>). Connections are
+ * non-blocking and run on the shared {@link NioEventLoop}, many in parallel, each with a short timeout: a /24 network
+ * is scanned in about a second. No session is opened with gateways found.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class NioGatewayScanner {
+
+    private static final int MIN_PREFIX = 16; // largest range that can be scanned (65534 addresses)
+    private static final int LOCAL_MIN_PREFIX = 24; // local networks larger than a /24 are scanned as /24
+    private static final int GREETING_BUFFER_SIZE = 32;
+
+    private final Logger logger = LoggerFactory.getLogger(NioGatewayScanner.class);
+
+    private final int port;
+    private final int timeoutMillis;
+    private final int maxParallel;
+
+    private Scan scan; // the scan in progress, guarded by this
+
+    /**
+     * @param port OpenWebNet port to connect to
+     * @param timeoutMillis time (ms) to wait for each address to connect and greet
+     * @param maxParallel maximum number of connections open at the same time
+     */
+    public NioGatewayScanner(int port, int timeoutMillis, int maxParallel) {
+        if (port < 1 || port > 65535 || timeoutMillis < 1 || maxParallel < 1) {
+            throw new IllegalArgumentException("Invalid port, timeout or parallelism");
+        }
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+        this.maxParallel = maxParallel;
+    }
+
+    /**
+     * Scan a list of addresses. If a scan is already in progress its future is returned and no new scan is started.
+     *
+     * @param hosts the addresses to scan
+     * @param listener receives the address of each gateway found, on the event loop thread
+     * @return future completed with the number of gateways found when all addresses have been scanned or the scan is
+     *         cancelled
+     * @throws IOException if the event loop cannot be started
+     */
+    public synchronized CompletableFuture<Integer> scan(List<InetAddress> hosts, Consumer<InetSocketAddress> listener)
+            throws IOException {
+        if (scan != null) {
+            return scan.result;
+        }
+        NioEventLoop loop = NioEventLoop.acquire();
+        Scan newScan = new Scan(loop, hosts, listener);
+        scan = newScan;
+        logger.debug("==OWN:NIO== scanning {} addresses for gateways on port {}", hosts.size(), port);
+        loop.execute(newScan::next);
+        return newScan.result;
+    }
+
+    /**
+     * Cancel the scan in progress, if any. Gateways already found are not notified again.
+     */
+    public synchronized void cancel() {
+        if (scan != null) {
+            final Scan cancelled = scan;
+            cancelled.loop.execute(cancelled::cancel);
+        }
+    }
+
+    private synchronized void scanEnded(Scan ended) {
+        if (scan == ended) {
+            scan = null;
+            NioEventLoop.release(ended.loop);
+        }
+    }
+
+    /**
+     * Parse a comma separated list of IPv4 addresses and ranges in CIDR notation (<code>192.168.1.0/24</code>)
+     *
+     * @param ranges the list
+     * @return addresses of the ranges, without network and broadcast addresses
+     * @throws IllegalArgumentException if an address or range is not valid, or a range is larger than a /16
+     */
+    public static List<InetAddress> parseRanges(String ranges) {
+        Set<InetAddress> hosts = new LinkedHashSet<>();
+        for (String range : ranges.split(",")) {
+            range = range.trim();
+            if (range.isEmpty()) {
+                continue;
+            }
+            int slash = range.indexOf('/');
+            int address = parseIPv4(slash < 0 ? range : range.substring(0, slash));
+            int prefix = 32;
+            if (slash >= 0) {
+                try {
+                    prefix = Integer.parseInt(range.substring(slash + 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid range: " + range);
+                }
+                if (prefix < MIN_PREFIX || prefix > 32) {
+                    throw new IllegalArgumentException(
+                            "Invalid range: " + range + " (prefix must be between " + MIN_PREFIX + " and 32)");
+                }
+            }
+            long size = 1L << (32 - prefix);
+            int network = address & (int) (0xFFFFFFFFL << (32 - prefix));
+            long first = size > 2 ? 1 : 0; // skip network and broadcast addresses
+            long last = size > 2 ? size - 2 : size - 1;
+            for (long i = first; i <= last; i++) {
+                hosts.add(toInetAddress(network + (int) i));
+            }
+        }
+        return new ArrayList<>(hosts);
+    }
+
+    /**
+     * @return IPv4 ranges of the private networks this host is connected to, as CIDR strings; networks larger than a
+     *         /24 are returned as the /24 containing this host
+     */
+    public static List<String> localRanges() {
+        List<String> ranges = new ArrayList<>();
+        try {
+            for (NetworkInterface nif : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!nif.isUp() || nif.isLoopback()) {
+                    continue;
+                }
+                for (InterfaceAddress ifAddress : nif.getInterfaceAddresses()) {
+                    InetAddress address = ifAddress.getAddress();
+                    if (address instanceof Inet4Address && address.isSiteLocalAddress()) {
+                        int prefix = Math.max(ifAddress.getNetworkPrefixLength(), LOCAL_MIN_PREFIX);
+                        ranges.add(address.getHostAddress() + "/" + prefix);
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            LoggerFactory.getLogger(NioGatewayScanner.class).warn("==OWN:NIO== cannot list network interfaces: {}",
+                    e.getMessage());
+        }
+        return ranges;
+    }
+
+    private static int parseIPv4(String address) {
+        String[] octets = address.split("\\.", -1);
+        if (octets.length != 4) {
+            throw new IllegalArgumentException("Invalid IPv4 address: " + address);
+        }
+        int value = 0;
+        for (String octet : octets) {
+            int n;
+            try {
+                n = Integer.parseInt(octet);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid IPv4 address: " + address);
+            }
+            if (n < 0 || n > 255) {
+                throw new IllegalArgumentException("Invalid IPv4 address: " + address);
+            }
+            value = (value << 8) | n;
+        }
+        return value;
+    }
+
+    private static InetAddress toInetAddress(int address) {
+        try {
+            return InetAddress.getByAddress(new byte[] { (byte) (address >>> 24), (byte) (address >>> 16),
+                    (byte) (address >>> 8), (byte) address });
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e); // never thrown for 4 bytes
+        }
+    }
+
+    /**
+     * A scan in progress. Accessed only from the loop thread, except for the result future.
+     */
+    private class Scan {
+        private final NioEventLoop loop;
+        private final Iterator<InetAddress> hosts;
+        private final int total;
+        private final Consumer<InetSocketAddress> listener;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+        private final Set<Probe> probes = new HashSet<>();
+        private final long startNanos = System.nanoTime();
+        private int found = 0;
+        private boolean cancelled = false;
+        private boolean starting = false;
+
+        private Scan(NioEventLoop loop, List<InetAddress> hosts, Consumer<InetSocketAddress> listener) {
+            this.loop = loop;
+            this.hosts = new ArrayList<>(hosts).iterator();
+            this.total = hosts.size();
+            this.listener = listener;
+        }
+
+        /**
+         * Start probes until the maximum number of parallel connections is reached, or end the scan
+         */
+        private void next() {
+            if (starting) {
+                return; // a probe failed while being opened: the loop below goes on
+            }
+            starting = true;
+            try {
+                while (!cancelled && probes.size() < maxParallel && hosts.hasNext()) {
+                    Probe probe = new Probe(this, new InetSocketAddress(hosts.next(), port));
+                    probes.add(probe);
+                    probe.open();
+                }
+            } finally {
+                starting = false;
+            }
+            if (probes.isEmpty() && !result.isDone()) {
+                logger.debug("==OWN:NIO== scan of {} addresses {} in {} ms, {} gateways found", total,
+                        cancelled ? "cancelled" : "completed", (System.nanoTime() - startNanos) / 1000000, found);
+                scanEnded(this);
+                result.complete(found);
+            }
+        }
+
+        private void probeEnded(Probe probe, boolean gateway) {
+            probes.remove(probe);
+            if (gateway && !cancelled) {
+                found++;
+                logger.info("==OWN:NIO== found gateway at {}", probe.address);
+                try {
+                    listener.accept(probe.address);
+                } catch (RuntimeException e) {
+                    logger.warn("==OWN:NIO== exception notifying gateway {}: {}", probe.address, e.getMessage());
+                }
+            }
+            next();
+        }
+
+        private void cancel() {
+            cancelled = true;
+            for (Probe probe : new ArrayList<>(probes)) {
+                probe.close(null);
+            }
+            next();
+        }
+    }
+
+    /**
+     * A connection to one address, waiting for the gateway greeting
+     */
+    private class Probe implements NioChannelHandler {
+        private final Scan scan;
+        private final InetSocketAddress address;
+        private final ByteBuffer buffer = ByteBuffer.allocate(GREETING_BUFFER_SIZE);
+        private SocketChannel channel;
+        private SelectionKey key;
+        private NioEventLoop.Timer timer;
+        private boolean closed = false;
+        private boolean gateway = false;
+
+        private Probe(Scan scan, InetSocketAddress address) {
+            this.scan = scan;
+            this.address = address;
+        }
+
+        private void open() {
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                boolean connected = channel.connect(address);
+                key = channel.register(scan.loop.selector(),
+                        connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+                timer = scan.loop.schedule(() -> close(null), timeoutMillis);
+            } catch (IOException | RuntimeException e) {
+                close(e instanceof IOException ? (IOException) e : new IOException(e));
+            }
+        }
+
+        @Override
+        public void handleEvent(SelectionKey selectedKey) {
+            try {
+                if (selectedKey.isConnectable()) {
+                    channel.finishConnect();
+                    selectedKey.interestOps(SelectionKey.OP_READ);
+                }
+                if (selectedKey.isValid() && selectedKey.isReadable()) {
+                    if (channel.read(buffer) < 0) {
+                        throw new IOException("Connection closed by " + address);
+                    }
+                    int end = buffer.position();
+                    byte[] buf = buffer.array();
+                    for (int i = 1; i < end; i++) {
+                        if (buf[i] == '#' && buf[i - 1] == '#') {
+                            gateway = OpenMessage.ACK.equals(new String(buf, 0, i + 1, StandardCharsets.US_ASCII));
+                            close(null);
+                            return;
+                        }
+                    }
+                    if (!buffer.hasRemaining()) {
+                        close(null); // not an OpenWebNet greeting
+                    }
+                }
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        @Override
+        public void close(IOException cause) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (timer != null) {
+                timer.cancel();
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.trace("==OWN:NIO== exception while closing probe to {}: {}", address, e.getMessage());
+                }
+            }
+            scan.probeEnded(this, gateway);
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.nio;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.openhab.binding.openwebnet.internal.frame.FrameListener;
+import org.openhab.binding.openwebnet.internal.timer.ExponentialBackoff;
+import org.openwebnet.OpenDeviceType;
+import org.openwebnet.OpenError;
+import org.openwebnet.OpenGateway;
+import org.openwebnet.OpenListener;
+import org.openwebnet.OpenNewDeviceListener;
+import org.openwebnet.OpenSession;
+import org.openwebnet.OpenSessionError;
+import org.openwebnet.message.Lighting;
+import org.openwebnet.message.OpenMessage;
+import org.openwebnet.message.OpenMessageFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link NioOpenGatewayBus} is an alternative to the library {@link org.openwebnet.OpenGatewayBus} that talks to a
+ * BUS gateway using non-blocking connections on the shared {@link NioEventLoop}, instead of dedicated threads and
+ * blocking sockets for each gateway.
+ *
+ * It keeps one monitor session, re-connected if lost, and one command session over which commands are sent one after
+ * the other. Listeners are notified on the event loop thread and must not block. Listeners implementing
+ * {@link FrameListener} receive monitor frames as raw strings, without library parsing.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class NioOpenGatewayBus implements OpenGateway {
+
+    private static final int RECONNECT_INITIAL_DELAY = 500; // ms
+    private static final int RECONNECT_MAX_DELAY = 30000; // ms
+    private static final int COMMAND_TIMEOUT = 10000; // ms
+
+    private final Logger logger = LoggerFactory.getLogger(NioOpenGatewayBus.class);
+
+    private final String host;
+    private final int port;
+    private final String passwd;
+
+    private final List<OpenListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean discoveryInProgress = new AtomicBoolean(false);
+
+    private NioEventLoop loop;
+    private boolean started = false;
+    private volatile boolean connected = false;
+
+    // accessed only from the loop thread
+    private boolean closed = false;
+    private boolean wasConnected = false;
+    private boolean connectionErrorNotified = false;
+    private MonitorConnection monitor;
+    private CommandConnection command;
+    private final ArrayDeque<PendingCommand> commandQueue = new ArrayDeque<>();
+    private PendingCommand inFlight;
+    private NioEventLoop.Timer reconnectTimer;
+    private final ExponentialBackoff reconnectBackoff = new ExponentialBackoff(RECONNECT_INITIAL_DELAY,
+            RECONNECT_MAX_DELAY);
+
+    public NioOpenGatewayBus(String host, int port, String passwd) {
+        this.host = host;
+        this.port = port;
+        this.passwd = passwd;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public synchronized void connect() {
+        if (started) {
+            return;
+        }
+        try {
+            loop = NioEventLoop.acquire();
+        } catch (IOException e) {
+            logger.error("==OWN:NIO== could not start event loop: {}", e.getMessage());
+            notifyListeners(l -> l.onConnectionError(OpenError.IO_EXCEPTION_ERROR));
+            return;
+        }
+        started = true;
+        logger.info("==OWN:NIO== connecting to BUS gateway {}:{}...", host, port);
+        loop.execute(() -> {
+            closed = false;
+            openMonitor();
+        });
+    }
+
+    @Override
+    public void connect(OpenListener listener) {
+        subscribe(listener);
+        connect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public void subscribe(OpenListener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    @Override
+    public void unsubscribe(OpenListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners(Consumer<OpenListener> notification) {
+        for (OpenListener listener : listeners) {
+            try {
+                notification.accept(listener);
+            } catch (RuntimeException e) {
+                logger.warn("==OWN:NIO== exception while notifying listener: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void openMonitor() {
+        reconnectTimer = null;
+        monitor = new MonitorConnection(loop);
+        monitor.open();
+        if (wasConnected && command == null) {
+            // reconnecting: open the command session in parallel, so that it is ready when the monitor session is
+            command = new CommandConnection(loop);
+            command.open();
+        }
+    }
+
+    /**
+     * Send a command frame over the command session
+     *
+     * @param msg the command
+     * @return future completed with all frames received in answer, the last one being ACK or NACK, or exceptionally in
+     *         case of communication error
+     */
+    public CompletableFuture<List<OpenMessage>> sendCommand(OpenMessage msg) {
+        PendingCommand pending = new PendingCommand(msg);
+        NioEventLoop l;
+        synchronized (this) {
+            l = started ? loop : null;
+        }
+        if (l == null) {
+            pending.result.completeExceptionally(new IOException("Gateway not connected"));
+        } else {
+            l.execute(() -> {
+                if (closed) {
+                    pending.result.completeExceptionally(new IOException("Gateway connection closed"));
+                } else {
+                    commandQueue.add(pending);
+                    sendNextCommand();
+                }
+            });
+        }
+        return pending.result;
+    }
+
+    /**
+     * Send the next queued command, opening the command session if needed
+     */
+    private void sendNextCommand() {
+        if (inFlight != null || commandQueue.isEmpty()) {
+            return;
+        }
+        if (command == null) {
+            command = new CommandConnection(loop);
+            command.open();
+            return; // the next command is sent when the session is ready
+        }
+        if (!command.isReady()) {
+            return;
+        }
+        inFlight = commandQueue.poll();
+        final CommandConnection session = command;
+        final OpenMessage msg = inFlight.msg;
+        inFlight.timer = loop.schedule(
+                () -> session.close(new IOException("Timeout waiting answer to command " + msg)), COMMAND_TIMEOUT);
+        session.writeFrame(msg.getValue());
+    }
+
+    /**
+     * Send a command and wait for the answer, as the library gateways do. Must not be called from a listener.
+     */
+    @Override
+    public OpenSession send(OpenMessage msg) {
+        OpenSession session = new OpenSession(msg);
+        try {
+            for (OpenMessage response : sendCommand(msg).get(2 * COMMAND_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                session.addResponse(response);
+            }
+            session.finalResponse();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.debug("==OWN:NIO== error sending {}: {}", msg, e.getMessage());
+            session.setFinalError(connected ? OpenSessionError.OTHER_ERROR : OpenSessionError.NOT_CONNECTED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            session.setFinalError(OpenSessionError.OTHER_ERROR);
+        }
+        return session;
+    }
+
+    @Override
+    public void discoverDevices(OpenNewDeviceListener listener) {
+        if (!discoveryInProgress.compareAndSet(false, true)) {
+            logger.debug("==OWN:NIO== discovery already in progress -> SKIPPING...");
+            return;
+        }
+        logger.debug("==OWN:NIO== starting a new discovery...");
+        try {
+            for (OpenMessage msg : send(Lighting.requestStatus("0", Lighting.Type.GENERAL)).getResponse()) {
+                if (msg instanceof Lighting) {
+                    Lighting lmsg = (Lighting) msg;
+                    OpenDeviceType type = OpenDeviceType.SCS_ON_OFF_SWITCH;
+                    if (lmsg.getWhat() != Lighting.WHAT.OFF && lmsg.getWhat() != Lighting.WHAT.ON) {
+                        type = OpenDeviceType.SCS_DIMMER_SWITCH;
+                    }
+                    listener.onNewDevice(lmsg.getWhere(), type);
+                }
+            }
+        } finally {
+            discoveryInProgress.set(false);
+        }
+    }
+
+    @Override
+    public void closeConnection() {
+        final NioEventLoop l;
+        synchronized (this) {
+            if (!started) {
+                return;
+            }
+            started = false;
+            l = loop;
+        }
+        logger.debug("==OWN:NIO== closing connection with {}:{}", host, port);
+        l.execute(() -> {
+            closed = true;
+            if (reconnectTimer != null) {
+                reconnectTimer.cancel();
+                reconnectTimer = null;
+            }
+            if (monitor != null) {
+                monitor.close(null);
+            }
+            if (command != null) {
+                command.close(null);
+            }
+            PendingCommand pending;
+            while ((pending = commandQueue.poll()) != null) {
+                pending.result.completeExceptionally(new IOException("Gateway connection closed"));
+            }
+            connected = false;
+            notifyListeners(OpenListener::onConnectionClosed);
+        });
+        NioEventLoop.release(l);
+    }
+
+    /**
+     * The monitor session: receives all events from the BUS
+     */
+    private class MonitorConnection extends NioConnection {
+
+        MonitorConnection(NioEventLoop loop) {
+            super(loop, host, port, passwd, MONITOR_SESSION);
+        }
+
+        @Override
+        protected void onReady() {
+            connected = true;
+            connectionErrorNotified = false;
+            reconnectBackoff.reset();
+            if (wasConnected) {
+                logger.info("==OWN:NIO== RE-CONNECTED monitor session with {}:{}", host, port);
+                notifyListeners(OpenListener::onReconnected);
+            } else {
+                wasConnected = true;
+                logger.info("==OWN:NIO== CONNECTED monitor session with {}:{}", host, port);
+                notifyListeners(OpenListener::onConnected);
+            }
+        }
+
+        @Override
+        protected void onFrame(String frame) {
+            OpenMessage msg = null;
+            for (OpenListener listener : listeners) {
+                try {
+                    if (listener instanceof FrameListener) {
+                        // the listener parses frames itself: no library message is needed
+                        ((FrameListener) listener).onFrame(frame);
+                    } else {
+                        if (msg == null) {
+                            msg = OpenMessageFactory.parse(frame);
+                            if (msg == null) {
+                                logger.debug("==OWN:NIO== frame not recognized: {}", frame);
+                                return;
+                            }
+                        }
+                        listener.onMessage(msg);
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn("==OWN:NIO== exception while notifying listener: {}", e.getMessage(), e);
+                }
+            }
+        }
+
+        @Override
+        protected void onClosed(IOException cause) {
+            boolean wasReady = connected;
+            connected = false;
+            if (monitor == this) {
+                monitor = null;
+            }
+            if (closed) {
+                return;
+            }
+            if (wasReady) {
+                logger.warn("==OWN:NIO== monitor session with {}:{} lost: {}", host, port,
+                        cause != null ? cause.getMessage() : "");
+                notifyListeners(OpenListener::onDisconnected);
+            } else {
+                logger.debug("==OWN:NIO== could not open monitor session with {}:{}: {}", host, port,
+                        cause != null ? cause.getMessage() : "");
+                if (!wasConnected && !connectionErrorNotified) {
+                    connectionErrorNotified = true;
+                    notifyListeners(l -> l.onConnectionError(OpenError.IO_EXCEPTION_ERROR));
+                }
+            }
+            long delay = reconnectBackoff.nextDelayMillis();
+            logger.debug("==OWN:NIO== re-connecting to {}:{} in {} ms (attempt {})", host, port, delay,
+                    reconnectBackoff.getAttempts());
+            reconnectTimer = loop.schedule(NioOpenGatewayBus.this::openMonitor, delay);
+        }
+    }
+
+    /**
+     * The command session: commands are sent one at a time, the next one after the ACK/NACK of the previous one
+     */
+    private class CommandConnection extends NioConnection {
+
+        private boolean wasReady = false;
+
+        CommandConnection(NioEventLoop loop) {
+            super(loop, host, port, passwd, COMMAND_SESSION);
+        }
+
+        @Override
+        protected void onReady() {
+            wasReady = true;
+            sendNextCommand();
+        }
+
+        @Override
+        protected void onFrame(String frame) {
+            PendingCommand pending = inFlight;
+            if (pending == null) {
+                logger.debug("==OWN:NIO== ignoring frame received with no command in progress: {}", frame);
+                return;
+            }
+            OpenMessage msg = OpenMessageFactory.parse(frame);
+            if (msg != null) {
+                pending.responses.add(msg);
+            }
+            if (OpenMessage.ACK.equals(frame) || OpenMessage.NACK.equals(frame)) {
+                inFlight = null;
+                pending.timer.cancel();
+                pending.result.complete(pending.responses);
+                sendNextCommand();
+            }
+        }
+
+        @Override
+        protected void onClosed(IOException cause) {
+            if (command == this) {
+                command = null;
+            }
+            IOException error = cause != null ? cause : new IOException("Command session closed");
+            if (inFlight != null) {
+                inFlight.timer.cancel();
+                inFlight.result.completeExceptionally(error);
+                inFlight = null;
+            }
+            if (!wasReady || closed) {
+                // the session could not be opened: do not retry forever, fail queued commands
+                PendingCommand pending;
+                while ((pending = commandQueue.poll()) != null) {
+                    pending.result.completeExceptionally(error);
+                }
+            } else {
+                // the gateway closed an idle or failed session: open a new one for queued commands
+                sendNextCommand();
+            }
+        }
+    }
+
+    private static class PendingCommand {
+        private final OpenMessage msg;
+        private final List<OpenMessage> responses = new ArrayList<>(2);
+        private final CompletableFuture<List<OpenMessage>> result = new CompletableFuture<>();
+        private NioEventLoop.Timer timer;
+
+        PendingCommand(OpenMessage msg) {
+            this.msg = msg;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.state;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.eclipse.smarthome.core.thing.ChannelUID;
+import org.eclipse.smarthome.core.thing.ThingUID;
+import org.eclipse.smarthome.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ChannelStateCoalescer} sits between device handlers and the openHAB event bus and reduces the number of
+ * channel state updates published:
+ * <ul>
+ * <li>an update with the same state as the last published one for the channel is skipped</li>
+ * <li>the first update for a channel is published immediately and opens a window: further updates received within
+ * the window are collapsed and only the last one is published when the window ends</li>
+ * </ul>
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class ChannelStateCoalescer {
+
+    private final Logger logger = LoggerFactory.getLogger(ChannelStateCoalescer.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final long windowMillis;
+
+    private final Map<ChannelUID, ChannelEntry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong publishedUpdates = new AtomicLong();
+    private final AtomicLong suppressedUpdates = new AtomicLong();
+
+    /**
+     * @param scheduler scheduler used to publish the last update of a window
+     * @param windowMillis window (ms) in which updates for a channel are collapsed. If 0 only identical updates are
+     *            skipped
+     */
+    public ChannelStateCoalescer(ScheduledExecutorService scheduler, long windowMillis) {
+        this.scheduler = scheduler;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Submit a new state for a channel
+     *
+     * @param channel the channel
+     * @param state the new state
+     * @param publisher called to publish the state to the event bus
+     */
+    public void update(ChannelUID channel, State state, BiConsumer<ChannelUID, State> publisher) {
+        ChannelEntry entry = entries.get(channel);
+        if (entry == null) {
+            entry = new ChannelEntry(channel);
+            ChannelEntry existing = entries.putIfAbsent(channel, entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        synchronized (entry) {
+            if (entry.windowOpen) {
+                if (entry.pendingState != null) {
+                    suppressedUpdates.incrementAndGet();
+                }
+                entry.pendingState = state;
+                entry.publisher = publisher;
+                return;
+            }
+            if (state.equals(entry.lastPublishedState)) {
+                suppressedUpdates.incrementAndGet();
+                logger.trace("==OWN:Coalescer== channel {} already in state {}, skipping update", channel, state);
+                return;
+            }
+            entry.publish(state, publisher);
+            if (windowMillis > 0) {
+                entry.windowOpen = true;
+                scheduler.schedule(entry, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Forget the last published state of a channel, so that the next update is always published (for example after a
+     * refresh or a command has been received for the channel)
+     *
+     * @param channel the channel
+     */
+    public void invalidate(ChannelUID channel) {
+        ChannelEntry entry = entries.get(channel);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.lastPublishedState = null;
+            }
+        }
+    }
+
+    /**
+     * Forget all channels of a thing (for example when its handler is disposed). Pending updates are discarded.
+     *
+     * @param thingUID the thing
+     */
+    public void forget(ThingUID thingUID) {
+        for (ChannelEntry entry : entries.values()) {
+            if (thingUID.equals(entry.channel.getThingUID()) && entries.remove(entry.channel, entry)) {
+                synchronized (entry) {
+                    entry.pendingState = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of state updates published to the event bus
+     */
+    public long getPublishedUpdates() {
+        return publishedUpdates.get();
+    }
+
+    /**
+     * @return number of state updates skipped because identical or collapsed within a window
+     */
+    public long getSuppressedUpdates() {
+        return suppressedUpdates.get();
+    }
+
+    private class ChannelEntry implements Runnable {
+        private final ChannelUID channel;
+        private State lastPublishedState;
+        private State pendingState;
+        private BiConsumer<ChannelUID, State> publisher;
+        private boolean windowOpen = false;
+
+        ChannelEntry(ChannelUID channel) {
+            this.channel = channel;
+        }
+
+        private void publish(State state, BiConsumer<ChannelUID, State> statePublisher) {
+            lastPublishedState = state;
+            publishedUpdates.incrementAndGet();
+            statePublisher.accept(channel, state);
+        }
+
+        /**
+         * End of window: publish the last pending state, if any, and keep the window open while updates keep arriving
+         */
+        @Override
+        public synchronized void run() {
+            State state = pendingState;
+            pendingState = null;
+            if (state == null) {
+                windowOpen = false;
+            } else if (state.equals(lastPublishedState)) {
+                suppressedUpdates.incrementAndGet();
+                windowOpen = false;
+            } else {
+                try {
+                    publish(state, publisher);
+                } catch (RuntimeException e) {
+                    logger.warn("==OWN:Coalescer== exception while publishing state {} for channel {}: {}", state,
+                            channel, e.getMessage());
+                }
+                scheduler.schedule(this, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.state;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.smarthome.core.thing.ChannelUID;
+import org.eclipse.smarthome.core.thing.ThingUID;
+import org.eclipse.smarthome.core.types.State;
+
+/**
+ * The {@link DeviceStateCache} keeps the last state of each channel as received from the gateway, so that a refresh
+ * can be answered from memory instead of with a status request to the gateway. States are written through on every
+ * update from the network and are fresh for a configurable time (TTL): the monitor session reports every state
+ * change, so a state is reliable as long as the connection with the gateway is not lost.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class DeviceStateCache {
+
+    private final long ttlNanos;
+
+    private final Map<ChannelUID, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param ttlSeconds time (s) a state stays fresh after it has been received. If 0 states are never served from
+     *            the cache
+     */
+    public DeviceStateCache(long ttlSeconds) {
+        this(ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param ttl time a state stays fresh after it has been received. If 0 states are never served from the cache
+     * @param unit unit of ttl
+     */
+    DeviceStateCache(long ttl, TimeUnit unit) {
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * Store the state of a channel received from the network
+     *
+     * @param channel the channel
+     * @param state the state
+     */
+    public void put(ChannelUID channel, State state) {
+        if (ttlNanos == 0) {
+            return;
+        }
+        Entry entry = entries.get(channel);
+        if (entry == null) {
+            entry = new Entry();
+            Entry existing = entries.putIfAbsent(channel, entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        entry.update(state);
+    }
+
+    /**
+     * Returns the state of a channel, if fresh
+     *
+     * @param channel the channel
+     * @return the state, or null if unknown or stale
+     */
+    public State get(ChannelUID channel) {
+        Entry entry = entries.get(channel);
+        State state = entry != null ? entry.freshState(System.nanoTime()) : null;
+        if (state != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return state;
+    }
+
+    /**
+     * Forget the state of a channel (for example when a command has been sent to it and its new state is not known
+     * yet)
+     *
+     * @param channel the channel
+     */
+    public void invalidate(ChannelUID channel) {
+        entries.remove(channel);
+    }
+
+    /**
+     * Forget all channels of a thing (for example when its handler is disposed)
+     *
+     * @param thingUID the thing
+     */
+    public void forget(ThingUID thingUID) {
+        entries.keySet().removeIf(channel -> thingUID.equals(channel.getThingUID()));
+    }
+
+    /**
+     * Forget all states (for example when the connection with the gateway is lost, as state changes may be missed)
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return number of states served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of states not found or stale
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private class Entry {
+        // state and time are not updated atomically: a state read with the time of the previous one is still recent
+        private volatile State state;
+        private volatile long updatedNanos;
+
+        private void update(State newState) {
+            state = newState;
+            updatedNanos = System.nanoTime();
+        }
+
+        private State freshState(long now) {
+            return now - updatedNanos < ttlNanos ? state : null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.state;
+
+/**
+ * The {@link DimmerState} is an immutable snapshot of the brightness state of a dimmer: latest brightness level
+ * (Lighting WHAT 0-10), level before it was switched off, and whether a brightness status request is pending.
+ *
+ * A dimmer keeps its state in an {@link java.util.concurrent.atomic.AtomicReference} and replaces it by
+ * compare-and-set, so commands and frames update it without locks and never see a partially updated state.
+ * Timestamps are {@link System#nanoTime()} values.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public final class DimmerState {
+
+    public static final int UNKNOWN = -1;
+
+    public static final DimmerState INITIAL = new DimmerState(UNKNOWN, UNKNOWN, false, 0);
+
+    private final int what;
+    private final int whatBeforeOff;
+    private final boolean levelRequested;
+    private final long levelRequestedNanos;
+
+    private DimmerState(int what, int whatBeforeOff, boolean levelRequested, long levelRequestedNanos) {
+        this.what = what;
+        this.whatBeforeOff = whatBeforeOff;
+        this.levelRequested = levelRequested;
+        this.levelRequestedNanos = levelRequestedNanos;
+    }
+
+    /**
+     * @param what latest brightness level, or {@link #UNKNOWN}
+     * @param whatBeforeOff brightness level before the dimmer was switched off, or {@link #UNKNOWN}
+     * @return the state restored from a snapshot, with no status request pending
+     */
+    public static DimmerState restored(int what, int whatBeforeOff) {
+        return new DimmerState(what, whatBeforeOff, false, 0);
+    }
+
+    /**
+     * @return latest brightness level (0-10), or {@link #UNKNOWN}
+     */
+    public int getWhat() {
+        return what;
+    }
+
+    /**
+     * @return brightness level before the dimmer was switched off, or {@link #UNKNOWN}
+     */
+    public int getWhatBeforeOff() {
+        return whatBeforeOff;
+    }
+
+    /**
+     * @param nowNanos current {@link System#nanoTime()}
+     * @param timeoutNanos time after which a request with no answer is no longer considered pending
+     * @return true if a brightness status request is pending
+     */
+    public boolean isLevelRequested(long nowNanos, long timeoutNanos) {
+        return levelRequested && nowNanos - levelRequestedNanos < timeoutNanos;
+    }
+
+    /**
+     * @param newWhat the new brightness level
+     * @return this state with a new brightness level; the level before off is kept when switching off
+     */
+    public DimmerState withLevel(int newWhat) {
+        if (newWhat == what) {
+            return this;
+        }
+        return new DimmerState(newWhat, newWhat == 0 ? what : whatBeforeOff, levelRequested, levelRequestedNanos);
+    }
+
+    /**
+     * @param newWhat the brightness level received
+     * @return this state with the brightness level received in answer to a request (or spontaneously), with no status
+     *         request pending
+     */
+    public DimmerState withLevelReceived(int newWhat) {
+        DimmerState state = withLevel(newWhat);
+        return state.levelRequested ? new DimmerState(state.what, state.whatBeforeOff, false, 0) : state;
+    }
+
+    /**
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return this state with a brightness status request pending since nowNanos
+     */
+    public DimmerState withLevelRequested(long nowNanos) {
+        return new DimmerState(what, whatBeforeOff, true, nowNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "DimmerState[what=" + what + ", whatBeforeOff=" + whatBeforeOff + ", levelRequested=" + levelRequested
+                + "]";
+    }
+}
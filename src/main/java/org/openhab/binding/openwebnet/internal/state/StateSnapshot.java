@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.state;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.smarthome.core.library.types.DecimalType;
+import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.eclipse.smarthome.core.library.types.PercentType;
+import org.eclipse.smarthome.core.types.State;
+
+/**
+ * The {@link StateSnapshot} reads and writes the last known state of the devices of a bridge, so that after a restart
+ * devices can show their last known state before the gateway answers.
+ *
+ * The file is a compact binary file: a header (magic number, version, number of devices) followed, for each device,
+ * by its WHERE, thing UID, brightness WHAT values and channel states (OnOff, Percent and Decimal states only). It is
+ * written to a temporary file and then renamed over the previous one, so a crash while writing never leaves a
+ * truncated snapshot.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class StateSnapshot {
+
+    private static final int MAGIC = 0x4F574E53; // "OWNS"
+    private static final int VERSION = 1;
+
+    private static final byte TYPE_ONOFF = 1;
+    private static final byte TYPE_PERCENT = 2;
+    private static final byte TYPE_DECIMAL = 3;
+
+    private StateSnapshot() {
+    }
+
+    /**
+     * Read a snapshot
+     *
+     * @param file the snapshot file
+     * @return the device states by WHERE, empty if the file does not exist
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static Map<String, DeviceState> read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Collections.emptyMap();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a valid snapshot file: " + file);
+            }
+            int devices = in.readInt();
+            Map<String, DeviceState> states = new HashMap<>();
+            for (int i = 0; i < devices; i++) {
+                String where = in.readUTF();
+                String thingUID = in.readUTF();
+                int brightnessWhat = in.readInt();
+                int brightnessWhatBeforeOff = in.readInt();
+                int channels = in.readUnsignedShort();
+                Map<String, State> channelStates = new LinkedHashMap<>();
+                for (int c = 0; c < channels; c++) {
+                    String channelId = in.readUTF();
+                    byte type = in.readByte();
+                    switch (type) {
+                        case TYPE_ONOFF:
+                            channelStates.put(channelId, in.readBoolean() ? OnOffType.ON : OnOffType.OFF);
+                            break;
+                        case TYPE_PERCENT:
+                            channelStates.put(channelId, new PercentType(in.readUTF()));
+                            break;
+                        case TYPE_DECIMAL:
+                            channelStates.put(channelId, new DecimalType(in.readUTF()));
+                            break;
+                        default:
+                            throw new IOException("Unknown state type " + type + " in snapshot file: " + file);
+                    }
+                }
+                states.put(where,
+                        new DeviceState(thingUID, channelStates, brightnessWhat, brightnessWhatBeforeOff));
+            }
+            return states;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid state in snapshot file: " + file, e);
+        }
+    }
+
+    /**
+     * Write a snapshot, replacing the previous one
+     *
+     * @param file the snapshot file
+     * @param states the device states by WHERE
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, Map<String, DeviceState> states) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(states.size());
+            for (Map.Entry<String, DeviceState> device : states.entrySet()) {
+                DeviceState state = device.getValue();
+                out.writeUTF(device.getKey());
+                out.writeUTF(state.thingUID);
+                out.writeInt(state.brightnessWhat);
+                out.writeInt(state.brightnessWhatBeforeOff);
+                out.writeShort(state.channels.size());
+                for (Map.Entry<String, State> channel : state.channels.entrySet()) {
+                    out.writeUTF(channel.getKey());
+                    State value = channel.getValue();
+                    if (value instanceof OnOffType) {
+                        out.writeByte(TYPE_ONOFF);
+                        out.writeBoolean(value == OnOffType.ON);
+                    } else {
+                        out.writeByte(value instanceof PercentType ? TYPE_PERCENT : TYPE_DECIMAL);
+                        out.writeUTF(((DecimalType) value).toBigDecimal().toPlainString());
+                    }
+                }
+            }
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return true if the state can be stored in a snapshot
+     */
+    public static boolean isSupported(State state) {
+        return state instanceof OnOffType || state instanceof DecimalType;
+    }
+
+    /**
+     * The last known state of a device
+     */
+    public static final class DeviceState {
+        private final String thingUID;
+        private final Map<String, State> channels;
+        private final int brightnessWhat;
+        private final int brightnessWhatBeforeOff;
+
+        /**
+         * @param thingUID UID of the device thing
+         * @param channels channel states by channel id
+         * @param brightnessWhat latest brightness WHAT value (-1 = unknown)
+         * @param brightnessWhatBeforeOff latest brightness WHAT value before the device was set to off
+         */
+        public DeviceState(String thingUID, Map<String, State> channels, int brightnessWhat,
+                int brightnessWhatBeforeOff) {
+            this.thingUID = thingUID;
+            this.channels = channels;
+            this.brightnessWhat = brightnessWhat;
+            this.brightnessWhatBeforeOff = brightnessWhatBeforeOff;
+        }
+
+        public String getThingUID() {
+            return thingUID;
+        }
+
+        public Map<String, State> getChannels() {
+            return channels;
+        }
+
+        public int getBrightnessWhat() {
+            return brightnessWhat;
+        }
+
+        public int getBrightnessWhatBeforeOff() {
+            return brightnessWhatBeforeOff;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.timer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The {@link ExponentialBackoff} computes the delays between retries: each delay doubles the previous one, up to a
+ * maximum, and is randomized between half and all of it so that bridges retrying after the same event (for example a
+ * network outage) do not retry all at the same time.
+ *
+ * Not thread-safe: an instance must be used by one thread at a time.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class ExponentialBackoff {
+
+    private static final int MAX_SHIFT = 20; // limits the shift so that the delay cannot overflow
+
+    private final long initialMillis;
+    private final long maxMillis;
+    private int attempts = 0;
+
+    /**
+     * @param initialMillis delay (ms) before the first retry, before randomization
+     * @param maxMillis maximum delay (ms), before randomization
+     */
+    public ExponentialBackoff(long initialMillis, long maxMillis) {
+        if (initialMillis < 1 || maxMillis < initialMillis) {
+            throw new IllegalArgumentException("initialMillis must be > 0 and <= maxMillis");
+        }
+        this.initialMillis = initialMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * @return the delay (ms) before the next retry
+     */
+    public long nextDelayMillis() {
+        long delay = Math.min(initialMillis << Math.min(attempts, MAX_SHIFT), maxMillis);
+        attempts++;
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    /**
+     * Start again from the initial delay, after a successful retry
+     */
+    public void reset() {
+        attempts = 0;
+    }
+
+    /**
+     * @return number of delays returned since the last reset
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+}
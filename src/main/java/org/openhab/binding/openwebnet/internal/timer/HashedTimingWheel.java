@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.timer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link HashedTimingWheel} runs timeouts with a resolution of one tick, at O(1) cost to schedule and cancel them:
+ * timeouts are kept in a ring of buckets, one per tick, and a single recurring task advances the wheel and runs the
+ * expired ones. Cancelled timeouts are unlinked at the next tick, so they do not keep their task referenced.
+ *
+ * Tasks run on the thread advancing the wheel and must be short.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class HashedTimingWheel {
+
+    private final Logger logger = LoggerFactory.getLogger(HashedTimingWheel.class);
+
+    private final long tickNanos;
+    private final Timeout[] buckets; // head of the list of timeouts of each bucket
+    private final int mask;
+
+    // timeouts added and cancelled by any thread, moved to/from buckets by the thread advancing the wheel
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingTimeouts = new AtomicInteger();
+
+    private final long startNanos = System.nanoTime();
+    private long tick = 0; // next tick to process
+    private ScheduledFuture<?> job;
+
+    /**
+     * @param tickDuration duration of a tick
+     * @param unit unit of tickDuration
+     * @param wheelSize number of buckets, rounded up to a power of 2
+     */
+    public HashedTimingWheel(long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration < 1 || wheelSize < 1) {
+            throw new IllegalArgumentException("tickDuration and wheelSize must be > 0");
+        }
+        tickNanos = unit.toNanos(tickDuration);
+        int size = wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+        buckets = new Timeout[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Start advancing the wheel
+     *
+     * @param scheduler executor running the recurring task that advances the wheel
+     */
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        if (job == null) {
+            job = scheduler.scheduleAtFixedRate(this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Stop advancing the wheel. Pending timeouts will not run.
+     */
+    public synchronized void stop() {
+        if (job != null) {
+            job.cancel(false);
+            job = null;
+        }
+    }
+
+    /**
+     * Schedule a task to run once after a delay
+     *
+     * @param task the task
+     * @param delay the delay, rounded up to the next tick
+     * @param unit unit of delay
+     * @return the timeout, to cancel it
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(this, task, System.nanoTime() + unit.toNanos(delay));
+        pendingTimeouts.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return number of timeouts scheduled and not yet expired or cancelled
+     */
+    public int getPendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    /**
+     * Process ticks elapsed since the last call: link added timeouts, unlink cancelled ones and run expired ones. Must
+     * be called by one thread at a time.
+     */
+    void advance() {
+        long elapsedTicks = (System.nanoTime() - startNanos) / tickNanos;
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            unlink(timeout);
+        }
+        while ((timeout = added.poll()) != null) {
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue; // cancelled before being linked
+            }
+            long deadlineTick = Math.max(tick, (timeout.deadlineNanos - startNanos + tickNanos - 1) / tickNanos);
+            timeout.rounds = (deadlineTick - tick) / buckets.length;
+            link(timeout, (int) (deadlineTick & mask));
+        }
+        for (; tick <= elapsedTicks; tick++) {
+            expire((int) (tick & mask));
+        }
+    }
+
+    private void expire(int bucket) {
+        Timeout timeout = buckets[bucket];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else {
+                unlink(timeout);
+                if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                    pendingTimeouts.decrementAndGet();
+                    Runnable task = timeout.task;
+                    timeout.task = null;
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        logger.warn("==OWN== HashedTimingWheel timeout task failed: {}", e.getMessage(), e);
+                    }
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private void link(Timeout timeout, int bucket) {
+        timeout.bucket = bucket;
+        timeout.next = buckets[bucket];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[bucket] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.bucket < 0) {
+            return; // not linked
+        }
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+
+    /**
+     * A task scheduled on a {@link HashedTimingWheel}
+     */
+    public static final class Timeout {
+
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final HashedTimingWheel wheel;
+        private final long deadlineNanos;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private volatile Runnable task;
+
+        // accessed only by the thread advancing the wheel
+        private Timeout prev;
+        private Timeout next;
+        private int bucket = -1;
+        private long rounds;
+
+        private Timeout(HashedTimingWheel wheel, Runnable task, long deadlineNanos) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Cancel the timeout
+         *
+         * @return true if cancelled, false if already expired or cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            task = null;
+            wheel.pendingTimeouts.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * @return true if the timeout has not expired and has not been cancelled
+         */
+        public boolean isPending() {
+            return state.get() == PENDING;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.zigbee;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openwebnet.OpenGatewayZigBee;
+
+import gnu.io.CommPortIdentifier;
+
+/**
+ * The {@link SerialPortGatewayZigBee} is a ZigBee gateway bound to a single serial port: while the library gateway
+ * connects to the first dongle found on any serial port, this one only tries its own port. Each dongle bridge has its
+ * own instance, so several dongles can be used at the same time, each on its own serial link. A gateway with no port
+ * tries the free ports, like the library gateway, and keeps only the one it connected to.
+ *
+ * Ports are claimed by their gateway while in use, so that discovery does not open ports used by bridges and two
+ * bridges cannot use the same port. A port claimed by discovery is given up when a bridge requests it.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class SerialPortGatewayZigBee extends OpenGatewayZigBee {
+
+    // ports claimed by a gateway, shared by all bridges and discovery
+    private static final Map<String, SerialPortGatewayZigBee> CLAIMED_PORTS = new ConcurrentHashMap<>();
+
+    private final String portName;
+    private final Set<String> claimedPorts = new HashSet<>();
+    // called when a bridge requests the port claimed, null if the port is not given up
+    private volatile Runnable onPortRequested;
+
+    /**
+     * Gateway trying the free serial ports
+     */
+    public SerialPortGatewayZigBee() {
+        this.portName = null;
+    }
+
+    /**
+     * @param portName the serial port (for example /dev/ttyUSB0 or COM3)
+     */
+    public SerialPortGatewayZigBee(String portName) {
+        if (portName == null || portName.isEmpty()) {
+            throw new IllegalArgumentException("It's not allowed to pass a null or empty 'portName'.");
+        }
+        this.portName = portName;
+    }
+
+    /**
+     * @return the serial port of this gateway, null if it tries the free ports
+     */
+    public String getPortName() {
+        return portName;
+    }
+
+    /**
+     * @return the serial port of this gateway if present, or the free ports, claimed while they are tried
+     */
+    @Override
+    public synchronized Collection<CommPortIdentifier> findSerialPorts() {
+        List<CommPortIdentifier> ports = new ArrayList<>();
+        for (CommPortIdentifier port : super.findSerialPorts()) {
+            String name = port.getName();
+            if (portName != null ? portName.equals(name) : claim(name)) {
+                ports.add(port);
+            }
+        }
+        return ports;
+    }
+
+    /**
+     * Connect and, when trying the free ports, release the ones it did not connect to
+     */
+    @Override
+    public void connect() {
+        super.connect();
+        if (portName == null) {
+            String connected = isConnected() ? getConnectedPort() : null;
+            synchronized (this) {
+                for (Iterator<String> it = claimedPorts.iterator(); it.hasNext();) {
+                    String name = it.next();
+                    if (!name.equals(connected)) {
+                        CLAIMED_PORTS.remove(name, this);
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Claim the port of this gateway
+     *
+     * @return true if claimed, false if already claimed by another gateway
+     */
+    public synchronized boolean claimPort() {
+        return claim(portName);
+    }
+
+    /**
+     * Claim the port of this gateway until a bridge requests it
+     *
+     * @param onRequested called when a bridge requests the port: the port must then be released
+     * @return true if claimed, false if already claimed by another gateway
+     */
+    public synchronized boolean claimPort(Runnable onRequested) {
+        if (!claimPort()) {
+            return false;
+        }
+        onPortRequested = onRequested;
+        return true;
+    }
+
+    private boolean claim(String name) {
+        if (claimedPorts.contains(name)) {
+            return true;
+        }
+        if (CLAIMED_PORTS.putIfAbsent(name, this) == null) {
+            claimedPorts.add(name);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Release the ports claimed by this gateway, so that they can be claimed again
+     */
+    public synchronized void releasePort() {
+        for (String name : claimedPorts) {
+            CLAIMED_PORTS.remove(name, this);
+        }
+        claimedPorts.clear();
+        onPortRequested = null;
+    }
+
+    /**
+     * Request a port claimed by another gateway: if it is claimed until requested, it is given up
+     *
+     * @param portName the serial port
+     * @return true if the port will be released, false if it is claimed by a bridge
+     */
+    public static boolean requestPort(String portName) {
+        SerialPortGatewayZigBee owner = CLAIMED_PORTS.get(portName);
+        if (owner == null) {
+            return true;
+        }
+        Runnable onRequested = owner.onPortRequested;
+        if (onRequested == null) {
+            return false;
+        }
+        onRequested.run();
+        return true;
+    }
+
+    /**
+     * @return names of the serial ports not claimed by a gateway
+     */
+    public static List<String> findFreeSerialPorts() {
+        List<String> ports = new ArrayList<>();
+        for (CommPortIdentifier port : new OpenGatewayZigBee().findSerialPorts()) {
+            if (!CLAIMED_PORTS.containsKey(port.getName())) {
+                ports.add(port.getName());
+            }
+        }
+        return ports;
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.bus;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openwebnet.message.OpenMessageFactory;
+
+/**
+ * Tests for {@link BatchingCommandSender}: commands are sent to a fake gateway listening on the loopback interface,
+ * which answers ACK to all frames, NACK to {@link #NACKED}, a status frame before the ACK to {@link #STATUS_REQUEST}
+ * and closes the session without answering to {@link #NOT_ANSWERED}.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class BatchingCommandSenderTest {
+
+    private static final String ACK = "*#*1##";
+    private static final String NACK = "*#*0##";
+    private static final String NACKED = "*1*0*13##";
+    private static final String STATUS_REQUEST = "*#1*12##";
+    private static final String STATUS = "*1*1*12##";
+    private static final String NOT_ANSWERED = "*1*30*12##";
+    private static final long TIMEOUT = 5; // sec
+
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> responses = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    private ServerSocket gateway;
+    private ScheduledExecutorService scheduler;
+    private BusCommandSessionPool pool;
+    private BatchingCommandSender sender;
+
+    @Before
+    public void setUp() throws IOException {
+        gateway = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "fake-gateway");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        pool = new BusCommandSessionPool(gateway.getInetAddress().getHostAddress(), gateway.getLocalPort(), "", 1, 0,
+                scheduler, Runnable::run);
+        sender = new BatchingCommandSender(Executors.defaultThreadFactory(), pool, 50, responses::add);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sender.dispose();
+        pool.close();
+        scheduler.shutdownNow();
+        gateway.close();
+    }
+
+    private void accept() {
+        while (!gateway.isClosed()) {
+            try {
+                Socket socket = gateway.accept();
+                sessions.incrementAndGet();
+                Thread session = new Thread(() -> serve(socket), "fake-gateway-session");
+                session.setDaemon(true);
+                session.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Command session: OPEN handshake without password, then one answer for each frame
+     */
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            write(out, ACK);
+            readFrame(in); // *99*0##
+            write(out, ACK);
+            String frame;
+            while ((frame = readFrame(in)) != null) {
+                received.add(frame);
+                if (NOT_ANSWERED.equals(frame)) {
+                    return;
+                } else if (STATUS_REQUEST.equals(frame)) {
+                    write(out, STATUS + ACK);
+                } else {
+                    write(out, NACKED.equals(frame) ? NACK : ACK);
+                }
+            }
+        } catch (IOException e) {
+            // session closed by the sender
+        }
+    }
+
+    private static void write(OutputStream out, String frames) throws IOException {
+        out.write(frames.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static String readFrame(InputStream in) throws IOException {
+        StringBuilder frame = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0) {
+            frame.append((char) b);
+            if (frame.length() >= 2 && frame.charAt(frame.length() - 1) == '#'
+                    && frame.charAt(frame.length() - 2) == '#') {
+                return frame.toString();
+            }
+        }
+        return null;
+    }
+
+    private CompletableFuture<Boolean> send(String frame) {
+        return sender.send(OpenMessageFactory.parse(frame));
+    }
+
+    private static Boolean result(CompletableFuture<Boolean> command)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return command.get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void commandsWithinWindowAreSentOverOneSession() throws Exception {
+        CompletableFuture<Boolean> on = send("*1*1*12##");
+        CompletableFuture<Boolean> off = send("*1*0*12##");
+        CompletableFuture<Boolean> dim = send("*1*5*12##");
+        assertTrue(result(on));
+        assertTrue(result(off));
+        assertTrue(result(dim));
+        assertEquals(Arrays.asList("*1*1*12##", "*1*0*12##", "*1*5*12##"), received);
+        assertEquals(1, sessions.get());
+        // the session is kept for the next batch
+        assertTrue(result(send("*1*1*12##")));
+        assertEquals(1, sessions.get());
+    }
+
+    @Test
+    public void nackCompletesWithFalse() throws Exception {
+        assertFalse(result(send(NACKED)));
+    }
+
+    @Test
+    public void answerFramesArePassedToResponseListener() throws Exception {
+        assertTrue(result(send(STATUS_REQUEST)));
+        assertEquals(Arrays.asList(STATUS), responses);
+    }
+
+    @Test
+    public void commandNotAnsweredIsNotSentAgain() throws Exception {
+        CompletableFuture<Boolean> dimUp = send(NOT_ANSWERED);
+        CompletableFuture<Boolean> on = send("*1*1*12##");
+        try {
+            result(dimUp);
+            fail("a command with no answer must fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        // the next command of the batch goes on over a new session
+        assertTrue(result(on));
+        assertEquals(Arrays.asList(NOT_ANSWERED, "*1*1*12##"), received);
+        assertEquals(2, sessions.get());
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.bus;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ReconnectSupervisor}: monitor and command sessions are reopened in parallel, on the blocking
+ * executor, until the monitor session is back
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class ReconnectSupervisorTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService blockingExecutor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+        blockingExecutor.shutdownNow();
+    }
+
+    private static void waitFor(AtomicInteger counter, int value) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (counter.get() < value && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("expected " + value + " but was " + counter.get(), counter.get() >= value);
+    }
+
+    @Test
+    public void sessionsAreReopenedInParallelOffTheScheduler() throws InterruptedException {
+        AtomicInteger monitorAttempts = new AtomicInteger();
+        AtomicInteger commandAttempts = new AtomicInteger();
+        AtomicInteger onScheduler = new AtomicInteger();
+        Thread[] schedulerThread = new Thread[1];
+        scheduler.submit(() -> schedulerThread[0] = Thread.currentThread());
+        ReconnectSupervisor supervisor = new ReconnectSupervisor(scheduler, blockingExecutor, () -> {
+            if (Thread.currentThread() == schedulerThread[0]) {
+                onScheduler.incrementAndGet();
+            }
+            return monitorAttempts.incrementAndGet() >= 2;
+        }, () -> {
+            commandAttempts.incrementAndGet();
+            return true;
+        });
+        supervisor.disconnected();
+        waitFor(commandAttempts, 1);
+        waitFor(monitorAttempts, 2);
+        assertEquals(0, onScheduler.get());
+        Thread.sleep(1500);
+        // both tasks are done: no more attempts
+        assertEquals(2, monitorAttempts.get());
+        assertEquals(1, commandAttempts.get());
+        assertTrue(supervisor.reconnected() >= 0);
+    }
+
+    @Test
+    public void attemptsStopWhenReconnected() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        ReconnectSupervisor supervisor = new ReconnectSupervisor(scheduler, blockingExecutor, () -> {
+            attempts.incrementAndGet();
+            return false;
+        }, null);
+        supervisor.disconnected();
+        waitFor(attempts, 1);
+        long outage = supervisor.reconnected();
+        assertTrue(outage >= 0);
+        assertEquals(outage, supervisor.getLastOutageMillis());
+        int made = attempts.get();
+        Thread.sleep(1500);
+        assertEquals(made, attempts.get());
+        assertEquals(-1, supervisor.reconnected());
+    }
+
+    @Test
+    public void nothingIsReopenedAfterDispose() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        ReconnectSupervisor supervisor = new ReconnectSupervisor(scheduler, blockingExecutor, () -> {
+            attempts.incrementAndGet();
+            return false;
+        }, null);
+        supervisor.dispose();
+        supervisor.disconnected();
+        Thread.sleep(700);
+        assertEquals(0, attempts.get());
+        assertEquals(-1, supervisor.getLastOutageMillis());
+    }
+}
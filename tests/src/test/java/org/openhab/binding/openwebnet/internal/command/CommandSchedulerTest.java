@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.command;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openwebnet.message.OpenMessage;
+import org.openwebnet.message.OpenMessageFactory;
+
+/**
+ * Tests for {@link CommandScheduler}: commands are handed to a fake transport that completes them only when told to
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class CommandSchedulerTest {
+
+    private final List<String> sent = new ArrayList<>();
+    private final List<CompletableFuture<Boolean>> answers = new ArrayList<>();
+
+    private CommandScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = newScheduler(8, 1);
+    }
+
+    private CommandScheduler newScheduler(int queueCapacity, int maxInFlight) {
+        return new CommandScheduler("test", queueCapacity, maxInFlight, msg -> {
+            CompletableFuture<Boolean> answer = new CompletableFuture<>();
+            synchronized (this) {
+                sent.add(msg.getValue());
+                answers.add(answer);
+            }
+            return answer;
+        });
+    }
+
+    private static OpenMessage msg(String frame) {
+        return OpenMessageFactory.parse(frame);
+    }
+
+    private synchronized void answer(int index, boolean ack) {
+        answers.get(index).complete(ack);
+    }
+
+    @Test
+    public void commandIsSentAtOnceAndCompletedWithTheAnswer() throws Exception {
+        CompletableFuture<Boolean> result = scheduler.submit(msg("*1*1*12##"), CommandPriority.HIGH);
+        assertEquals(1, sent.size());
+        assertFalse(result.isDone());
+        answer(0, true);
+        assertTrue(result.get());
+    }
+
+    @Test
+    public void nackCompletesWithFalse() throws Exception {
+        CompletableFuture<Boolean> result = scheduler.submit(msg("*1*1*12##"), CommandPriority.HIGH);
+        answer(0, false);
+        assertFalse(result.get());
+    }
+
+    @Test
+    public void higherPrioritiesAreSentFirst() {
+        scheduler.submit(msg("*1*1*11##"), CommandPriority.LOW); // sent at once: nothing in flight
+        scheduler.submit(msg("*#1*12##"), CommandPriority.LOW);
+        scheduler.submit(msg("*#1*13##"), CommandPriority.NORMAL);
+        scheduler.submit(msg("*1*0*14##"), CommandPriority.HIGH);
+        assertEquals(1, sent.size());
+        assertEquals(3, scheduler.getQueueDepth());
+        answer(0, true);
+        answer(1, true);
+        answer(2, true);
+        assertEquals(4, sent.size());
+        assertEquals("*1*0*14##", sent.get(1));
+        assertEquals("*#1*13##", sent.get(2));
+        assertEquals("*#1*12##", sent.get(3));
+        assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void maxInFlightCommandsAreSentInParallel() {
+        scheduler = newScheduler(8, 3);
+        for (int i = 1; i <= 5; i++) {
+            scheduler.submit(msg("*1*1*1" + i + "##"), CommandPriority.HIGH);
+        }
+        assertEquals(3, sent.size());
+        answer(1, true);
+        assertEquals(4, sent.size());
+    }
+
+    @Test
+    public void commandIsRejectedWhenQueueIsFull() {
+        scheduler = newScheduler(2, 1);
+        scheduler.submit(msg("*1*1*11##"), CommandPriority.HIGH); // in flight
+        CompletableFuture<Boolean> queued1 = scheduler.submit(msg("*1*1*12##"), CommandPriority.HIGH);
+        CompletableFuture<Boolean> queued2 = scheduler.submit(msg("*1*1*13##"), CommandPriority.HIGH);
+        CompletableFuture<Boolean> rejected = scheduler.submit(msg("*1*1*14##"), CommandPriority.HIGH);
+        assertFalse(queued1.isDone());
+        assertFalse(queued2.isDone());
+        assertEquals(RejectedExecutionException.class, causeOf(rejected).getClass());
+        assertEquals(1, scheduler.getRejectedCommands());
+        // other priorities have their own queue
+        assertFalse(scheduler.submit(msg("*#1*13##"), CommandPriority.NORMAL).isDone());
+    }
+
+    @Test
+    public void expiredCommandIsDroppedInsteadOfBeingSentLate() throws Exception {
+        scheduler.submit(msg("*1*1*11##"), CommandPriority.HIGH); // in flight
+        CompletableFuture<Boolean> stale = scheduler.submit(msg("*#1*12##"), CommandPriority.LOW, 0);
+        CompletableFuture<Boolean> fresh = scheduler.submit(msg("*#1*13##"), CommandPriority.LOW);
+        Thread.sleep(5);
+        answer(0, true);
+        assertEquals(TimeoutException.class, causeOf(stale).getClass());
+        assertEquals(1, scheduler.getExpiredCommands());
+        assertEquals(2, sent.size());
+        assertEquals("*#1*13##", sent.get(1));
+        assertFalse(fresh.isDone());
+    }
+
+    @Test
+    public void commandCancelledWhileQueuedIsNotSent() {
+        scheduler.submit(msg("*1*1*11##"), CommandPriority.HIGH); // in flight
+        CompletableFuture<Boolean> cancelled = scheduler.submit(msg("*#1*12##"), CommandPriority.NORMAL);
+        assertTrue(cancelled.cancel(false));
+        answer(0, true);
+        assertEquals(1, sent.size());
+        assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void commandSentCannotBeCancelledAndCompletesWithTheAnswer() throws Exception {
+        CompletableFuture<Boolean> result = scheduler.submit(msg("*#1*12##"), CommandPriority.NORMAL);
+        assertEquals(1, sent.size());
+        assertFalse(result.cancel(false));
+        answer(0, true);
+        assertTrue(result.get());
+    }
+
+    @Test
+    public void transportErrorCompletesExceptionallyAndNextCommandIsSent() {
+        CompletableFuture<Boolean> failed = scheduler.submit(msg("*1*1*11##"), CommandPriority.HIGH);
+        scheduler.submit(msg("*1*1*12##"), CommandPriority.HIGH);
+        synchronized (this) {
+            answers.get(0).completeExceptionally(new IOException("connection lost"));
+        }
+        assertEquals(IOException.class, causeOf(failed).getClass());
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void disposeFailsQueuedAndNewCommands() {
+        scheduler.submit(msg("*1*1*11##"), CommandPriority.HIGH); // in flight
+        CompletableFuture<Boolean> queued = scheduler.submit(msg("*1*1*12##"), CommandPriority.HIGH);
+        scheduler.dispose();
+        assertEquals(IOException.class, causeOf(queued).getClass());
+        assertEquals(IOException.class,
+                causeOf(scheduler.submit(msg("*1*1*13##"), CommandPriority.HIGH)).getClass());
+        assertEquals(1, sent.size());
+    }
+
+    private static Throwable causeOf(CompletableFuture<Boolean> future) {
+        assertTrue("future not completed", future.isDone());
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        throw new AssertionError("future completed normally");
+    }
+}
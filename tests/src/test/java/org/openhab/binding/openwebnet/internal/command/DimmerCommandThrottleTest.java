@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.command;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link DimmerCommandThrottle}: levels are sent to a fake gateway that answers only when told to
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class DimmerCommandThrottleTest {
+
+    private static final long WAIT = 3000; // ms, max time to wait for a level to be sent
+
+    private final List<Integer> sent = new ArrayList<>();
+    private final List<CompletableFuture<Boolean>> answers = new ArrayList<>();
+
+    private ScheduledExecutorService scheduler;
+    private DimmerCommandThrottle throttle;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        throttle = new DimmerCommandThrottle("test", level -> {
+            CompletableFuture<Boolean> answer = new CompletableFuture<>();
+            synchronized (this) {
+                sent.add(level);
+                answers.add(answer);
+                notifyAll();
+            }
+            return answer;
+        }, scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        throttle.dispose();
+        scheduler.shutdownNow();
+    }
+
+    private synchronized void awaitSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) {
+            wait(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        assertEquals(count, sent.size());
+    }
+
+    private void answer(int index) {
+        CompletableFuture<Boolean> answer;
+        synchronized (this) {
+            answer = answers.get(index);
+        }
+        answer.complete(true);
+    }
+
+    @Test
+    public void firstLevelIsSentAtOnce() throws InterruptedException {
+        throttle.submit(5);
+        awaitSent(1);
+        assertEquals(Integer.valueOf(5), sent.get(0));
+        assertTrue(throttle.isSettling());
+    }
+
+    @Test
+    public void onlyLatestLevelIsSentAfterTheAnswer() throws InterruptedException {
+        throttle.submit(1);
+        awaitSent(1);
+        for (int level = 2; level <= 10; level++) {
+            throttle.submit(level);
+        }
+        Thread.sleep(100);
+        assertEquals(1, sent.size()); // nothing sent while the first level is waiting for its answer
+        answer(0);
+        awaitSent(2);
+        answer(1);
+        Thread.sleep(200);
+        assertEquals(Arrays.asList(1, 10), sent);
+    }
+
+    @Test
+    public void failedLevelDoesNotBlockNextLevels() throws InterruptedException {
+        throttle.submit(3);
+        awaitSent(1);
+        throttle.submit(4);
+        synchronized (this) {
+            answers.get(0).completeExceptionally(new RuntimeException("no answer"));
+        }
+        awaitSent(2);
+        assertEquals(Integer.valueOf(4), sent.get(1));
+    }
+
+    @Test
+    public void exceptionFromSenderReleasesTheThrottle() throws InterruptedException {
+        DimmerCommandThrottle failing = new DimmerCommandThrottle("failing", level -> {
+            if (level == 1) {
+                throw new IllegalStateException("cannot send");
+            }
+            synchronized (this) {
+                sent.add(level);
+                notifyAll();
+            }
+            return CompletableFuture.completedFuture(true);
+        }, scheduler);
+        failing.submit(1);
+        failing.submit(2);
+        awaitSent(1);
+        assertEquals(Integer.valueOf(2), sent.get(0));
+    }
+
+    @Test
+    public void settleWindowEndsAfterTheAnswer() throws InterruptedException {
+        throttle.submit(6);
+        awaitSent(1);
+        answer(0);
+        assertTrue(throttle.isSettling()); // frames received just after the answer may still be stale
+        long deadline = System.currentTimeMillis() + WAIT;
+        while (throttle.isSettling() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(throttle.isSettling());
+    }
+
+    @Test
+    public void latencyFollowsTheGatewayAnswers() throws InterruptedException {
+        long initial = throttle.getLatencyMillis();
+        for (int i = 0; i < 5; i++) {
+            throttle.submit(i + 1);
+            awaitSent(i + 1);
+            answer(i); // answered at once: much faster than the initial estimate
+            Thread.sleep(60);
+        }
+        assertTrue(throttle.getLatencyMillis() < initial);
+    }
+
+    @Test
+    public void disposeDropsPendingLevel() throws InterruptedException {
+        throttle.submit(2);
+        awaitSent(1);
+        throttle.submit(8);
+        throttle.dispose();
+        answer(0);
+        Thread.sleep(200);
+        assertEquals(1, sent.size());
+        throttle.submit(9);
+        Thread.sleep(100);
+        assertEquals(1, sent.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeLevelIsRejected() {
+        throttle.submit(-1);
+    }
+}
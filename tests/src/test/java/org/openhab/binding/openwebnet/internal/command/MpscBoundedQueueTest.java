@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.command;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link MpscBoundedQueue}
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class MpscBoundedQueueTest {
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(2, new MpscBoundedQueue<Integer>(1).capacity());
+        assertEquals(8, new MpscBoundedQueue<Integer>(5).capacity());
+        assertEquals(128, new MpscBoundedQueue<Integer>(128).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCapacityIsRejected() {
+        new MpscBoundedQueue<Integer>(0);
+    }
+
+    @Test
+    public void pollsInOfferOrder() {
+        MpscBoundedQueue<Integer> queue = new MpscBoundedQueue<>(4);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertEquals(3, queue.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void offerFailsWhenFull() {
+        MpscBoundedQueue<Integer> queue = new MpscBoundedQueue<>(2);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertFalse(queue.offer(3));
+        assertEquals(2, queue.size());
+        assertEquals(Integer.valueOf(1), queue.poll());
+        assertTrue(queue.offer(3));
+        assertFalse(queue.offer(4));
+    }
+
+    @Test
+    public void smallestQueueIsFullAfterTwoElements() {
+        MpscBoundedQueue<Integer> queue = new MpscBoundedQueue<>(1);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(i));
+            assertTrue(queue.offer(i));
+            assertFalse(queue.offer(i));
+            assertEquals(Integer.valueOf(i), queue.poll());
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+    }
+
+    @Test
+    public void slotsAreReusedAcrossRounds() {
+        MpscBoundedQueue<Integer> queue = new MpscBoundedQueue<>(4);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(queue.offer(i));
+            assertTrue(queue.offer(-i));
+            assertEquals(Integer.valueOf(i), queue.poll());
+            assertEquals(Integer.valueOf(-i), queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentProducersLoseNothingAndKeepTheirOrder() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 100000;
+        final MpscBoundedQueue<long[]> queue = new MpscBoundedQueue<>(64);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long i = 0; i < perProducer; i++) {
+                    long[] element = new long[] { producer, i };
+                    while (!queue.offer(element)) {
+                        Thread.yield(); // full: wait for the consumer
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        start.countDown();
+        long[] next = new long[producers];
+        long received = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(25);
+        while (received < producers * (long) perProducer && System.nanoTime() < deadline) {
+            long[] element = queue.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            int producer = (int) element[0];
+            assertEquals("element out of order for producer " + producer, next[producer], element[1]);
+            next[producer]++;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        assertEquals(producers * (long) perProducer, received);
+        assertNull(queue.poll());
+    }
+}
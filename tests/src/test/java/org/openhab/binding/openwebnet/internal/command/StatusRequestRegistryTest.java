@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.command;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openwebnet.message.OpenMessage;
+import org.openwebnet.message.OpenMessageFactory;
+
+/**
+ * Tests for {@link StatusRequestRegistry}: merging and superseding of status requests, on a {@link CommandScheduler}
+ * with a fake transport that completes frames only when told to
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class StatusRequestRegistryTest {
+
+    private final List<String> sent = new ArrayList<>();
+    private final List<CompletableFuture<Boolean>> answers = new ArrayList<>();
+
+    private StatusRequestRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new StatusRequestRegistry(new CommandScheduler("test", 8, 1, msg -> {
+            CompletableFuture<Boolean> answer = new CompletableFuture<>();
+            synchronized (this) {
+                sent.add(msg.getValue());
+                answers.add(answer);
+            }
+            return answer;
+        }));
+    }
+
+    private static OpenMessage msg(String frame) {
+        return OpenMessageFactory.parse(frame);
+    }
+
+    private synchronized void answer(int index, boolean ack) {
+        answers.get(index).complete(ack);
+    }
+
+    @Test
+    public void statusRequestPendingIsMerged() throws Exception {
+        CompletableFuture<Boolean> first = registry.submit(msg("*#1*12##"), CommandPriority.NORMAL);
+        CompletableFuture<Boolean> second = registry.submit(msg("*#1*12##"), CommandPriority.NORMAL);
+        assertSame(first, second);
+        assertEquals(1, sent.size());
+        assertEquals(1, registry.getMergedRequests());
+        answer(0, true);
+        assertTrue(second.get());
+    }
+
+    @Test
+    public void statusRequestIsSentAgainOnceAnswered() {
+        registry.submit(msg("*#1*12##"), CommandPriority.NORMAL);
+        answer(0, true);
+        registry.submit(msg("*#1*12##"), CommandPriority.NORMAL);
+        assertEquals(2, sent.size());
+        assertEquals(0, registry.getMergedRequests());
+    }
+
+    @Test
+    public void queuedStatusRequestIsSupersededByCommand() {
+        registry.submit(msg("*1*1*11##"), CommandPriority.HIGH); // in flight
+        CompletableFuture<Boolean> request = registry.submit(msg("*#1*12##"), CommandPriority.NORMAL);
+        registry.submit(msg("*1*0*12##"), CommandPriority.HIGH);
+        assertTrue(request.isCancelled());
+        assertEquals(1, registry.getSupersededRequests());
+        answer(0, true);
+        assertEquals(2, sent.size());
+        assertEquals("*1*0*12##", sent.get(1));
+    }
+
+    @Test
+    public void sentStatusRequestIsNotSupersededByCommand() throws Exception {
+        CompletableFuture<Boolean> request = registry.submit(msg("*#1*12##"), CommandPriority.NORMAL);
+        registry.submit(msg("*1*0*12##"), CommandPriority.HIGH);
+        assertFalse(request.isDone());
+        assertEquals(0, registry.getSupersededRequests());
+        answer(0, true);
+        assertTrue(request.get());
+        assertEquals("*1*0*12##", sent.get(1));
+    }
+
+    @Test
+    public void commandForAnotherWhereDoesNotSupersede() {
+        registry.submit(msg("*1*1*11##"), CommandPriority.HIGH); // in flight
+        CompletableFuture<Boolean> request = registry.submit(msg("*#1*12##"), CommandPriority.NORMAL);
+        registry.submit(msg("*1*0*13##"), CommandPriority.HIGH);
+        assertFalse(request.isDone());
+        assertEquals(0, registry.getSupersededRequests());
+    }
+}
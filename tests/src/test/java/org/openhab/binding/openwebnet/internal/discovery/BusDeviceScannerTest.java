@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.discovery;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.openwebnet.handler.OpenWebNetBridgeHandler;
+import org.openhab.binding.openwebnet.internal.command.CommandPriority;
+import org.openhab.binding.openwebnet.internal.frame.FrameListener;
+import org.openwebnet.OpenDeviceType;
+import org.openwebnet.message.OpenMessage;
+
+/**
+ * Tests for {@link BusDeviceScanner}: parallel chunks, devices reported, resume of a stopped scan and completion
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class BusDeviceScannerTest {
+
+    private static final int CHUNKS = 26; // 11 main bus areas and 15 local buses
+
+    private FakeBridge bridge;
+    private BusDeviceScanner scanner;
+    private final Map<String, OpenDeviceType> devices = new LinkedHashMap<>();
+
+    @Before
+    public void setUp() {
+        bridge = new FakeBridge();
+        scanner = new BusDeviceScanner(bridge);
+    }
+
+    @Test
+    public void chunksAreScannedInParallel() {
+        scanner.start(devices::put, null);
+        assertEquals(2, bridge.requests.size());
+        assertEquals("*#1*00##", bridge.frame(0));
+        assertEquals("*#1*1##", bridge.frame(1));
+        assertSame(scanner, bridge.observer);
+        // the next chunk is requested when one is answered
+        bridge.answer(0, true);
+        assertEquals(3, bridge.requests.size());
+        assertEquals("*#1*2##", bridge.frame(2));
+    }
+
+    @Test
+    public void devicesAreReportedWhenTheirChunkIsAnswered() {
+        scanner.start(devices::put, null);
+        scanner.onFrame("*1*1*12##");
+        scanner.onFrame("*#1*13*1*150*1##");
+        scanner.onFrame("*1*0*34##"); // area 3 is not being scanned
+        assertTrue(devices.isEmpty());
+        bridge.answer(1, true);
+        assertEquals(2, devices.size());
+        assertEquals(OpenDeviceType.SCS_ON_OFF_SWITCH, devices.get("12"));
+        assertEquals(OpenDeviceType.SCS_DIMMER_SWITCH, devices.get("13"));
+    }
+
+    @Test
+    public void stoppedScanIsResumed() {
+        scanner.start(devices::put, null);
+        bridge.answer(0, true);
+        bridge.answer(1, true);
+        scanner.stop();
+        assertNull(bridge.observer);
+        assertTrue(bridge.requests.get(2).isCancelled());
+
+        bridge.clear();
+        scanner.start(devices::put, null);
+        // areas 00 and 1 have been scanned: the scan resumes from area 2
+        assertEquals("*#1*2##", bridge.frame(0));
+        assertEquals("*#1*3##", bridge.frame(1));
+    }
+
+    @Test
+    public void completedScanStartsAgainFromTheBeginning() {
+        List<Boolean> completions = new ArrayList<>();
+        Runnable onCompleted = () -> completions.add(Thread.holdsLock(scanner));
+        scanner.start(devices::put, onCompleted);
+        answerAll(true);
+        assertEquals(CHUNKS, bridge.requests.size());
+        assertEquals("*#1*0#4#15##", bridge.frame(CHUNKS - 1));
+        // called once, without holding the scanner lock
+        assertEquals(1, completions.size());
+        assertFalse(completions.get(0));
+        assertNull(bridge.observer);
+
+        bridge.clear();
+        scanner.start(devices::put, onCompleted);
+        assertEquals("*#1*00##", bridge.frame(0));
+    }
+
+    @Test
+    public void chunksNotAnsweredAreScannedByTheNextScan() {
+        List<Boolean> completions = new ArrayList<>();
+        scanner.start(devices::put, () -> completions.add(true));
+        bridge.answer(0, false);
+        answerAll(true);
+        assertEquals(1, completions.size());
+
+        bridge.clear();
+        scanner.start(devices::put, () -> completions.add(true));
+        assertEquals(1, bridge.requests.size());
+        assertEquals("*#1*00##", bridge.frame(0));
+        bridge.answer(0, true);
+        assertEquals(2, completions.size());
+    }
+
+    private void answerAll(boolean ack) {
+        for (int i = 0; i < bridge.requests.size(); i++) {
+            if (!bridge.requests.get(i).isDone()) {
+                bridge.answer(i, ack);
+            }
+        }
+    }
+
+    /**
+     * Bridge handler recording the status requests, answered by the tests
+     */
+    private static class FakeBridge extends OpenWebNetBridgeHandler {
+        private final List<OpenMessage> messages = new ArrayList<>();
+        private final List<CompletableFuture<Boolean>> requests = new ArrayList<>();
+        private FrameListener observer;
+
+        FakeBridge() {
+            super(null);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> sendCommand(OpenMessage msg, CommandPriority priority) {
+            CompletableFuture<Boolean> request = new CompletableFuture<>();
+            messages.add(msg);
+            requests.add(request);
+            return request;
+        }
+
+        @Override
+        public int getCommandSessions() {
+            return 2;
+        }
+
+        @Override
+        public void setFrameObserver(FrameListener observer) {
+            this.observer = observer;
+        }
+
+        void clear() {
+            messages.clear();
+            requests.clear();
+        }
+
+        String frame(int i) {
+            return messages.get(i).getValue();
+        }
+
+        /**
+         * Answer a request: ACK or NACK complete it, a communication error completes it exceptionally
+         */
+        void answer(int i, boolean answered) {
+            if (answered) {
+                requests.get(i).complete(true);
+            } else {
+                requests.get(i).completeExceptionally(new RuntimeException("no answer"));
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.discovery;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.openhab.binding.openwebnet.internal.frame.OpenFrame;
+import org.openwebnet.OpenDeviceType;
+
+/**
+ * Tests for {@link PassiveDeviceDiscovery}: candidates found in unmatched frames, device type inference, WHEREs that
+ * are not devices and reports of the same WHERE
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class PassiveDeviceDiscoveryTest {
+
+    private final List<String> reported = new ArrayList<>();
+    private final OpenFrame frame = new OpenFrame();
+
+    private void onFrame(PassiveDeviceDiscovery discovery, String rawFrame) {
+        assertTrue(frame.parse(rawFrame));
+        discovery.onUnmatchedFrame(frame);
+    }
+
+    private PassiveDeviceDiscovery busDiscovery() {
+        return new PassiveDeviceDiscovery((where, type) -> reported.add(where + "=" + type), true);
+    }
+
+    @Test
+    public void busLightsAreReportedOnceWithTheirType() {
+        PassiveDeviceDiscovery discovery = busDiscovery();
+        onFrame(discovery, "*1*1*12##");
+        onFrame(discovery, "*1*0*12##");
+        onFrame(discovery, "*1*1*0315##");
+        onFrame(discovery, "*1*1*12#4#01##");
+        assertEquals(3, reported.size());
+        assertEquals("12=" + OpenDeviceType.SCS_ON_OFF_SWITCH, reported.get(0));
+        assertEquals("0315=" + OpenDeviceType.SCS_ON_OFF_SWITCH, reported.get(1));
+        assertEquals("12#4#01=" + OpenDeviceType.SCS_ON_OFF_SWITCH, reported.get(2));
+    }
+
+    @Test
+    public void dimLevelsAndLuminousIntensityMeanDimmer() {
+        PassiveDeviceDiscovery discovery = busDiscovery();
+        onFrame(discovery, "*1*5*13##");
+        onFrame(discovery, "*#1*14*1*150*1##");
+        assertEquals("13=" + OpenDeviceType.SCS_DIMMER_SWITCH, reported.get(0));
+        assertEquals("14=" + OpenDeviceType.SCS_DIMMER_SWITCH, reported.get(1));
+        // an ON/OFF frame does not change a dimmer back to a switch
+        onFrame(discovery, "*1*0*13##");
+        assertEquals(2, reported.size());
+    }
+
+    @Test
+    public void switchIsReportedAgainWhenFoundToBeADimmer() {
+        PassiveDeviceDiscovery discovery = busDiscovery();
+        onFrame(discovery, "*1*1*12##");
+        onFrame(discovery, "*1*8*12##");
+        onFrame(discovery, "*1*9*12##");
+        assertEquals(2, reported.size());
+        assertEquals("12=" + OpenDeviceType.SCS_DIMMER_SWITCH, reported.get(1));
+    }
+
+    @Test
+    public void areasGroupsGeneralAndStatusRequestsAreIgnored() {
+        PassiveDeviceDiscovery discovery = busDiscovery();
+        onFrame(discovery, "*1*1*0##"); // general
+        onFrame(discovery, "*1*1*1##"); // area
+        onFrame(discovery, "*1*1*#5##"); // group
+        onFrame(discovery, "*1*1*00##"); // area 0
+        onFrame(discovery, "*#1*12##"); // status request
+        onFrame(discovery, "*2*1*41##"); // not a light
+        assertTrue(reported.isEmpty());
+    }
+
+    @Test
+    public void clearedCandidatesAreReportedAgain() {
+        PassiveDeviceDiscovery discovery = busDiscovery();
+        onFrame(discovery, "*1*1*12##");
+        discovery.clear();
+        onFrame(discovery, "*1*1*12##");
+        assertEquals(2, reported.size());
+    }
+
+    @Test
+    public void zigBeeUnitsAreReported() {
+        PassiveDeviceDiscovery discovery = new PassiveDeviceDiscovery(
+                (where, type) -> reported.add(where + "=" + type), false);
+        onFrame(discovery, "*1*1*702053501#9##");
+        onFrame(discovery, "*1*0*702053500#9##"); // all units
+        onFrame(discovery, "*1*1*12##"); // BUS WHERE
+        assertEquals(1, reported.size());
+        assertEquals("702053501#9=" + OpenDeviceType.ZIGBEE_ON_OFF_SWITCH, reported.get(0));
+    }
+}
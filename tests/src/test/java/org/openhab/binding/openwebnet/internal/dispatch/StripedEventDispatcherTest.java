@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.dispatch;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openhab.binding.openwebnet.internal.dispatch.StripedEventDispatcher.OverflowPolicy;
+
+/**
+ * Tests for {@link StripedEventDispatcher}: order of events with the same key and overflow policies. Events are
+ * strings "key:value", coalesced by key; the consumer is held on the first event so that the queue fills up.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class StripedEventDispatcherTest {
+
+    private static final long TIMEOUT = 5; // sec
+
+    private final List<String> processed = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch firstTaken = new CountDownLatch(1);
+    private final CountDownLatch resume = new CountDownLatch(1);
+    private StripedEventDispatcher<String> dispatcher;
+
+    @After
+    public void tearDown() {
+        resume.countDown();
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    /**
+     * Dispatcher with one stripe: the consumer waits for {@link #resume} after taking the first event
+     */
+    private StripedEventDispatcher<String> newDispatcher(int queueCapacity, OverflowPolicy policy) {
+        dispatcher = new StripedEventDispatcher<>("test", Thread::new, 1, queueCapacity, policy, event -> "stripe",
+                event -> event.substring(0, event.indexOf(':')), event -> {
+                    processed.add(event);
+                    if (firstTaken.getCount() > 0) {
+                        firstTaken.countDown();
+                        try {
+                            resume.await(TIMEOUT, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+        dispatcher.start();
+        return dispatcher;
+    }
+
+    private void holdConsumer() throws InterruptedException {
+        dispatcher.dispatch("first:0");
+        assertTrue(firstTaken.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    private void awaitProcessed(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while (processed.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, processed.size());
+    }
+
+    @Test
+    public void eventsWithTheSameKeyAreProcessedInOrder() throws InterruptedException {
+        dispatcher = new StripedEventDispatcher<>("test", Thread::new, 4, 100, OverflowPolicy.BLOCK,
+                event -> event.substring(0, event.indexOf(':')), event -> event, processed::add);
+        dispatcher.start();
+        for (int i = 0; i < 50; i++) {
+            dispatcher.dispatch("a:" + i);
+            dispatcher.dispatch("b:" + i);
+        }
+        awaitProcessed(100);
+        List<String> a = new ArrayList<>();
+        synchronized (processed) {
+            for (String event : processed) {
+                if (event.startsWith("a:")) {
+                    a.add(event);
+                }
+            }
+        }
+        for (int i = 0; i < 50; i++) {
+            assertEquals("a:" + i, a.get(i));
+        }
+    }
+
+    @Test
+    public void dropOldestDropsTheOldestQueuedEvent() throws InterruptedException {
+        newDispatcher(2, OverflowPolicy.DROP_OLDEST);
+        holdConsumer();
+        assertTrue(dispatcher.dispatch("a:1"));
+        assertTrue(dispatcher.dispatch("b:1"));
+        assertTrue(dispatcher.dispatch("a:2"));
+        assertEquals(1, dispatcher.getDroppedEvents());
+        assertEquals(0, dispatcher.getCoalescedEvents());
+        resume.countDown();
+        awaitProcessed(3);
+        assertEquals("b:1", processed.get(1));
+        assertEquals("a:2", processed.get(2));
+    }
+
+    @Test
+    public void coalesceReplacesAnEventWithTheSameKey() throws InterruptedException {
+        newDispatcher(2, OverflowPolicy.COALESCE);
+        holdConsumer();
+        dispatcher.dispatch("a:1");
+        dispatcher.dispatch("b:1");
+        assertTrue(dispatcher.dispatch("b:2"));
+        assertEquals(1, dispatcher.getCoalescedEvents());
+        assertEquals(0, dispatcher.getDroppedEvents());
+        assertEquals(2, dispatcher.getQueueDepth());
+        resume.countDown();
+        awaitProcessed(3);
+        assertEquals("a:1", processed.get(1));
+        assertEquals("b:2", processed.get(2));
+    }
+
+    @Test
+    public void coalesceDropsTheOldestEventWithNoSameKey() throws InterruptedException {
+        newDispatcher(2, OverflowPolicy.COALESCE);
+        holdConsumer();
+        dispatcher.dispatch("a:1");
+        dispatcher.dispatch("b:1");
+        assertTrue(dispatcher.dispatch("c:1"));
+        assertEquals(0, dispatcher.getCoalescedEvents());
+        assertEquals(1, dispatcher.getDroppedEvents());
+        resume.countDown();
+        awaitProcessed(3);
+        assertEquals("b:1", processed.get(1));
+        assertEquals("c:1", processed.get(2));
+    }
+
+    @Test
+    public void blockWaitsForRoomInTheQueue() throws InterruptedException {
+        newDispatcher(1, OverflowPolicy.BLOCK);
+        holdConsumer();
+        dispatcher.dispatch("a:1");
+        CountDownLatch dispatched = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            dispatcher.dispatch("a:2");
+            dispatched.countDown();
+        });
+        producer.start();
+        assertFalse(dispatched.await(100, TimeUnit.MILLISECONDS));
+        resume.countDown();
+        assertTrue(dispatched.await(TIMEOUT, TimeUnit.SECONDS));
+        awaitProcessed(3);
+        assertEquals(0, dispatcher.getDroppedEvents());
+        assertEquals("a:2", processed.get(2));
+    }
+
+    @Test
+    public void eventsAreCoalescedWithConcurrentProducers() throws InterruptedException {
+        final int producers = 4;
+        final int events = 2000;
+        newDispatcher(8, OverflowPolicy.COALESCE);
+        holdConsumer();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < events; i++) {
+                    dispatcher.dispatch("k:" + i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+        }
+        // the consumer is still held and all events have the same key: once the queue is full each event replaces
+        // exactly one queued event, and none is dropped
+        assertEquals(8, dispatcher.getQueueDepth());
+        assertEquals(producers * events - 8, dispatcher.getCoalescedEvents());
+        assertEquals(0, dispatcher.getDroppedEvents());
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.frame;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.openwebnet.message.BaseOpenMessage;
+import org.openwebnet.message.Lighting;
+import org.openwebnet.message.Who;
+
+/**
+ * Tests for {@link OpenFrame}
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class OpenFrameTest {
+
+    private final OpenFrame frame = new OpenFrame();
+
+    @Test
+    public void parsesNormalLightingFrame() {
+        assertTrue(frame.parse("*1*1*12##"));
+        assertEquals(Who.LIGHTING, frame.getWho());
+        assertFalse(frame.isDimension());
+        assertEquals(1, frame.getWhatCode());
+        assertEquals(Lighting.WHAT.ON, frame.getLightingWhat());
+        assertEquals("12", frame.getWhere());
+        assertTrue(frame.isOn());
+        assertFalse(frame.isOff());
+        assertEquals(-1, frame.getDimensionCode());
+        assertNull(frame.getUnit());
+        assertEquals("*1*1*12##", frame.toString());
+    }
+
+    @Test
+    public void parsesLocalBusWhere() {
+        assertTrue(frame.parse("*1*0*12#4#01##"));
+        assertEquals("12#4#01", frame.getWhere());
+        assertTrue(frame.isOff());
+    }
+
+    @Test
+    public void parsesDimmerLevel() {
+        assertTrue(frame.parse("*1*7*0415##"));
+        assertEquals(7, frame.getWhatCode());
+        assertEquals(Lighting.WHAT.fromValue(7), frame.getLightingWhat());
+        assertEquals("0415", frame.getWhere());
+        assertFalse(frame.isOn());
+        assertFalse(frame.isOff());
+    }
+
+    @Test
+    public void whatWithParametersIsNeitherOnNorOff() {
+        assertTrue(frame.parse("*1*1#1*12##"));
+        assertEquals(1, frame.getWhatCode());
+        assertFalse(frame.isOn());
+        assertFalse(frame.isOff());
+    }
+
+    @Test
+    public void parsesStatusRequest() {
+        assertTrue(frame.parse("*#1*12##"));
+        assertEquals(Who.LIGHTING, frame.getWho());
+        assertTrue(frame.isDimension());
+        assertEquals(-1, frame.getDimensionCode());
+        assertEquals(-1, frame.getWhatCode());
+        assertNull(frame.getLightingWhat());
+        assertEquals("12", frame.getWhere());
+    }
+
+    @Test
+    public void parsesDimensionFrame() {
+        assertTrue(frame.parse("*#1*12*1*150*5##"));
+        assertTrue(frame.isDimension());
+        assertEquals(1, frame.getDimensionCode());
+        assertEquals("12", frame.getWhere());
+    }
+
+    @Test
+    public void parsesZigBeeUnit() {
+        assertTrue(frame.parse("*1*1*702053501#9##"));
+        assertEquals("702053501#9", frame.getWhere());
+        assertEquals(BaseOpenMessage.UNIT_01, frame.getUnit());
+        assertTrue(frame.parse("*1*0*702053502#9##"));
+        assertEquals(BaseOpenMessage.UNIT_02, frame.getUnit());
+        assertTrue(frame.parse("*1*0*702053500#9##"));
+        assertEquals(BaseOpenMessage.UNIT_ALL, frame.getUnit());
+    }
+
+    @Test
+    public void rejectsAckNackAndInvalidFrames() {
+        assertFalse(frame.parse("*#*1##"));
+        assertFalse(frame.parse("*#*0##"));
+        assertFalse(frame.parse(""));
+        assertFalse(frame.parse("*1*1*12#"));
+        assertFalse(frame.parse("1*1*12##"));
+        assertFalse(frame.parse("*1*1##"));
+        assertFalse(frame.parse("*x*1*12##"));
+        assertFalse(frame.parse("*777*1*12##"));
+        assertNull(frame.getWho());
+    }
+
+    @Test
+    public void reusedFrameKeepsNothingFromPreviousFrame() {
+        assertTrue(frame.parse("*1*1#1*702053502#9##"));
+        assertTrue(frame.parse("*#1*12*1##"));
+        assertNull(frame.getLightingWhat());
+        assertEquals(-1, frame.getWhatCode());
+        assertNull(frame.getUnit());
+        assertFalse(frame.isOn());
+        assertTrue(frame.parse("*1*0*13##"));
+        assertFalse(frame.isDimension());
+        assertEquals(-1, frame.getDimensionCode());
+    }
+
+    @Test
+    public void whereIsInterned() {
+        assertTrue(frame.parse(new StringBuilder("*1*1*").append(25).append("##")));
+        String where = frame.getWhere();
+        assertTrue(new OpenFrame().parse("*1*0*25##"));
+        assertSame(where, OpenFrame.whereOf("*#1*25##"));
+    }
+
+    @Test
+    public void staticWhereAndWhoDoNotTokenizeTheRest() {
+        assertEquals("12#4#01", OpenFrame.whereOf("*1*1*12#4#01##"));
+        assertEquals("12", OpenFrame.whereOf("*#1*12*1*150*5##"));
+        assertEquals("0", OpenFrame.whereOf("*#1*0##"));
+        assertEquals("", OpenFrame.whereOf("junk"));
+        assertEquals(Who.LIGHTING, OpenFrame.whoOf("*#1*0##"));
+        assertEquals(Who.GATEWAY_MANAGEMENT, OpenFrame.whoOf("*#13**0##"));
+        assertNull(OpenFrame.whoOf("*#*1##"));
+        assertNull(OpenFrame.whoOf("junk"));
+    }
+
+    @Test
+    public void areaOfPoints() {
+        assertEquals("00", OpenFrame.areaOf("01"));
+        assertEquals("1", OpenFrame.areaOf("12"));
+        assertEquals("9", OpenFrame.areaOf("99"));
+        assertEquals("00", OpenFrame.areaOf("0015"));
+        assertEquals("3", OpenFrame.areaOf("0312"));
+        assertEquals("100", OpenFrame.areaOf("1001"));
+        assertNull(OpenFrame.areaOf("1101"));
+        assertNull(OpenFrame.areaOf("0"));
+        assertNull(OpenFrame.areaOf("123"));
+        assertNull(OpenFrame.areaOf("#5"));
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.openhab.binding.openwebnet.internal.metrics.LatencyHistogram.Snapshot;
+
+/**
+ * Tests for {@link LatencyHistogram}: bucket bounds and relative error, percentiles, mean and snapshot differences
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class LatencyHistogramTest {
+
+    private static final double MAX_RELATIVE_ERROR = 1.0 / 16;
+
+    @Test
+    public void smallValuesAreExact() {
+        for (int value = 0; value < 32; value++) {
+            assertEquals(value, LatencyHistogram.bucketIndex(value));
+            assertEquals(value, LatencyHistogram.bucketUpperBound(value));
+        }
+    }
+
+    @Test
+    public void bucketsCoverValuesWithBoundedError() {
+        int previousIndex = -1;
+        for (long value = 0; value < 1L << 36; value = value < 1000 ? value + 1 : value + value / 7) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue("index not monotonic at " + value, index >= previousIndex);
+            assertTrue("value " + value + " above bucket bound " + upper, value <= upper);
+            assertTrue("value " + value + " below bucket " + index,
+                    index == 0 || value > LatencyHistogram.bucketUpperBound(index - 1));
+            assertTrue("error too large at " + value, upper - value <= value * MAX_RELATIVE_ERROR);
+            previousIndex = index;
+        }
+    }
+
+    @Test
+    public void emptySnapshotIsZero() {
+        Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMean(), 0);
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+        assertEquals(0, snapshot.getMax());
+    }
+
+    @Test
+    public void percentilesOfUniformValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500.5, snapshot.getMean(), 0.001);
+        assertWithinError(500, snapshot.getValueAtPercentile(50));
+        assertWithinError(990, snapshot.getValueAtPercentile(99));
+        assertWithinError(1000, snapshot.getValueAtPercentile(100));
+        assertWithinError(1000, snapshot.getMax());
+        assertEquals(1, snapshot.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.snapshot().getMax());
+        histogram.record(Long.MAX_VALUE);
+        Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertTrue(snapshot.getMax() >= (1L << 36) - 1);
+    }
+
+    @Test
+    public void snapshotDifferenceHasOnlyNewValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(20);
+        Snapshot before = histogram.snapshot();
+        histogram.record(5000);
+        Snapshot interval = histogram.snapshot().minus(before);
+        assertEquals(1, interval.getCount());
+        assertEquals(5000, interval.getMean(), 0);
+        assertWithinError(5000, interval.getValueAtPercentile(50));
+        assertEquals(3, histogram.snapshot().getCount());
+    }
+
+    private static void assertWithinError(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                actual >= expected && actual - expected <= expected * MAX_RELATIVE_ERROR);
+    }
+}
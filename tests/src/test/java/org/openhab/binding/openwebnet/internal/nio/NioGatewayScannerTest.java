@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.nio;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link NioGatewayScanner#parseRanges(String)}: single addresses, CIDR ranges, lists and invalid ranges
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class NioGatewayScannerTest {
+
+    private static List<String> parse(String ranges) {
+        List<String> hosts = new ArrayList<>();
+        for (InetAddress host : NioGatewayScanner.parseRanges(ranges)) {
+            hosts.add(host.getHostAddress());
+        }
+        return hosts;
+    }
+
+    @Test
+    public void singleAddress() {
+        assertEquals(Arrays.asList("192.168.1.35"), parse("192.168.1.35"));
+        assertEquals(Arrays.asList("192.168.1.35"), parse("192.168.1.35/32"));
+    }
+
+    @Test
+    public void rangeWithoutNetworkAndBroadcastAddresses() {
+        List<String> hosts = parse("192.168.1.0/24");
+        assertEquals(254, hosts.size());
+        assertEquals("192.168.1.1", hosts.get(0));
+        assertEquals("192.168.1.254", hosts.get(253));
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), parse("10.0.0.0/30"));
+    }
+
+    @Test
+    public void smallRangesKeepAllAddresses() {
+        assertEquals(Arrays.asList("10.0.0.4", "10.0.0.5"), parse("10.0.0.5/31"));
+    }
+
+    @Test
+    public void rangeIsAlignedToItsNetwork() {
+        List<String> hosts = parse("172.16.5.77/28");
+        assertEquals(14, hosts.size());
+        assertEquals("172.16.5.65", hosts.get(0));
+        assertEquals("172.16.5.78", hosts.get(13));
+    }
+
+    @Test
+    public void listWithoutDuplicates() {
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2", "192.168.0.10"),
+                parse(" 10.0.0.0/30, 192.168.0.10 ,,10.0.0.2"));
+        assertEquals(65534, parse("10.1.0.0/16").size());
+        assertTrue(parse("").isEmpty());
+    }
+
+    @Test
+    public void invalidRangesAreRejected() {
+        for (String range : new String[] { "192.168.1", "192.168.1.256", "192.168.-1.1", "a.b.c.d", "192.168.1.0/",
+                "192.168.1.0/x", "192.168.1.0/33", "10.0.0.0/15", "192.168.1.1,foo" }) {
+            try {
+                NioGatewayScanner.parseRanges(range);
+                fail("range accepted: " + range);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
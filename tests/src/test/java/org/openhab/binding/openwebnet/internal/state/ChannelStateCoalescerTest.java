@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.state;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.eclipse.smarthome.core.library.types.PercentType;
+import org.eclipse.smarthome.core.thing.ChannelUID;
+import org.eclipse.smarthome.core.thing.ThingUID;
+import org.eclipse.smarthome.core.types.State;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ChannelStateCoalescer}: identical states skipped, updates collapsed within a window, invalidation
+ * and forgotten things
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class ChannelStateCoalescerTest {
+
+    private static final long WINDOW = 100; // ms
+    private static final long WAIT = 3000; // ms, max time to wait for a state to be published
+
+    private static final ThingUID DIMMER = new ThingUID("openwebnet:bus_dimmer:gw:13");
+    private static final ChannelUID SWITCH = new ChannelUID(DIMMER, "switch");
+    private static final ChannelUID BRIGHTNESS = new ChannelUID(DIMMER, "brightness");
+
+    private final List<State> published = new ArrayList<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private synchronized void publish(ChannelUID channel, State state) {
+        published.add(state);
+        notifyAll();
+    }
+
+    private synchronized void awaitPublished(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT;
+        while (published.size() < count && System.currentTimeMillis() < deadline) {
+            wait(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        assertEquals(count, published.size());
+    }
+
+    @Test
+    public void identicalStatesAreSkipped() {
+        ChannelStateCoalescer coalescer = new ChannelStateCoalescer(scheduler, 0);
+        coalescer.update(SWITCH, OnOffType.ON, this::publish);
+        coalescer.update(SWITCH, OnOffType.ON, this::publish);
+        coalescer.update(SWITCH, OnOffType.OFF, this::publish);
+        assertEquals(Arrays.asList(OnOffType.ON, OnOffType.OFF), published);
+        assertEquals(2, coalescer.getPublishedUpdates());
+        assertEquals(1, coalescer.getSuppressedUpdates());
+    }
+
+    @Test
+    public void updatesWithinWindowAreCollapsed() throws InterruptedException {
+        ChannelStateCoalescer coalescer = new ChannelStateCoalescer(scheduler, WINDOW);
+        coalescer.update(BRIGHTNESS, new PercentType(10), this::publish);
+        coalescer.update(BRIGHTNESS, new PercentType(20), this::publish);
+        coalescer.update(BRIGHTNESS, new PercentType(30), this::publish);
+        // the first update is published at once, the last one when the window ends
+        synchronized (this) {
+            assertEquals(Arrays.asList(new PercentType(10)), published);
+        }
+        awaitPublished(2);
+        assertEquals(new PercentType(30), published.get(1));
+        assertEquals(1, coalescer.getSuppressedUpdates());
+    }
+
+    @Test
+    public void channelsHaveTheirOwnWindow() {
+        ChannelStateCoalescer coalescer = new ChannelStateCoalescer(scheduler, WINDOW);
+        coalescer.update(SWITCH, OnOffType.ON, this::publish);
+        coalescer.update(BRIGHTNESS, new PercentType(50), this::publish);
+        synchronized (this) {
+            assertEquals(Arrays.asList(OnOffType.ON, new PercentType(50)), published);
+        }
+    }
+
+    @Test
+    public void invalidatedChannelIsPublishedAgain() {
+        ChannelStateCoalescer coalescer = new ChannelStateCoalescer(scheduler, 0);
+        coalescer.update(SWITCH, OnOffType.ON, this::publish);
+        coalescer.invalidate(SWITCH);
+        coalescer.update(SWITCH, OnOffType.ON, this::publish);
+        assertEquals(Arrays.asList(OnOffType.ON, OnOffType.ON), published);
+    }
+
+    @Test
+    public void pendingUpdatesOfForgottenThingAreDiscarded() throws InterruptedException {
+        ChannelStateCoalescer coalescer = new ChannelStateCoalescer(scheduler, WINDOW);
+        coalescer.update(BRIGHTNESS, new PercentType(10), this::publish);
+        coalescer.update(BRIGHTNESS, new PercentType(20), this::publish);
+        coalescer.forget(DIMMER);
+        Thread.sleep(3 * WINDOW);
+        synchronized (this) {
+            assertEquals(Arrays.asList(new PercentType(10)), published);
+        }
+        // a new update opens a new window
+        coalescer.update(BRIGHTNESS, new PercentType(10), this::publish);
+        awaitPublished(2);
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.state;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.eclipse.smarthome.core.library.types.PercentType;
+import org.eclipse.smarthome.core.thing.ChannelUID;
+import org.eclipse.smarthome.core.thing.ThingUID;
+import org.junit.Test;
+
+/**
+ * Tests for {@link DeviceStateCache}: freshness of states, invalidation and hit/miss counters
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class DeviceStateCacheTest {
+
+    private static final ThingUID LIGHT = new ThingUID("openwebnet:bus_on_off_switch:gw:12");
+    private static final ThingUID DIMMER = new ThingUID("openwebnet:bus_dimmer:gw:13");
+    private static final ChannelUID SWITCH = new ChannelUID(LIGHT, "switch");
+    private static final ChannelUID BRIGHTNESS = new ChannelUID(DIMMER, "brightness");
+
+    @Test
+    public void freshStateIsServed() {
+        DeviceStateCache cache = new DeviceStateCache(60);
+        assertNull(cache.get(SWITCH));
+        cache.put(SWITCH, OnOffType.ON);
+        assertEquals(OnOffType.ON, cache.get(SWITCH));
+        cache.put(SWITCH, OnOffType.OFF);
+        assertEquals(OnOffType.OFF, cache.get(SWITCH));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void stateIsNotServedAfterTtl() throws InterruptedException {
+        DeviceStateCache cache = new DeviceStateCache(50, TimeUnit.MILLISECONDS);
+        cache.put(SWITCH, OnOffType.ON);
+        assertEquals(OnOffType.ON, cache.get(SWITCH));
+        Thread.sleep(100);
+        assertNull(cache.get(SWITCH));
+        // a new state is fresh again
+        cache.put(SWITCH, OnOffType.OFF);
+        assertEquals(OnOffType.OFF, cache.get(SWITCH));
+    }
+
+    @Test
+    public void zeroTtlNeverServesStates() {
+        DeviceStateCache cache = new DeviceStateCache(0);
+        cache.put(SWITCH, OnOffType.ON);
+        assertNull(cache.get(SWITCH));
+    }
+
+    @Test
+    public void invalidateForgetsOneChannel() {
+        DeviceStateCache cache = new DeviceStateCache(60);
+        cache.put(SWITCH, OnOffType.ON);
+        cache.put(BRIGHTNESS, new PercentType(50));
+        cache.invalidate(BRIGHTNESS);
+        assertNull(cache.get(BRIGHTNESS));
+        assertEquals(OnOffType.ON, cache.get(SWITCH));
+    }
+
+    @Test
+    public void forgetAndClear() {
+        DeviceStateCache cache = new DeviceStateCache(60);
+        cache.put(SWITCH, OnOffType.ON);
+        cache.put(BRIGHTNESS, new PercentType(50));
+        cache.forget(DIMMER);
+        assertNull(cache.get(BRIGHTNESS));
+        assertEquals(OnOffType.ON, cache.get(SWITCH));
+        cache.clear();
+        assertNull(cache.get(SWITCH));
+    }
+}
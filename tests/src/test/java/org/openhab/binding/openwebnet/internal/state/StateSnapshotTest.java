@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.state;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.smarthome.core.library.types.DecimalType;
+import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.eclipse.smarthome.core.library.types.PercentType;
+import org.eclipse.smarthome.core.library.types.StringType;
+import org.eclipse.smarthome.core.types.State;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openhab.binding.openwebnet.internal.state.StateSnapshot.DeviceState;
+
+/**
+ * Tests for {@link StateSnapshot}: write/read round trip, missing and invalid files
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class StateSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DeviceState dimmer() {
+        Map<String, State> channels = new LinkedHashMap<>();
+        channels.put("switch", OnOffType.ON);
+        channels.put("brightness", new PercentType(60));
+        channels.put("power", new DecimalType("12.5"));
+        return new DeviceState("openwebnet:bus_dimmer:gw:13", channels, 6, 4);
+    }
+
+    @Test
+    public void writtenStatesAreReadBack() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("snapshots").resolve("gw.snapshot");
+        Map<String, DeviceState> states = new HashMap<>();
+        states.put("13", dimmer());
+        Map<String, State> lightChannels = new LinkedHashMap<>();
+        lightChannels.put("switch", OnOffType.OFF);
+        states.put("12#4#01", new DeviceState("openwebnet:bus_on_off_switch:gw:12_4_01", lightChannels, -1, -1));
+
+        StateSnapshot.write(file, states);
+        assertFalse(Files.exists(file.resolveSibling("gw.snapshot.tmp")));
+        Map<String, DeviceState> read = StateSnapshot.read(file);
+
+        assertEquals(2, read.size());
+        DeviceState dimmer = read.get("13");
+        assertEquals("openwebnet:bus_dimmer:gw:13", dimmer.getThingUID());
+        assertEquals(6, dimmer.getBrightnessWhat());
+        assertEquals(4, dimmer.getBrightnessWhatBeforeOff());
+        assertEquals(dimmer().getChannels(), dimmer.getChannels());
+        assertTrue(dimmer.getChannels().get("brightness") instanceof PercentType);
+        DeviceState light = read.get("12#4#01");
+        assertEquals(OnOffType.OFF, light.getChannels().get("switch"));
+        assertEquals(-1, light.getBrightnessWhat());
+    }
+
+    @Test
+    public void newSnapshotReplacesThePreviousOne() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("gw.snapshot");
+        Map<String, DeviceState> states = new HashMap<>();
+        states.put("13", dimmer());
+        StateSnapshot.write(file, states);
+        states.clear();
+        StateSnapshot.write(file, states);
+        assertTrue(StateSnapshot.read(file).isEmpty());
+    }
+
+    @Test
+    public void missingFileIsEmpty() throws IOException {
+        assertTrue(StateSnapshot.read(folder.getRoot().toPath().resolve("none.snapshot")).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidFileIsRejected() throws IOException {
+        Path file = folder.newFile("invalid.snapshot").toPath();
+        Files.write(file, "not a snapshot".getBytes());
+        StateSnapshot.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFileIsRejected() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("gw.snapshot");
+        Map<String, DeviceState> states = new HashMap<>();
+        states.put("13", dimmer());
+        StateSnapshot.write(file, states);
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 3));
+        StateSnapshot.read(file);
+    }
+
+    @Test
+    public void onlyOnOffAndNumberStatesAreSupported() {
+        assertTrue(StateSnapshot.isSupported(OnOffType.ON));
+        assertTrue(StateSnapshot.isSupported(new PercentType(10)));
+        assertTrue(StateSnapshot.isSupported(new DecimalType(3)));
+        assertFalse(StateSnapshot.isSupported(new StringType("on")));
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.timer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ExponentialBackoff}: doubling, maximum, randomization and reset
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class ExponentialBackoffTest {
+
+    private static void assertDelayBetween(long min, long max, long delay) {
+        assertTrue("delay " + delay + " not in [" + min + ", " + max + "]", delay >= min && delay <= max);
+    }
+
+    @Test
+    public void delaysDoubleUpToTheMaximum() {
+        ExponentialBackoff backoff = new ExponentialBackoff(100, 1000);
+        for (int round = 0; round < 100; round++) {
+            backoff.reset();
+            assertDelayBetween(50, 100, backoff.nextDelayMillis());
+            assertDelayBetween(100, 200, backoff.nextDelayMillis());
+            assertDelayBetween(200, 400, backoff.nextDelayMillis());
+            assertDelayBetween(400, 800, backoff.nextDelayMillis());
+            assertDelayBetween(500, 1000, backoff.nextDelayMillis());
+            assertDelayBetween(500, 1000, backoff.nextDelayMillis());
+        }
+    }
+
+    @Test
+    public void manyAttemptsDoNotOverflow() {
+        ExponentialBackoff backoff = new ExponentialBackoff(500, 30000);
+        for (int i = 0; i < 200; i++) {
+            assertDelayBetween(250, 30000, backoff.nextDelayMillis());
+        }
+        assertEquals(200, backoff.getAttempts());
+    }
+
+    @Test
+    public void delaysAreRandomized() {
+        ExponentialBackoff backoff = new ExponentialBackoff(1000, 1000);
+        long first = backoff.nextDelayMillis();
+        boolean different = false;
+        for (int i = 0; i < 100 && !different; i++) {
+            different = backoff.nextDelayMillis() != first;
+        }
+        assertTrue(different);
+    }
+
+    @Test
+    public void resetStartsFromTheInitialDelay() {
+        ExponentialBackoff backoff = new ExponentialBackoff(100, 10000);
+        for (int i = 0; i < 10; i++) {
+            backoff.nextDelayMillis();
+        }
+        backoff.reset();
+        assertEquals(0, backoff.getAttempts());
+        assertDelayBetween(50, 100, backoff.nextDelayMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maximumLowerThanInitialIsRejected() {
+        new ExponentialBackoff(1000, 100);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2010-2018 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.openwebnet.internal.timer;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openhab.binding.openwebnet.internal.timer.HashedTimingWheel.Timeout;
+
+/**
+ * Tests for {@link HashedTimingWheel}. Most tests advance the wheel from the test thread, so that expiry is checked
+ * at known times.
+ *
+ * @author Massimo Valla - Initial contribution
+ */
+public class HashedTimingWheelTest {
+
+    private static final long TICK = 10; // ms
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    private void advanceAfter(HashedTimingWheel wheel, long millis) throws InterruptedException {
+        Thread.sleep(millis);
+        wheel.advance();
+    }
+
+    @Test
+    public void timeoutRunsOnceAfterItsDelay() throws InterruptedException {
+        HashedTimingWheel wheel = new HashedTimingWheel(TICK, TimeUnit.MILLISECONDS, 16);
+        Timeout timeout = wheel.schedule(runs::incrementAndGet, 5 * TICK, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.isPending());
+        assertEquals(1, wheel.getPendingTimeouts());
+        advanceAfter(wheel, 0);
+        assertEquals(0, runs.get());
+        advanceAfter(wheel, 8 * TICK);
+        assertEquals(1, runs.get());
+        assertFalse(timeout.isPending());
+        assertFalse(timeout.cancel());
+        assertEquals(0, wheel.getPendingTimeouts());
+        advanceAfter(wheel, 2 * TICK);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void cancelledTimeoutDoesNotRun() throws InterruptedException {
+        HashedTimingWheel wheel = new HashedTimingWheel(TICK, TimeUnit.MILLISECONDS, 16);
+        Timeout cancelledBeforeLinked = wheel.schedule(runs::incrementAndGet, 2 * TICK, TimeUnit.MILLISECONDS);
+        Timeout cancelledAfterLinked = wheel.schedule(runs::incrementAndGet, 2 * TICK, TimeUnit.MILLISECONDS);
+        assertTrue(cancelledBeforeLinked.cancel());
+        advanceAfter(wheel, 0); // links the second timeout in its bucket
+        assertTrue(cancelledAfterLinked.cancel());
+        assertFalse(cancelledAfterLinked.cancel());
+        assertEquals(0, wheel.getPendingTimeouts());
+        advanceAfter(wheel, 5 * TICK);
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void timeoutLongerThanOneRoundWaitsForItsRounds() throws InterruptedException {
+        HashedTimingWheel wheel = new HashedTimingWheel(TICK, TimeUnit.MILLISECONDS, 4); // 40 ms for a full round
+        wheel.schedule(runs::incrementAndGet, 12 * TICK, TimeUnit.MILLISECONDS);
+        advanceAfter(wheel, 0);
+        advanceAfter(wheel, 6 * TICK); // same bucket reached once, rounds still to wait
+        assertEquals(0, runs.get());
+        advanceAfter(wheel, 9 * TICK);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void failingTaskDoesNotStopOtherTimeouts() throws InterruptedException {
+        HashedTimingWheel wheel = new HashedTimingWheel(TICK, TimeUnit.MILLISECONDS, 16);
+        wheel.schedule(() -> {
+            throw new IllegalStateException("task failure");
+        }, TICK, TimeUnit.MILLISECONDS);
+        wheel.schedule(runs::incrementAndGet, TICK, TimeUnit.MILLISECONDS);
+        advanceAfter(wheel, 4 * TICK);
+        assertEquals(1, runs.get());
+        assertEquals(0, wheel.getPendingTimeouts());
+    }
+
+    @Test(timeout = 5000)
+    public void startedWheelRunsTimeoutsOnTheScheduler() throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        HashedTimingWheel wheel = new HashedTimingWheel(TICK, TimeUnit.MILLISECONDS, 16);
+        try {
+            wheel.start(scheduler);
+            CountDownLatch expired = new CountDownLatch(1);
+            wheel.schedule(expired::countDown, 3 * TICK, TimeUnit.MILLISECONDS);
+            assertTrue(expired.await(2, TimeUnit.SECONDS));
+        } finally {
+            wheel.stop();
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroTickIsRejected() {
+        new HashedTimingWheel(0, TimeUnit.MILLISECONDS, 16);
+    }
+}